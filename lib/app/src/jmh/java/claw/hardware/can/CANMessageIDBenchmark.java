@@ -0,0 +1,59 @@
+package claw.hardware.can;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Measures {@link CANMessageID} decoding over the arbitration IDs of a typical robot's bus, with and without the
+ * interning cache.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class CANMessageIDBenchmark {
+    
+    private static final int
+        NUM_FRAMES = 1024,
+        NUM_DEVICES = 24,
+        STATUS_FRAMES_PER_DEVICE = 6;
+    
+    private final int[] messageIDs = new int[NUM_FRAMES];
+    private int next = 0;
+    
+    @Setup
+    public void setup () {
+        // REV motor controllers (device type 2, manufacturer 5) with several periodic status frames each
+        int[] busIDs = new int[NUM_DEVICES * STATUS_FRAMES_PER_DEVICE];
+        for (int d = 0; d < NUM_DEVICES; d ++)
+            for (int f = 0; f < STATUS_FRAMES_PER_DEVICE; f ++)
+                busIDs[d * STATUS_FRAMES_PER_DEVICE + f] = (2 << 24) | (5 << 16) | (6 << 10) | (f << 6) | d;
+        
+        Random random = new Random(1711);
+        for (int i = 0; i < NUM_FRAMES; i ++)
+            messageIDs[i] = busIDs[random.nextInt(busIDs.length)];
+    }
+    
+    private int nextID () {
+        next = (next + 1) & (NUM_FRAMES - 1);
+        return messageIDs[next];
+    }
+    
+    @Benchmark
+    public CANMessageID decode () {
+        return CANMessageID.fromMessageId(nextID());
+    }
+    
+    @Benchmark
+    public CANMessageID decodeCached () {
+        return CANMessageID.fromMessageIdCached(nextID());
+    }
+    
+}
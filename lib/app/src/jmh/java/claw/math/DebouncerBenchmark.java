@@ -0,0 +1,94 @@
+package claw.math;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Measures {@link DualDebouncer}, {@link DebouncerBank} and {@link FilterPipeline} on chattering inputs. Start times and
+ * timestamps are passed in directly so that the bank and pipeline benchmarks can run without the HAL native libraries.
+ * The WPILib {@code Debouncer} constructor reads the native wpiutil clock, so the {@link DualDebouncer} is kept in its
+ * own {@link DualDebouncerState} and only {@link #dualDebouncer(DualDebouncerState)} needs the wpiutil JNI library.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class DebouncerBenchmark {
+    
+    private static final int
+        NUM_INPUTS = 1024,
+        NUM_CHANNELS = 64,
+        LOOP_PERIOD_MICROS = 20_000;
+    
+    private final boolean[] chatter = new boolean[NUM_INPUTS];
+    private final long[][] channelBits = new long[NUM_INPUTS][DebouncerBank.getNumWords(NUM_CHANNELS)];
+    private final double[][] channelValues = new double[NUM_INPUTS][NUM_CHANNELS];
+    private final double[] filtered = new double[NUM_CHANNELS];
+    
+    private DebouncerBank bank;
+    private FilterPipeline pipeline;
+    
+    private int next = 0;
+    private long time = 0;
+    
+    @Setup
+    public void setup () {
+        Random random = new Random(1711);
+        for (int i = 0; i < NUM_INPUTS; i ++) {
+            chatter[i] = random.nextBoolean();
+            for (int w = 0; w < channelBits[i].length; w ++)
+                channelBits[i][w] = random.nextLong();
+            for (int c = 0; c < NUM_CHANNELS; c ++)
+                channelValues[i][c] = random.nextGaussian();
+        }
+        
+        bank = new DebouncerBank(NUM_CHANNELS, 0.05, 0.1, time);
+        pipeline = new FilterPipeline(NUM_CHANNELS)
+            .addMedian(5)
+            .addMovingAverage(10)
+            .addRateLimit(4);
+    }
+    
+    private int nextIndex () {
+        next = (next + 1) & (NUM_INPUTS - 1);
+        time += LOOP_PERIOD_MICROS;
+        return next;
+    }
+    
+    @State(Scope.Thread)
+    public static class DualDebouncerState {
+        
+        private DualDebouncer debouncer;
+        
+        @Setup
+        public void setup () {
+            debouncer = new DualDebouncer(false, 0.05, 0.1, 0);
+        }
+        
+    }
+    
+    @Benchmark
+    public boolean dualDebouncer (DualDebouncerState state) {
+        return state.debouncer.calculate(chatter[nextIndex()], time);
+    }
+    
+    @Benchmark
+    public boolean debouncerBank64Channels () {
+        bank.update(channelBits[nextIndex()], time);
+        return bank.get(0);
+    }
+    
+    @Benchmark
+    public double[] filterPipeline64Channels () {
+        pipeline.calculate(channelValues[nextIndex()], filtered, time);
+        return filtered;
+    }
+    
+}
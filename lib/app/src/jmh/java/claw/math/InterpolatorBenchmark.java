@@ -0,0 +1,113 @@
+package claw.math;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Compares lookups in {@link LinearInterpolator} (on uneven and even grids, and with a hint),
+ * {@link MonotoneCubicInterpolator} and {@link BilinearInterpolator} tables of various sizes.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class InterpolatorBenchmark {
+    
+    private static final int NUM_INPUTS = 1024;
+    
+    @Param({ "16", "1024" })
+    public int tableSize;
+    
+    private final double[] randomInputs = new double[NUM_INPUTS], sweepInputs = new double[NUM_INPUTS];
+    private int next = 0;
+    
+    private LinearInterpolator unevenLinear, evenLinear;
+    private Transform hintedLinear;
+    private MonotoneCubicInterpolator cubic;
+    private BilinearInterpolator bilinear;
+    
+    @Setup
+    public void setup () {
+        Random random = new Random(1711);
+        
+        double[] evenXs = new double[tableSize], unevenXs = new double[tableSize], ys = new double[tableSize];
+        double unevenX = 0;
+        for (int i = 0; i < tableSize; i ++) {
+            evenXs[i] = i;
+            unevenX += 0.5 + random.nextDouble();
+            unevenXs[i] = unevenX * (tableSize - 1) / (tableSize * 1.5);
+            ys[i] = Math.sqrt(i) + random.nextDouble();
+        }
+        
+        unevenLinear = new LinearInterpolator(unevenXs, ys);
+        evenLinear = new LinearInterpolator(evenXs, ys);
+        hintedLinear = unevenLinear.withHint();
+        cubic = new MonotoneCubicInterpolator(unevenXs, ys);
+        
+        int gridSize = (int)Math.sqrt(tableSize);
+        double[] gridAxis = new double[gridSize];
+        double[][] gridValues = new double[gridSize][gridSize];
+        for (int i = 0; i < gridSize; i ++) {
+            gridAxis[i] = i * (tableSize - 1.) / (gridSize - 1);
+            for (int j = 0; j < gridSize; j ++)
+                gridValues[i][j] = random.nextDouble();
+        }
+        bilinear = new BilinearInterpolator(gridAxis, gridAxis, gridValues);
+        
+        // Random inputs jump around the table, while sweep inputs change gradually like a measured distance would
+        for (int i = 0; i < NUM_INPUTS; i ++) {
+            randomInputs[i] = random.nextDouble() * (tableSize - 1);
+            sweepInputs[i] = (tableSize - 1) * (0.5 + 0.5 * Math.sin(i * 2 * Math.PI / NUM_INPUTS));
+        }
+    }
+    
+    private int nextIndex () {
+        next = (next + 1) & (NUM_INPUTS - 1);
+        return next;
+    }
+    
+    @Benchmark
+    public double linearUneven () {
+        return unevenLinear.apply(randomInputs[nextIndex()]);
+    }
+    
+    @Benchmark
+    public double linearEven () {
+        return evenLinear.apply(randomInputs[nextIndex()]);
+    }
+    
+    @Benchmark
+    public double linearUnevenSweep () {
+        return unevenLinear.apply(sweepInputs[nextIndex()]);
+    }
+    
+    @Benchmark
+    public double linearHintedSweep () {
+        return hintedLinear.apply(sweepInputs[nextIndex()]);
+    }
+    
+    @Benchmark
+    public double monotoneCubic () {
+        return cubic.apply(randomInputs[nextIndex()]);
+    }
+    
+    @Benchmark
+    public double monotoneCubicSweep () {
+        return cubic.apply(sweepInputs[nextIndex()]);
+    }
+    
+    @Benchmark
+    public double bilinear () {
+        int i = nextIndex();
+        return bilinear.apply(randomInputs[i], randomInputs[(i + 1) & (NUM_INPUTS - 1)]);
+    }
+    
+}
@@ -0,0 +1,95 @@
+package claw.math;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import claw.math.input.InputTransform;
+
+/**
+ * Compares a typical joystick {@link Transform} chain (deadband, curve, clamp) applied directly, compiled with
+ * {@link Transform#compile(Transform)}, and tabulated with {@link Transform#tabulate(Transform, double, double, int)},
+ * along with one-at-a-time and batch evaluation over an array.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class TransformBenchmark {
+    
+    private static final int NUM_INPUTS = 4096;
+    
+    private final double[] inputs = new double[NUM_INPUTS], outputs = new double[NUM_INPUTS];
+    private int next = 0;
+    
+    private Transform chain, compiled, tabulated, linearChain, compiledLinearChain;
+    
+    @Setup
+    public void setup () {
+        Random random = new Random(1711);
+        for (int i = 0; i < NUM_INPUTS; i ++)
+            inputs[i] = random.nextDouble() * 2 - 1;
+        
+        chain = InputTransform.makeDeadband(0.1)
+            .then(InputTransform.THREE_HALVES_CURVE)
+            .then(Transform.clamp(-1, 1));
+        compiled = Transform.compile(chain);
+        tabulated = Transform.tabulate(chain, -1, 1, 1024);
+        
+        linearChain = Transform.linear(2, 1)
+            .then(Transform.clamp(-2, 2))
+            .then(Transform.linear(0.5, -0.25))
+            .then(Transform.clamp(-1, 1));
+        compiledLinearChain = Transform.compile(linearChain);
+    }
+    
+    private double nextInput () {
+        next = (next + 1) & (NUM_INPUTS - 1);
+        return inputs[next];
+    }
+    
+    @Benchmark
+    public double inputChain () {
+        return chain.apply(nextInput());
+    }
+    
+    @Benchmark
+    public double inputChainCompiled () {
+        return compiled.apply(nextInput());
+    }
+    
+    @Benchmark
+    public double inputChainTabulated () {
+        return tabulated.apply(nextInput());
+    }
+    
+    @Benchmark
+    public double linearChain () {
+        return linearChain.apply(nextInput());
+    }
+    
+    @Benchmark
+    public double linearChainCompiled () {
+        return compiledLinearChain.apply(nextInput());
+    }
+    
+    @Benchmark
+    public double[] linearChainLoop () {
+        for (int i = 0; i < NUM_INPUTS; i ++)
+            outputs[i] = compiledLinearChain.apply(inputs[i]);
+        return outputs;
+    }
+    
+    @Benchmark
+    public double[] linearChainApplyAll () {
+        compiledLinearChain.applyAll(inputs, outputs);
+        return outputs;
+    }
+    
+}
@@ -0,0 +1,67 @@
+package claw.math;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import edu.wpi.first.math.numbers.N2;
+
+/**
+ * Compares the generic {@link Vector} against {@link Vector2} and {@link MutableVector2} for the joystick-style
+ * "rescale to a new magnitude" calculation.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class VectorBenchmark {
+    
+    private static final int NUM_INPUTS = 1024;
+    
+    private final double[] xs = new double[NUM_INPUTS], ys = new double[NUM_INPUTS];
+    private final MutableVector2 mutableVector = new MutableVector2();
+    private int next = 0;
+    
+    @Setup
+    public void setup () {
+        Random random = new Random(1711);
+        for (int i = 0; i < NUM_INPUTS; i ++) {
+            xs[i] = random.nextDouble() * 2 - 1;
+            ys[i] = random.nextDouble() * 2 - 1;
+        }
+    }
+    
+    private int nextIndex () {
+        next = (next + 1) & (NUM_INPUTS - 1);
+        return next;
+    }
+    
+    @Benchmark
+    public Vector<N2> genericVector () {
+        int i = nextIndex();
+        Vector<N2> vector = Vector.from(xs[i], -ys[i]);
+        return vector.scaleToMagnitude(vector.getMagnitude() * 0.5);
+    }
+    
+    @Benchmark
+    public Vector2 vector2 () {
+        int i = nextIndex();
+        Vector2 vector = new Vector2(xs[i], -ys[i]);
+        return vector.scaleToMagnitude(vector.getMagnitude() * 0.5);
+    }
+    
+    @Benchmark
+    public double mutableVector2 () {
+        int i = nextIndex();
+        mutableVector.set(xs[i], -ys[i]);
+        mutableVector.scaleToMagnitude(mutableVector.getMagnitude() * 0.5);
+        return mutableVector.x + mutableVector.y;
+    }
+    
+}
@@ -0,0 +1,98 @@
+package claw.replay.timed;
+
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import edu.wpi.first.wpilibj2.command.Subsystem;
+
+/**
+ * Measures seeking into and interpolating a {@link TimedControlAction} recording, which happens every cycle of a replay.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class TimedControlActionBenchmark {
+    
+    private static final int NUM_INPUTS = 1024;
+    private static final long PERIOD_MICROS = 20_000;
+    
+    @Param({ "750", "15000" })
+    public int numDataPoints;
+    
+    private TimedControlAction<ScalarPoint> action;
+    private final long[] randomTimes = new long[NUM_INPUTS];
+    private int next = 0;
+    private long playbackTime = 0;
+    
+    private static class ScalarPoint implements DataPoint<ScalarPoint> {
+        
+        private final double value;
+        
+        public ScalarPoint (double value) {
+            this.value = value;
+        }
+        
+        @Override
+        public DataPoint<ScalarPoint> interpolate (DataPoint<ScalarPoint> endValue, double t) {
+            return new ScalarPoint(value + (((ScalarPoint)endValue).value - value) * t);
+        }
+        
+    }
+    
+    private static class ScalarAction extends TimedControlAction<ScalarPoint> {
+        
+        public ScalarAction (TimedDataPoint<ScalarPoint>[] dataPoints) {
+            super(dataPoints);
+        }
+        
+        @Override
+        public void moveToState (DataPoint<ScalarPoint> desiredState) { }
+        
+        @Override
+        public void stopSubsystems () { }
+        
+        @Override
+        public Set<Subsystem> getSubsystems () {
+            return Set.of();
+        }
+        
+    }
+    
+    @Setup
+    @SuppressWarnings("unchecked")
+    public void setup () {
+        Random random = new Random(1711);
+        
+        TimedDataPoint<ScalarPoint>[] dataPoints = new TimedDataPoint[numDataPoints];
+        for (int i = 0; i < numDataPoints; i ++)
+            dataPoints[i] = new TimedDataPoint<>(i * PERIOD_MICROS, new ScalarPoint(random.nextGaussian()));
+        action = new ScalarAction(dataPoints);
+        
+        for (int i = 0; i < NUM_INPUTS; i ++)
+            randomTimes[i] = (long)(random.nextDouble() * numDataPoints * PERIOD_MICROS);
+    }
+    
+    @Benchmark
+    public DataPoint<ScalarPoint> seekRandom () {
+        next = (next + 1) & (NUM_INPUTS - 1);
+        return action.getStateAt(randomTimes[next]);
+    }
+    
+    @Benchmark
+    public DataPoint<ScalarPoint> playback () {
+        // Advance slightly faster than the recording rate, as a replay loop would
+        playbackTime = (playbackTime + PERIOD_MICROS + 137) % (numDataPoints * PERIOD_MICROS);
+        return action.getStateAt(playbackTime);
+    }
+    
+}
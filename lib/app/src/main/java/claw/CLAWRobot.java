@@ -4,8 +4,10 @@ import java.io.IOException;
 import java.io.PrintWriter;
 import java.io.StringWriter;
 
+import claw.hardware.can.CANBusMonitor;
 import claw.logs.CLAWLogger;
 import claw.logs.LogHandler;
+import claw.math.input.RumbleScheduler;
 import claw.rct.commands.CommandLineInterpreter;
 import claw.rct.remote.RCTServer;
 import edu.wpi.first.wpilibj.Preferences;
@@ -19,6 +21,7 @@ public class CLAWRobot {
     // this through any NetorkTables client (so that if you turn the server off,
     // you can still control this execution)
     private static final String RUN_RCT_SERVER = "CLAW.RUN_RCT_SERVER", RCT_SERVER_PORT = "CLAW.RCT_SERVER_PORT";
+    private static final String MONITOR_CAN_BUS = "CLAW.MONITOR_CAN_BUS";
     private static final int DEFAULT_SERVER_PORT = 5800;
     
     private static final CommandLineInterpreter EXTENSIBLE_COMMAND_INTERPRETER = new CommandLineInterpreter();
@@ -38,6 +41,12 @@ public class CLAWRobot {
             startThread(CLAWRobot::initializeRCTServer);
         }
         
+        // Record the CAN bus status in the background so problems during a match are logged
+        Preferences.initBoolean(MONITOR_CAN_BUS, true);
+        if (Preferences.getBoolean(MONITOR_CAN_BUS, true)) {
+            CANBusMonitor.getInstance().start();
+        }
+        
         // Run until robot code finishes
         runRobotCode(robot, robotStartCompetition);
         
@@ -100,6 +109,8 @@ public class CLAWRobot {
     }
     
     private static void robotPeriodic () {
+        RumbleScheduler.updateAll();
+        
         if (server != null)
             LogHandler.getInstance().sendData(server);
     }
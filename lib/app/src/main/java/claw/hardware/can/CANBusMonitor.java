@@ -0,0 +1,493 @@
+package claw.hardware.can;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
+import claw.RobotErrorLog;
+import claw.logs.CLAWLogger;
+import edu.wpi.first.hal.can.CANJNI;
+import edu.wpi.first.hal.can.CANStatus;
+import edu.wpi.first.wpilibj.Notifier;
+import edu.wpi.first.wpilibj.RobotController;
+
+/**
+ * A background service which samples the status of the CAN bus at a fixed rate and keeps a long history of it, so that
+ * bus saturation and errors during a match are recorded even when nobody is watching. Samples are downsampled into
+ * a summary (minimum, average, and maximum utilization, bus-off events, and error counters) for each second, and the
+ * per-second summaries are downsampled again into a summary for each minute.
+ * <br></br>
+ * The monitor also raises alarms when the bus utilization is too high, when the bus goes off, or when the error
+ * counters are rising. Alarms are logged to {@code claw.can} and to the {@link RobotErrorLog} when they are raised,
+ * and are only raised again after they have cleared. An alarm only clears once its condition has been absent for
+ * {@value #ALARM_CLEAR_SECONDS} seconds in a row, so a long period of saturation, or a condition hovering around its
+ * threshold, is logged once. The {@code RobotErrorLog} saves to disk, so it is written on a separate thread rather than
+ * on the sampling thread.
+ */
+public final class CANBusMonitor {
+    
+    /**
+     * The period between samples of the CAN bus status, in seconds.
+     */
+    public static final double SAMPLE_PERIOD = 0.02;
+    
+    /**
+     * The number of per-second summaries kept in the history.
+     */
+    public static final int SECOND_HISTORY_LENGTH = 120;
+    
+    /**
+     * The number of per-minute summaries kept in the history.
+     */
+    public static final int MINUTE_HISTORY_LENGTH = 60;
+    
+    /**
+     * The default bus utilization above which the {@link Alarm#HIGH_UTILIZATION} alarm is raised.
+     */
+    public static final double DEFAULT_UTILIZATION_THRESHOLD = 0.8;
+    
+    /**
+     * The default rise in the error counters over one second at which the {@link Alarm#ERRORS_RISING} alarm is raised.
+     * A single error frame can raise a counter by eight, so this is several errors in one second rather than one stray
+     * error.
+     */
+    public static final int DEFAULT_ERROR_RISE_THRESHOLD = 32;
+    
+    /**
+     * The number of consecutive seconds an alarm's condition must be absent before the alarm clears.
+     */
+    public static final int ALARM_CLEAR_SECONDS = 5;
+    
+    private static final long MICROS_PER_SECOND = 1_000_000;
+    private static final int SECONDS_PER_MINUTE = 60;
+    
+    private static final CLAWLogger LOG = CLAWLogger.getLogger("claw.can");
+    
+    private static CANBusMonitor instance;
+    
+    /**
+     * Get the shared {@link CANBusMonitor}. The shared monitor is created the first time this is called, but it is
+     * not started automatically (the CLAW runtime starts it when the robot starts).
+     * @return  The shared {@code CANBusMonitor}.
+     */
+    public static synchronized CANBusMonitor getInstance () {
+        if (instance == null)
+            instance = new CANBusMonitor();
+        return instance;
+    }
+    
+    /**
+     * A summary of the CAN bus status over a second or a minute.
+     * @param minUtilization        The lowest sampled bus utilization, on the interval [0, 1].
+     * @param avgUtilization        The average sampled bus utilization, on the interval [0, 1].
+     * @param maxUtilization        The highest sampled bus utilization, on the interval [0, 1].
+     * @param busOffs               The number of times the bus went off.
+     * @param maxReceiveErrors      The highest sampled receive error counter.
+     * @param maxTransmitErrors     The highest sampled transmit error counter.
+     */
+    public static record BusSummary (
+        double minUtilization,
+        double avgUtilization,
+        double maxUtilization,
+        int busOffs,
+        int maxReceiveErrors,
+        int maxTransmitErrors
+    ) { }
+    
+    /**
+     * An alarm raised by the {@link CANBusMonitor}.
+     */
+    public static enum Alarm {
+        
+        /**
+         * The average bus utilization over a second was above the utilization threshold.
+         */
+        HIGH_UTILIZATION ("High CAN bus utilization"),
+        
+        /**
+         * The CAN controller went bus-off (stopped communicating because of too many transmit errors).
+         */
+        BUS_OFF ("CAN bus-off"),
+        
+        /**
+         * The receive and transmit error counters rose by at least the error rise threshold over a second.
+         */
+        ERRORS_RISING ("Rising CAN error counters");
+        
+        /**
+         * A readable name for the alarm.
+         */
+        public final String friendlyName;
+        
+        private Alarm (String friendlyName) {
+            this.friendlyName = friendlyName;
+        }
+        
+    }
+    
+    private final Notifier notifier;
+    private boolean running = false;
+    
+    // Only used on the notifier thread
+    private final CANStatus status = new CANStatus();
+    
+    private final SummaryHistory secondHistory = new SummaryHistory(SECOND_HISTORY_LENGTH);
+    private final SummaryHistory minuteHistory = new SummaryHistory(MINUTE_HISTORY_LENGTH);
+    private final Accumulator currentSecond = new Accumulator();
+    private final Accumulator currentMinute = new Accumulator();
+    
+    private long secondStartTime = -1;
+    private int lastBusOffCount, lastReceiveErrors, lastTransmitErrors;
+    private int secondErrorRise = 0;
+    
+    private final boolean[] activeAlarms = new boolean[Alarm.values().length];
+    
+    /**
+     * For each active alarm, the number of consecutive seconds its condition has been absent
+     */
+    private final int[] alarmQuietSeconds = new int[Alarm.values().length];
+    
+    private double utilizationThreshold = DEFAULT_UTILIZATION_THRESHOLD;
+    private int errorRiseThreshold = DEFAULT_ERROR_RISE_THRESHOLD;
+    
+    /**
+     * Warnings waiting to be written to the {@link RobotErrorLog} by the warning writer thread (guarded by itself)
+     */
+    private final ArrayDeque<String> pendingWarnings = new ArrayDeque<>();
+    private Thread warningWriterThread = null;
+    
+    private CANBusMonitor () {
+        notifier = new Notifier(this::sample);
+        notifier.setName("CANBusMonitor");
+    }
+    
+    /**
+     * Start sampling the CAN bus status in the background. This has no effect if the monitor is already running.
+     */
+    public synchronized void start () {
+        if (running) return;
+        running = true;
+        secondStartTime = -1;
+        notifier.startPeriodic(SAMPLE_PERIOD);
+    }
+    
+    /**
+     * Stop sampling the CAN bus status. The history is kept.
+     */
+    public synchronized void stop () {
+        if (!running) return;
+        running = false;
+        notifier.stop();
+    }
+    
+    /**
+     * Check whether the monitor is sampling the CAN bus status.
+     * @return  Whether the monitor is running.
+     */
+    public synchronized boolean isRunning () {
+        return running;
+    }
+    
+    /**
+     * Set the bus utilization above which the {@link Alarm#HIGH_UTILIZATION} alarm is raised. The alarm is checked
+     * against the average utilization over each second.
+     * @param threshold The utilization threshold, on the interval [0, 1].
+     */
+    public synchronized void setUtilizationThreshold (double threshold) {
+        if (threshold < 0 || threshold > 1)
+            throw new IllegalArgumentException("The utilization threshold must be on the interval [0, 1]");
+        utilizationThreshold = threshold;
+    }
+    
+    /**
+     * Set the total rise in the receive and transmit error counters over one second at which the
+     * {@link Alarm#ERRORS_RISING} alarm is raised.
+     * @param threshold The error rise threshold, which must be at least one.
+     */
+    public synchronized void setErrorRiseThreshold (int threshold) {
+        if (threshold < 1)
+            throw new IllegalArgumentException("The error rise threshold must be at least one");
+        errorRiseThreshold = threshold;
+    }
+    
+    private void sample () {
+        CANJNI.getCANStatus(status);
+        long time = RobotController.getFPGATime();
+        
+        synchronized (this) {
+            if (secondStartTime == -1) {
+                secondStartTime = time;
+                lastBusOffCount = status.busOffCount;
+                lastReceiveErrors = status.receiveErrorCount;
+                lastTransmitErrors = status.transmitErrorCount;
+            }
+            
+            // Finish the previous second before adding this sample, so each summary only contains its own samples
+            if (time - secondStartTime >= MICROS_PER_SECOND) {
+                finishSecond();
+                secondStartTime = time;
+            }
+            
+            int busOffs = Math.max(0, status.busOffCount - lastBusOffCount);
+            secondErrorRise +=
+                Math.max(0, status.receiveErrorCount - lastReceiveErrors) +
+                Math.max(0, status.transmitErrorCount - lastTransmitErrors);
+            
+            lastBusOffCount = status.busOffCount;
+            lastReceiveErrors = status.receiveErrorCount;
+            lastTransmitErrors = status.transmitErrorCount;
+            
+            double utilization = Math.max(0, Math.min(1, status.percentBusUtilization));
+            currentSecond.add(
+                utilization,
+                utilization,
+                utilization,
+                busOffs,
+                status.receiveErrorCount,
+                status.transmitErrorCount
+            );
+            
+            // Bus-off is raised immediately rather than at the end of the second, as it stops all communication
+            if (busOffs > 0)
+                raiseAlarm(Alarm.BUS_OFF, "The CAN bus went off (" + status.busOffCount + " bus-off events in total)");
+        }
+    }
+    
+    /**
+     * Add the current second to the history and check the alarms which are evaluated once per second
+     */
+    private void finishSecond () {
+        double avgUtilization = currentSecond.getAverage();
+        boolean hadBusOff = currentSecond.busOffs > 0;
+        
+        currentSecond.finish(secondHistory, currentMinute);
+        if (currentMinute.count == SECONDS_PER_MINUTE)
+            currentMinute.finish(minuteHistory, null);
+        
+        if (avgUtilization > utilizationThreshold) {
+            raiseAlarm(
+                Alarm.HIGH_UTILIZATION,
+                "CAN bus utilization averaged " + Math.round(avgUtilization * 100) + "% over one second (threshold " +
+                Math.round(utilizationThreshold * 100) + "%)"
+            );
+        } else {
+            quietAlarm(Alarm.HIGH_UTILIZATION);
+        }
+        
+        if (secondErrorRise >= errorRiseThreshold) {
+            raiseAlarm(
+                Alarm.ERRORS_RISING,
+                "CAN error counters rose by " + secondErrorRise + " over one second (receive " + lastReceiveErrors +
+                ", transmit " + lastTransmitErrors + ")"
+            );
+        } else {
+            quietAlarm(Alarm.ERRORS_RISING);
+        }
+        
+        if (!hadBusOff) quietAlarm(Alarm.BUS_OFF);
+        
+        secondErrorRise = 0;
+    }
+    
+    private void raiseAlarm (Alarm alarm, String message) {
+        alarmQuietSeconds[alarm.ordinal()] = 0;
+        if (activeAlarms[alarm.ordinal()]) return;
+        activeAlarms[alarm.ordinal()] = true;
+        
+        LOG.err(message);
+        queueWarning(message);
+    }
+    
+    /**
+     * Record a second in which an alarm's condition was absent, clearing the alarm once the condition has been absent
+     * for long enough
+     */
+    private void quietAlarm (Alarm alarm) {
+        if (!activeAlarms[alarm.ordinal()]) return;
+        if (++ alarmQuietSeconds[alarm.ordinal()] < ALARM_CLEAR_SECONDS) return;
+        activeAlarms[alarm.ordinal()] = false;
+        
+        LOG.out(alarm.friendlyName + " cleared");
+    }
+    
+    /**
+     * Queue a warning to be written to the {@link RobotErrorLog} by the warning writer thread, starting the thread if
+     * it is not already running
+     */
+    private void queueWarning (String message) {
+        synchronized (pendingWarnings) {
+            pendingWarnings.add(message);
+            pendingWarnings.notifyAll();
+            
+            if (warningWriterThread == null) {
+                warningWriterThread = new Thread(this::warningWriterRunnable);
+                warningWriterThread.setName("CANBusMonitorWarnings");
+                warningWriterThread.setDaemon(true);
+                warningWriterThread.start();
+            }
+        }
+    }
+    
+    private void warningWriterRunnable () {
+        while (true) {
+            String message;
+            synchronized (pendingWarnings) {
+                try {
+                    while (pendingWarnings.isEmpty())
+                        pendingWarnings.wait();
+                } catch (InterruptedException e) {
+                    // Let the next warning start a new writer thread
+                    warningWriterThread = null;
+                    return;
+                }
+                
+                message = pendingWarnings.poll();
+            }
+            
+            // Written without holding any lock, so a slow disk never delays the sampling thread
+            RobotErrorLog.logWarning(message);
+        }
+    }
+    
+    /**
+     * Check whether an alarm is currently raised.
+     * @param alarm The {@link Alarm} to check.
+     * @return      Whether the alarm is active.
+     */
+    public synchronized boolean isAlarmActive (Alarm alarm) {
+        return activeAlarms[alarm.ordinal()];
+    }
+    
+    /**
+     * Get every alarm which is currently raised.
+     * @return  The set of active {@link Alarm}s.
+     */
+    public synchronized Set<Alarm> getActiveAlarms () {
+        EnumSet<Alarm> alarms = EnumSet.noneOf(Alarm.class);
+        for (Alarm alarm : Alarm.values())
+            if (activeAlarms[alarm.ordinal()]) alarms.add(alarm);
+        return alarms;
+    }
+    
+    /**
+     * Get the summary of each of the last {@value #SECOND_HISTORY_LENGTH} seconds.
+     * @return  A list of {@link BusSummary}s, from oldest to newest.
+     */
+    public synchronized List<BusSummary> getSecondHistory () {
+        return secondHistory.toList();
+    }
+    
+    /**
+     * Get the summary of each of the last {@value #MINUTE_HISTORY_LENGTH} minutes.
+     * @return  A list of {@link BusSummary}s, from oldest to newest.
+     */
+    public synchronized List<BusSummary> getMinuteHistory () {
+        return minuteHistory.toList();
+    }
+    
+    /**
+     * Combines samples (or shorter summaries) into a single summary
+     */
+    private static final class Accumulator {
+        
+        private double min, sum, max;
+        private int count, busOffs, maxReceiveErrors, maxTransmitErrors;
+        
+        public Accumulator () {
+            reset();
+        }
+        
+        public void add (double min, double avg, double max, int busOffs, int receiveErrors, int transmitErrors) {
+            this.min = Math.min(this.min, min);
+            this.sum += avg;
+            this.max = Math.max(this.max, max);
+            this.count ++;
+            this.busOffs += busOffs;
+            this.maxReceiveErrors = Math.max(this.maxReceiveErrors, receiveErrors);
+            this.maxTransmitErrors = Math.max(this.maxTransmitErrors, transmitErrors);
+        }
+        
+        public double getAverage () {
+            return count == 0 ? 0 : sum / count;
+        }
+        
+        /**
+         * Add the summary to a history and to an accumulator for a longer summary (if there is one), then reset
+         */
+        public void finish (SummaryHistory history, Accumulator parent) {
+            if (count == 0) return;
+            
+            double avg = getAverage();
+            history.add(min, avg, max, busOffs, maxReceiveErrors, maxTransmitErrors);
+            if (parent != null)
+                parent.add(min, avg, max, busOffs, maxReceiveErrors, maxTransmitErrors);
+            
+            reset();
+        }
+        
+        private void reset () {
+            min = Double.POSITIVE_INFINITY;
+            sum = 0;
+            max = Double.NEGATIVE_INFINITY;
+            count = 0;
+            busOffs = 0;
+            maxReceiveErrors = 0;
+            maxTransmitErrors = 0;
+        }
+        
+    }
+    
+    /**
+     * A fixed-size ring buffer of summaries, stored in primitive arrays
+     */
+    private static final class SummaryHistory {
+        
+        private final double[] mins, avgs, maxes;
+        private final int[] busOffs, maxReceiveErrors, maxTransmitErrors;
+        private int start = 0, size = 0;
+        
+        public SummaryHistory (int capacity) {
+            mins = new double[capacity];
+            avgs = new double[capacity];
+            maxes = new double[capacity];
+            busOffs = new int[capacity];
+            maxReceiveErrors = new int[capacity];
+            maxTransmitErrors = new int[capacity];
+        }
+        
+        public void add (double min, double avg, double max, int busOffCount, int receiveErrors, int transmitErrors) {
+            int capacity = mins.length;
+            int index = (start + size) % capacity;
+            if (size == capacity) start = (start + 1) % capacity;
+            else size ++;
+            
+            mins[index] = min;
+            avgs[index] = avg;
+            maxes[index] = max;
+            busOffs[index] = busOffCount;
+            maxReceiveErrors[index] = receiveErrors;
+            maxTransmitErrors[index] = transmitErrors;
+        }
+        
+        public List<BusSummary> toList () {
+            ArrayList<BusSummary> summaries = new ArrayList<>(size);
+            for (int i = 0; i < size; i ++) {
+                int index = (start + i) % mins.length;
+                summaries.add(new BusSummary(
+                    mins[index],
+                    avgs[index],
+                    maxes[index],
+                    busOffs[index],
+                    maxReceiveErrors[index],
+                    maxTransmitErrors[index]
+                ));
+            }
+            
+            return summaries;
+        }
+        
+    }
+    
+}
@@ -0,0 +1,208 @@
+package claw.hardware.can;
+
+import java.io.File;
+import java.io.IOException;
+
+import claw.logs.CLAWLogger;
+
+/**
+ * Records the frames captured by a {@link CANSniffer} to a {@link CANCaptureFile}. Frames are copied into a primitive
+ * queue on the sniffer's thread, and a separate writer thread streams them to disk, so a slow disk never delays the
+ * sniffer. If the queue fills up faster than the writer thread can empty it, new frames are dropped and counted.
+ * <br></br>
+ * Each frame is recorded with both the time of the sniffer poll which captured it and the timestamp the CAN driver gave
+ * it when it was received (see {@link CANCaptureFile}).
+ */
+public final class CANCapture implements CANSniffer.FrameListener {
+    
+    /**
+     * The number of frames the queue between the sniffer and the writer thread can hold.
+     */
+    public static final int QUEUE_CAPACITY = 8192;
+    
+    private static final long WRITER_WAIT_MILLIS = 50;
+    
+    private static final CLAWLogger LOG = CLAWLogger.getLogger("claw.can");
+    
+    private final CANSniffer sniffer;
+    private final File file;
+    private final CANCaptureFile.Writer writer;
+    private final Thread writerThread;
+    
+    // The queue of frames waiting to be written, as a ring buffer of primitive arrays
+    private final long[] queuedTimes = new long[QUEUE_CAPACITY];
+    private final long[] queuedDriverTimestamps = new long[QUEUE_CAPACITY];
+    private final int[] queuedIDs = new int[QUEUE_CAPACITY];
+    private final byte[] queuedLengths = new byte[QUEUE_CAPACITY];
+    private final byte[] queuedPayloads = new byte[QUEUE_CAPACITY * MutableCANMessage.MAX_DATA_LENGTH];
+    private int queueStart = 0, queueSize = 0;
+    
+    private long startTime = -1;
+    private long framesWritten = 0, framesDropped = 0;
+    private boolean running = true;
+    
+    /**
+     * Start capturing the frames from a {@link CANSniffer} to a file. The sniffer must be running for any frames to be
+     * captured.
+     * @param sniffer       The sniffer to capture frames from.
+     * @param file          The file to write the capture to, which will be overwritten if it exists.
+     * @throws IOException  If the file could not be created.
+     */
+    public CANCapture (CANSniffer sniffer, File file) throws IOException {
+        File directory = file.getAbsoluteFile().getParentFile();
+        if (directory != null) directory.mkdirs();
+        
+        this.sniffer = sniffer;
+        this.file = file;
+        writer = new CANCaptureFile.Writer(file);
+        
+        writerThread = new Thread(this::writerThreadRunnable);
+        writerThread.setName("CANCapture");
+        writerThread.setDaemon(true);
+        writerThread.start();
+        
+        sniffer.addListener(this);
+    }
+    
+    @Override
+    public synchronized void onFrame (MutableCANMessage message, long captureTime) {
+        if (!running) return;
+        
+        if (queueSize == QUEUE_CAPACITY) {
+            framesDropped ++;
+            return;
+        }
+        
+        if (startTime == -1) startTime = captureTime;
+        
+        int index = (queueStart + queueSize) % QUEUE_CAPACITY;
+        queuedTimes[index] = captureTime - startTime;
+        queuedDriverTimestamps[index] = message.timestamp;
+        queuedIDs[index] = message.messageID;
+        queuedLengths[index] = (byte)message.length;
+        System.arraycopy(message.data, 0, queuedPayloads, index * MutableCANMessage.MAX_DATA_LENGTH, message.length);
+        queueSize ++;
+    }
+    
+    @Override
+    public synchronized void onPoll (long pollTime) {
+        if (queueSize > 0) notifyAll();
+    }
+    
+    private void writerThreadRunnable () {
+        try {
+            while (writeQueuedFrames());
+        } catch (IOException e) {
+            LOG.err("Failed to write the CAN capture to '" + file + "': " + e.getMessage());
+            synchronized (this) {
+                running = false;
+            }
+        } finally {
+            sniffer.removeListener(this);
+            try {
+                writer.close();
+            } catch (IOException e) {
+                LOG.err("Failed to close the CAN capture file '" + file + "': " + e.getMessage());
+            }
+        }
+    }
+    
+    /**
+     * Wait for frames and write everything in the queue. Returns {@code false} once the capture has stopped and the
+     * queue is empty.
+     */
+    private boolean writeQueuedFrames () throws IOException {
+        synchronized (this) {
+            if (queueSize == 0) {
+                if (!running) return false;
+                
+                try {
+                    wait(WRITER_WAIT_MILLIS);
+                } catch (InterruptedException e) {
+                    running = false;
+                }
+            }
+        }
+        
+        // Frames are written one at a time without holding the lock during I/O. Only the writer thread removes frames
+        // from the queue, so the frame at the start of the queue cannot change while it is being written
+        while (true) {
+            int index;
+            synchronized (this) {
+                if (queueSize == 0) break;
+                index = queueStart;
+            }
+            
+            writer.writeFrame(
+                queuedTimes[index],
+                queuedDriverTimestamps[index],
+                queuedIDs[index],
+                queuedPayloads,
+                index * MutableCANMessage.MAX_DATA_LENGTH,
+                queuedLengths[index]
+            );
+            
+            synchronized (this) {
+                queueStart = (queueStart + 1) % QUEUE_CAPACITY;
+                queueSize --;
+                framesWritten ++;
+            }
+        }
+        
+        writer.flush();
+        return true;
+    }
+    
+    /**
+     * Stop the capture. Frames which have already been captured are still written, and the file is closed once the
+     * writer thread finishes.
+     */
+    public void stop () {
+        synchronized (this) {
+            running = false;
+            notifyAll();
+        }
+    }
+    
+    /**
+     * Stop the capture and wait for every captured frame to be written to the file.
+     * @throws InterruptedException If the thread was interrupted while waiting.
+     */
+    public void stopAndWait () throws InterruptedException {
+        stop();
+        writerThread.join();
+    }
+    
+    /**
+     * Check whether the capture is still accepting frames.
+     * @return  Whether the capture is running.
+     */
+    public synchronized boolean isRunning () {
+        return running;
+    }
+    
+    /**
+     * Get the file the capture is written to.
+     * @return  The capture file.
+     */
+    public File getFile () {
+        return file;
+    }
+    
+    /**
+     * Get the number of frames written to the file so far.
+     * @return  The number of frames written.
+     */
+    public synchronized long getFramesWritten () {
+        return framesWritten;
+    }
+    
+    /**
+     * Get the number of frames which were dropped because the queue was full.
+     * @return  The number of dropped frames.
+     */
+    public synchronized long getFramesDropped () {
+        return framesDropped;
+    }
+    
+}
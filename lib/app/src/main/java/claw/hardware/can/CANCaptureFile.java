@@ -0,0 +1,233 @@
+package claw.hardware.can;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * The binary format of CAN capture files, written by a {@link CANCapture} on the roboRIO and decoded offline by the
+ * driverstation. A capture file is a header (a magic number and the format version) followed by one record per frame:
+ * <ul>
+ * <li>The capture time since the previous frame in microseconds (the first frame's time is since the start of the
+ * capture), as an unsigned variable-length integer of 7 bits per byte.</li>
+ * <li>The driver timestamp minus the previous frame's driver timestamp in milliseconds (the first frame's is its full
+ * driver timestamp), as a signed 32-bit difference zigzag-encoded into an unsigned variable-length integer.</li>
+ * <li>The arbitration ID, as a 4-byte integer.</li>
+ * <li>The data length code (DLC), as a single byte.</li>
+ * <li>The payload, as DLC bytes.</li>
+ * </ul>
+ * All multi-byte integers are big-endian. This class has no dependencies on WPILib, so it can be used off the robot.
+ * <br></br>
+ * Each frame has two times. The capture time is the FPGA time (in microseconds) of the {@link CANSniffer} poll which
+ * read the frame, so every frame read by one poll has the same capture time. The driver timestamp is the time (in
+ * milliseconds, as an unsigned 32-bit count) at which the roboRIO's CAN driver received the frame, which tells apart
+ * frames read by the same poll. Version 1 captures only have capture times.
+ */
+public final class CANCaptureFile {
+    
+    /**
+     * The file extension of capture files.
+     */
+    public static final String EXTENSION = ".cancap";
+    
+    private static final int MAGIC = 0x434C4143;
+    private static final int FORMAT_VERSION = 2;
+    
+    /**
+     * Writes frames to a capture file. A {@code Writer} is not thread-safe.
+     */
+    public static final class Writer implements Closeable {
+        
+        private final DataOutputStream out;
+        private long lastTimeMicros = 0;
+        private int lastDriverTimestamp = 0;
+        
+        /**
+         * Create a new capture file, overwriting any existing file, and write its header.
+         * @param file          The file to write to.
+         * @throws IOException  If the file could not be created.
+         */
+        public Writer (File file) throws IOException {
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+            out.writeInt(MAGIC);
+            out.writeByte(FORMAT_VERSION);
+        }
+        
+        /**
+         * Write a frame to the capture.
+         * @param timeMicros        The capture time of the frame since the start of the capture, in microseconds. This
+         * must not be less than the capture time of the previous frame.
+         * @param driverTimestamp   The timestamp at which the CAN driver received the frame, in milliseconds (see
+         * {@link MutableCANMessage#timestamp}).
+         * @param messageID         The arbitration ID of the frame.
+         * @param data              An array containing the payload of the frame.
+         * @param offset            The index of the first payload byte in {@code data}.
+         * @param length            The number of payload bytes (the DLC), at most {@link MutableCANMessage#MAX_DATA_LENGTH}.
+         * @throws IOException      If the frame could not be written.
+         */
+        public void writeFrame (long timeMicros, long driverTimestamp, int messageID, byte[] data, int offset, int length) throws IOException {
+            writeVarLong(Math.max(0, timeMicros - lastTimeMicros));
+            lastTimeMicros = Math.max(lastTimeMicros, timeMicros);
+            
+            // The driver timestamp wraps around as a 32-bit count, so only the 32-bit difference is stored
+            int driverDelta = (int)driverTimestamp - lastDriverTimestamp;
+            writeVarLong(Integer.toUnsignedLong((driverDelta << 1) ^ (driverDelta >> 31)));
+            lastDriverTimestamp = (int)driverTimestamp;
+            
+            out.writeInt(messageID);
+            out.writeByte(length);
+            out.write(data, offset, length);
+        }
+        
+        private void writeVarLong (long value) throws IOException {
+            while ((value & ~0x7FL) != 0) {
+                out.writeByte((int)(value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            
+            out.writeByte((int)value);
+        }
+        
+        /**
+         * Flush any buffered frames to the file.
+         * @throws IOException  If the frames could not be written.
+         */
+        public void flush () throws IOException {
+            out.flush();
+        }
+        
+        @Override
+        public void close () throws IOException {
+            out.close();
+        }
+        
+    }
+    
+    /**
+     * Reads frames from a capture file, in the order they were captured.
+     */
+    public static final class Reader implements Closeable {
+        
+        private final DataInputStream in;
+        private final int version;
+        private long timeMicros = 0;
+        
+        /**
+         * The driver timestamp of the most recent frame, unwrapped so that it keeps increasing past 32 bits, and the
+         * driver timestamp of the first frame
+         */
+        private long driverTimestamp = 0, firstDriverTimestamp = 0;
+        private boolean hasReadFrame = false;
+        
+        /**
+         * Open a capture file and read its header.
+         * @param file          The file to read.
+         * @throws IOException  If the file could not be read or is not a capture file.
+         */
+        public Reader (File file) throws IOException {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            
+            try {
+                if (in.readInt() != MAGIC)
+                    throw new IOException("'" + file.getName() + "' is not a CAN capture file");
+                
+                version = in.readUnsignedByte();
+                if (version < 1 || version > FORMAT_VERSION)
+                    throw new IOException("Unsupported CAN capture format version " + version);
+            } catch (IOException e) {
+                in.close();
+                throw e;
+            }
+        }
+        
+        /**
+         * Read the next frame of the capture.
+         * @param output        The message to fill with the frame. Its timestamp is set to the driver timestamp of the
+         * frame, or to the capture time since the start of the capture (in milliseconds) for version 1 captures.
+         * @return              {@code true} if a frame was read, or {@code false} at the end of the capture.
+         * @throws IOException  If the file could not be read or is malformed.
+         */
+        public boolean next (MutableCANMessage output) throws IOException {
+            long delta;
+            try {
+                delta = readVarLong();
+            } catch (EOFException e) {
+                return false;
+            }
+            
+            // A frame cut off partway through (for example, if the robot lost power during a capture) is treated
+            // as the end of the capture
+            try {
+                timeMicros += delta;
+                
+                if (version >= 2) {
+                    long zigzag = readVarLong();
+                    driverTimestamp += (int)(zigzag >>> 1) ^ -(int)(zigzag & 1);
+                } else {
+                    driverTimestamp = timeMicros / 1000;
+                }
+                
+                if (!hasReadFrame) {
+                    firstDriverTimestamp = driverTimestamp;
+                    hasReadFrame = true;
+                }
+                
+                output.messageID = in.readInt();
+                output.length = in.readUnsignedByte();
+                if (output.length > MutableCANMessage.MAX_DATA_LENGTH)
+                    throw new IOException("Malformed CAN capture frame with a DLC of " + output.length);
+                
+                in.readFully(output.data, 0, output.length);
+                output.timestamp = version >= 2 ? driverTimestamp & 0xFFFFFFFFL : driverTimestamp;
+                return true;
+            } catch (EOFException e) {
+                return false;
+            }
+        }
+        
+        /**
+         * Get the capture time of the most recently read frame, which is the same for every frame read by one poll.
+         * @return  The time since the start of the capture, in microseconds.
+         */
+        public long getTimeMicros () {
+            return timeMicros;
+        }
+        
+        /**
+         * Get the driver timestamp of the most recently read frame relative to the first frame of the capture. Unlike
+         * {@link #getTimeMicros()}, this tells apart frames read by the same poll, but only has millisecond resolution.
+         * For version 1 captures, this is the capture time rounded down to the millisecond.
+         * @return  The time since the first frame of the capture, in microseconds (a whole number of milliseconds).
+         */
+        public long getDriverTimeMicros () {
+            return (driverTimestamp - firstDriverTimestamp) * 1000;
+        }
+        
+        private long readVarLong () throws IOException {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                int b = in.readUnsignedByte();
+                value |= (long)(b & 0x7F) << shift;
+                if ((b & 0x80) == 0) return value;
+            }
+            
+            throw new IOException("Malformed CAN capture frame time");
+        }
+        
+        @Override
+        public void close () throws IOException {
+            in.close();
+        }
+        
+    }
+    
+    private CANCaptureFile () { }
+    
+}
@@ -0,0 +1,186 @@
+package claw.hardware.can;
+
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Consumer;
+
+import claw.hardware.can.CANScanner.CANDeviceTrace;
+import claw.logs.CLAWLogger;
+import edu.wpi.first.hal.can.CANJNI;
+import edu.wpi.first.wpilibj.RobotController;
+
+/**
+ * Actively discovers the devices on the CAN bus within a fixed amount of time. Discovery broadcasts the FRC
+ * "enumerate" frame, which asks every device to identify itself, and then listens to a {@link CANSniffer} until a
+ * deadline. Only frames from real devices are counted (see {@link CANMessageID#isDeviceMessage()}), so broadcast,
+ * reserved, and malformed IDs never show up as devices. Devices are made available through {@link #nextDevice()} as
+ * soon as they are first heard from, so results can be shown while discovery is still running.
+ */
+public final class CANDeviceDiscovery implements CANSniffer.FrameListener, AutoCloseable {
+    
+    /**
+     * The arbitration ID of the broadcast "enumerate" frame (device type, manufacturer, and API class 0, API index 9).
+     */
+    public static final int ENUMERATE_MESSAGE_ID = 9 << 6;
+    
+    /**
+     * The flags the CAN driver sets in the message ID of frames which are not extended data frames
+     */
+    private static final int NON_FRC_FRAME_FLAGS = CANJNI.CAN_IS_FRAME_11BIT | CANJNI.CAN_IS_FRAME_REMOTE;
+    
+    /**
+     * The number of bits in a compact device key (device type, manufacturer, and device number)
+     */
+    private static final int DEVICE_KEY_BITS = 19;
+    
+    private static final CLAWLogger LOG = CLAWLogger.getLogger("claw.can");
+    
+    private final CANSniffer sniffer;
+    private final long deadline;
+    
+    /**
+     * A bit set of the compact keys of every device seen so far, so that checking a frame does not allocate
+     */
+    private final long[] seenDevices = new long[(1 << DEVICE_KEY_BITS) / 64];
+    
+    /**
+     * The message IDs (with the API class and index removed) of discovered devices, in the order they were found
+     */
+    private int[] foundDevices = new int[32];
+    private int numFound = 0, numReported = 0;
+    private boolean listening = true;
+    
+    /**
+     * Start discovering devices on the CAN bus. The sniffer is started if it is not already running, and the enumerate
+     * frame is sent once the discovery is listening. Discovery stops on its own once the timeout has passed.
+     * @param sniffer       The sniffer to listen to (usually the shared sniffer from {@link CANSniffer#getInstance()}).
+     * @param timeoutSecs   The time to listen for devices, in seconds.
+     */
+    public CANDeviceDiscovery (CANSniffer sniffer, double timeoutSecs) {
+        if (timeoutSecs <= 0)
+            throw new IllegalArgumentException("The discovery timeout must be greater than zero");
+        
+        this.sniffer = sniffer;
+        deadline = RobotController.getFPGATime() + Math.round(timeoutSecs * 1e6);
+        
+        sniffer.addListener(this);
+        sniffer.start();
+        sendEnumerate();
+    }
+    
+    /**
+     * Discover the devices on the CAN bus, blocking until the timeout has passed.
+     * @param sniffer       The sniffer to listen to (usually the shared sniffer from {@link CANSniffer#getInstance()}).
+     * @param timeoutSecs   The time to listen for devices, in seconds.
+     * @param onDeviceFound A callback run on the calling thread for each device, as soon as it is discovered.
+     * @return              The set of discovered {@link CANDeviceTrace}s, in the order they were found.
+     * @throws InterruptedException If the thread was interrupted while waiting for devices.
+     */
+    public static Set<CANDeviceTrace> discover (
+        CANSniffer sniffer,
+        double timeoutSecs,
+        Consumer<CANDeviceTrace> onDeviceFound
+    ) throws InterruptedException {
+        try (CANDeviceDiscovery discovery = new CANDeviceDiscovery(sniffer, timeoutSecs)) {
+            Optional<CANDeviceTrace> device;
+            while ((device = discovery.nextDevice()).isPresent())
+                onDeviceFound.accept(device.get());
+            return discovery.getDevices();
+        }
+    }
+    
+    /**
+     * Broadcast the enumerate frame. If the frame cannot be sent, discovery continues passively, finding only
+     * the devices which send frames on their own.
+     */
+    private void sendEnumerate () {
+        try {
+            CANJNI.FRCNetCommCANSessionMuxSendMessage(ENUMERATE_MESSAGE_ID, new byte[0], CANJNI.CAN_SEND_PERIOD_NO_REPEAT);
+        } catch (RuntimeException e) {
+            LOG.err("Failed to send the CAN enumerate frame, discovering devices passively: " + e.getMessage());
+        }
+    }
+    
+    /**
+     * Check whether a message ID belongs to a frame sent by a real device
+     */
+    private static boolean isDeviceFrame (int messageID) {
+        return (messageID & NON_FRC_FRAME_FLAGS) == 0 && CANMessageID.fromMessageIdCached(messageID).isDeviceMessage();
+    }
+    
+    @Override
+    public synchronized void onFrame (MutableCANMessage message, long captureTime) {
+        if (!listening || captureTime > deadline || !isDeviceFrame(message.messageID)) return;
+        
+        int deviceID = message.messageID & CANHealthMonitor.DEVICE_MASK;
+        
+        // The device type and manufacturer (the upper 13 bits) followed by the device number (the lower 6 bits)
+        int key = (deviceID >>> 10) | (deviceID & 0x3F);
+        long bit = 1L << (key & 63);
+        if ((seenDevices[key >>> 6] & bit) != 0) return;
+        seenDevices[key >>> 6] |= bit;
+        
+        if (numFound == foundDevices.length)
+            foundDevices = Arrays.copyOf(foundDevices, numFound * 2);
+        foundDevices[numFound ++] = deviceID;
+        notifyAll();
+    }
+    
+    /**
+     * Wait for the next newly discovered device. Once the timeout has passed and every discovered device has been
+     * returned, discovery stops and this returns an empty optional.
+     * @return  The next discovered {@link CANDeviceTrace}, or an empty optional if discovery has finished.
+     * @throws InterruptedException If the thread was interrupted while waiting.
+     */
+    public synchronized Optional<CANDeviceTrace> nextDevice () throws InterruptedException {
+        while (numReported == numFound) {
+            long remainingMicros = deadline - RobotController.getFPGATime();
+            if (!listening || remainingMicros <= 0) {
+                close();
+                return Optional.empty();
+            }
+            
+            wait(Math.max(1, remainingMicros / 1000));
+        }
+        
+        return Optional.of(toTrace(foundDevices[numReported ++]));
+    }
+    
+    private static CANDeviceTrace toTrace (int deviceID) {
+        CANMessageID messageID = CANMessageID.fromMessageIdCached(deviceID);
+        return new CANDeviceTrace(messageID.deviceType(), messageID.manufacturer(), messageID.deviceNum());
+    }
+    
+    /**
+     * Get every device discovered so far.
+     * @return  The set of discovered {@link CANDeviceTrace}s, in the order they were found.
+     */
+    public synchronized Set<CANDeviceTrace> getDevices () {
+        LinkedHashSet<CANDeviceTrace> devices = new LinkedHashSet<>();
+        for (int i = 0; i < numFound; i ++)
+            devices.add(toTrace(foundDevices[i]));
+        return devices;
+    }
+    
+    /**
+     * Check whether discovery has finished, either because the timeout has passed or because it was closed.
+     * @return  Whether discovery has finished.
+     */
+    public synchronized boolean isFinished () {
+        return !listening || RobotController.getFPGATime() >= deadline;
+    }
+    
+    /**
+     * Stop discovering devices. Devices which have already been discovered are kept. The sniffer is not stopped.
+     */
+    @Override
+    public synchronized void close () {
+        if (!listening) return;
+        listening = false;
+        sniffer.removeListener(this);
+        notifyAll();
+    }
+    
+}
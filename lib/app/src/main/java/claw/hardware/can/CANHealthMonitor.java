@@ -0,0 +1,270 @@
+package claw.hardware.can;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import claw.logs.CLAWLogger;
+
+/**
+ * Tracks traffic statistics for every periodic frame seen by a {@link CANSniffer}, and detects when a device stops
+ * sending a frame it was sending periodically (for example, when a motor controller loses power or its CAN wiring
+ * comes loose). Each distinct arbitration ID is tracked separately, as each status frame of a device has its own period.
+ * Statistics are kept in primitive arrays indexed through an open-addressing table keyed by arbitration ID, so
+ * tracking frames does not allocate.
+ * <br></br>
+ * A frame is considered lost when it has not been seen for several times its usual period. Losses and recoveries are
+ * logged to {@code claw.can}.
+ */
+public final class CANHealthMonitor implements CANSniffer.FrameListener {
+    
+    /**
+     * The maximum number of distinct arbitration IDs which can be tracked. Frames with other IDs are counted as untracked.
+     */
+    public static final int MAX_TRACKED_IDS = 512;
+    
+    /**
+     * The bits of a message ID which identify a device (device type, manufacturer, and device number), excluding the
+     * API class and index.
+     */
+    public static final int DEVICE_MASK = 0x1FFF003F;
+    
+    private static final int ARBITRATION_ID_MASK = 0x1FFFFFFF;
+    
+    // The table has twice as many slots as tracked IDs so that probe sequences stay short
+    private static final int TABLE_SIZE = MAX_TRACKED_IDS * 2;
+    
+    /**
+     * The number of frames which must be seen before a frame's period is trusted enough to detect losses
+     */
+    private static final int MIN_FRAMES_FOR_LOSS_DETECTION = 5;
+    
+    /**
+     * A frame is lost if it has not been seen for this many times its usual period...
+     */
+    private static final double LOSS_PERIOD_MULTIPLIER = 5;
+    
+    /**
+     * ...and for at least this long, so that polling jitter does not cause false losses on fast frames
+     */
+    private static final long MIN_LOSS_GAP_MICROS = 100_000;
+    
+    private static final long LOSS_CHECK_INTERVAL_MICROS = 20_000;
+    
+    private static final double PERIOD_SMOOTHING = 0.1;
+    
+    private static final CLAWLogger LOG = CLAWLogger.getLogger("claw.can");
+    
+    private static CANHealthMonitor instance;
+    
+    /**
+     * Get the shared {@link CANHealthMonitor}, which listens to the shared {@link CANSniffer}. Note that the sniffer
+     * must be running for the monitor to receive any frames.
+     * @return  The shared {@code CANHealthMonitor}.
+     */
+    public static synchronized CANHealthMonitor getInstance () {
+        if (instance == null)
+            instance = new CANHealthMonitor(CANSniffer.getInstance());
+        return instance;
+    }
+    
+    /**
+     * Traffic statistics for a single arbitration ID.
+     * @param messageID         The arbitration ID of the frame.
+     * @param frameCount        The number of times the frame has been seen.
+     * @param frameRate         The recent rate at which the frame is being received, in frames per second.
+     * @param maxGapSecs        The longest time between two consecutive receptions of the frame, in seconds.
+     * @param lossCount         The number of times the frame has been lost.
+     * @param lost              Whether the frame is currently lost.
+     */
+    public static record FrameStats (int messageID, long frameCount, double frameRate, double maxGapSecs, int lossCount, boolean lost) {
+        
+        /**
+         * Get the key of the device which sent this frame, which is shared by every frame the device sends.
+         * @return  The message ID with the API class and index removed.
+         */
+        public int getDeviceKey () {
+            return messageID & DEVICE_MASK;
+        }
+        
+    }
+    
+    /**
+     * Maps the hash slot of each arbitration ID to its index in the stats arrays plus one (zero is an empty slot)
+     */
+    private final int[] table = new int[TABLE_SIZE];
+    
+    private final int[] messageIDs = new int[MAX_TRACKED_IDS];
+    private final long[] frameCounts = new long[MAX_TRACKED_IDS];
+    private final long[] lastSeenTimes = new long[MAX_TRACKED_IDS];
+    private final double[] meanPeriods = new double[MAX_TRACKED_IDS];
+    private final long[] maxGaps = new long[MAX_TRACKED_IDS];
+    private final int[] lossCounts = new int[MAX_TRACKED_IDS];
+    private final boolean[] lost = new boolean[MAX_TRACKED_IDS];
+    
+    private int numTracked = 0;
+    private long untrackedFrames = 0;
+    private long lastLossCheckTime = 0;
+    
+    /**
+     * Create a new {@link CANHealthMonitor} which listens to the frames captured by a {@link CANSniffer}. Most users
+     * should use the shared monitor from {@link #getInstance()} instead.
+     * @param sniffer   The sniffer to listen to.
+     */
+    public CANHealthMonitor (CANSniffer sniffer) {
+        sniffer.addListener(this);
+    }
+    
+    private static int hashSlot (int messageID) {
+        // Spread the ID bits (most of the variation is in the low device number and API bits)
+        int hash = messageID * 0x9E3779B9;
+        return (hash ^ (hash >>> 16)) & (TABLE_SIZE - 1);
+    }
+    
+    /**
+     * Find the stats index of an arbitration ID, adding it if it is not yet tracked. Returns -1 if the ID is not
+     * tracked and there is no room to add it.
+     */
+    private int getOrAddIndex (int messageID) {
+        int slot = hashSlot(messageID);
+        while (table[slot] != 0) {
+            int index = table[slot] - 1;
+            if (messageIDs[index] == messageID) return index;
+            slot = (slot + 1) & (TABLE_SIZE - 1);
+        }
+        
+        if (numTracked == MAX_TRACKED_IDS) return -1;
+        
+        int index = numTracked ++;
+        table[slot] = index + 1;
+        messageIDs[index] = messageID;
+        return index;
+    }
+    
+    @Override
+    public synchronized void onFrame (MutableCANMessage message, long captureTime) {
+        int messageID = message.messageID & ARBITRATION_ID_MASK;
+        int index = getOrAddIndex(messageID);
+        if (index == -1) {
+            untrackedFrames ++;
+            return;
+        }
+        
+        long count = frameCounts[index];
+        if (count > 0) {
+            long gap = captureTime - lastSeenTimes[index];
+            maxGaps[index] = Math.max(maxGaps[index], gap);
+            
+            if (lost[index]) {
+                // Gaps during a loss are not part of the frame's usual period
+                lost[index] = false;
+                LOG.out("CAN frame resumed after " + (gap / 1000) + " ms: " + describe(messageID));
+            } else if (gap > 0) {
+                // Frames read more than once in a single poll have no gap between them, so they are ignored
+                meanPeriods[index] = meanPeriods[index] == 0
+                    ? gap
+                    : meanPeriods[index] + (gap - meanPeriods[index]) * PERIOD_SMOOTHING;
+            }
+        }
+        
+        frameCounts[index] = count + 1;
+        lastSeenTimes[index] = captureTime;
+    }
+    
+    @Override
+    public synchronized void onPoll (long pollTime) {
+        if (pollTime - lastLossCheckTime < LOSS_CHECK_INTERVAL_MICROS) return;
+        lastLossCheckTime = pollTime;
+        
+        for (int i = 0; i < numTracked; i ++) {
+            if (lost[i] || frameCounts[i] < MIN_FRAMES_FOR_LOSS_DETECTION) continue;
+            
+            long gap = pollTime - lastSeenTimes[i];
+            if (gap > getLossThreshold(i)) {
+                lost[i] = true;
+                lossCounts[i] ++;
+                LOG.err(
+                    "CAN frame lost (not seen for " + (gap / 1000) + " ms, usually every " +
+                    Math.round(meanPeriods[i] / 1000) + " ms): " + describe(messageIDs[i])
+                );
+            }
+        }
+    }
+    
+    private long getLossThreshold (int index) {
+        return Math.max(MIN_LOSS_GAP_MICROS, (long)(meanPeriods[index] * LOSS_PERIOD_MULTIPLIER));
+    }
+    
+    /**
+     * Get a readable description of the device and API of a message ID.
+     * @param messageID The arbitration ID.
+     * @return          A description of the message ID.
+     */
+    public static String describe (int messageID) {
+        CANMessageID id = CANMessageID.fromMessageId(messageID);
+        return describeDevice(messageID) + " API " + id.apiClass() + ":" + id.apiIndex() + " (0x" + Integer.toHexString(messageID) + ")";
+    }
+    
+    /**
+     * Get a readable description of the device which sent a message.
+     * @param messageID The arbitration ID, or a device key.
+     * @return          A description of the device.
+     */
+    public static String describeDevice (int messageID) {
+        CANMessageID id = CANMessageID.fromMessageId(messageID);
+        return id.manufacturer().friendlyName + " " + id.deviceType() + " #" + id.deviceNum();
+    }
+    
+    /**
+     * Get the statistics of every tracked arbitration ID.
+     * @return  A list of {@link FrameStats}, in the order the IDs were first seen.
+     */
+    public synchronized List<FrameStats> getFrameStats () {
+        ArrayList<FrameStats> stats = new ArrayList<>(numTracked);
+        for (int i = 0; i < numTracked; i ++) {
+            stats.add(new FrameStats(
+                messageIDs[i],
+                frameCounts[i],
+                meanPeriods[i] > 0 && !lost[i] ? 1e6 / meanPeriods[i] : 0,
+                maxGaps[i] / 1e6,
+                lossCounts[i],
+                lost[i]
+            ));
+        }
+        
+        return stats;
+    }
+    
+    /**
+     * Check whether any tracked frame is currently lost.
+     * @return  Whether any frame is lost.
+     */
+    public synchronized boolean hasLostFrames () {
+        for (int i = 0; i < numTracked; i ++)
+            if (lost[i]) return true;
+        return false;
+    }
+    
+    /**
+     * Get the number of frames which were not tracked because {@link #MAX_TRACKED_IDS} distinct IDs were already tracked.
+     * @return  The number of untracked frames.
+     */
+    public synchronized long getUntrackedFrames () {
+        return untrackedFrames;
+    }
+    
+    /**
+     * Stop tracking every arbitration ID and reset all statistics.
+     */
+    public synchronized void reset () {
+        Arrays.fill(table, 0);
+        Arrays.fill(frameCounts, 0);
+        Arrays.fill(meanPeriods, 0);
+        Arrays.fill(maxGaps, 0);
+        Arrays.fill(lossCounts, 0);
+        Arrays.fill(lost, false);
+        numTracked = 0;
+        untrackedFrames = 0;
+    }
+    
+}
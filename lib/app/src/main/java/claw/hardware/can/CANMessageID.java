@@ -1,90 +1,117 @@
 package claw.hardware.can;
 
+import java.util.Arrays;
+
 /**
  * Represents the arbitration ID of a message received over CAN. See the FRC CAN Device Specifications for details on formatting:
  * https://docs.wpilib.org/en/stable/docs/software/can-devices/can-addressing.html
  */
 public record CANMessageID (byte deviceNum, byte apiIndex, byte apiClass, ManufacturerCode manufacturer, DeviceType deviceType) {
     
+    /**
+     * The bits of a message ID which are part of the 29-bit arbitration ID
+     */
+    private static final int ARBITRATION_ID_MASK = 0x1FFFFFFF;
+    
+    // Bit positions and sizes of each field of the arbitration ID, starting from the 1's place
+    private static final int
+        DEVICE_NUM_SHIFT = 0,       DEVICE_NUM_BITS = 6,
+        API_INDEX_SHIFT = 6,        API_INDEX_BITS = 4,
+        API_CLASS_SHIFT = 10,       API_CLASS_BITS = 6,
+        MANUFACTURER_SHIFT = 16,    MANUFACTURER_BITS = 8,
+        DEVICE_TYPE_SHIFT = 24,     DEVICE_TYPE_BITS = 5;
+    
+    /**
+     * Lookup tables indexed directly by the manufacturer and device type fields of a message ID
+     */
+    private static final ManufacturerCode[] MANUFACTURERS_BY_ID = buildLookupTable(
+        ManufacturerCode.class, 1 << MANUFACTURER_BITS, ManufacturerCode.UNKNOWN
+    );
+    
+    private static final DeviceType[] DEVICE_TYPES_BY_ID = buildLookupTable(
+        DeviceType.class, 1 << DEVICE_TYPE_BITS, DeviceType.UNKNOWN
+    );
+    
+    /**
+     * The number of entries in the interning cache used by {@link #fromMessageIdCached(int)}. This must be a power of two.
+     */
+    private static final int CACHE_SIZE = 1024;
+    
+    /**
+     * A direct-mapped cache of parsed message IDs. Entries are immutable and are replaced whole, so the cache can be
+     * read and written from multiple threads without locking.
+     */
+    private static final CacheEntry[] CACHE = new CacheEntry[CACHE_SIZE];
+    
+    private static record CacheEntry (int arbitrationId, CANMessageID messageID) { }
+    
     /**
      * Parse a {@link CANMessageID} from an integer message ID.
      * @param fullArbitrationId The full message ID / arbitration ID.
      * @return  The parsed {@code CANMessageID}.
      */
     public static CANMessageID fromMessageId (int fullArbitrationId) {
-        
-        // Break apart the arbitration ID into its components:
-        int[] bitSliceSizes = new int[] {
-            6,  // Device number
-            4,  // API Index
-            6,  // API Class
-            8,  // Manufacturer Code
-            5,  // Device Type
-        };
-        
-        // Get the binary slices of the message ID corresponding with each useful segment (device number, api index, etc.)
-        int[] bitSlices = getBinarySlices(fullArbitrationId, bitSliceSizes);
-        
-        // Get the byte fields
-        byte deviceNum =    (byte)bitSlices[0];
-        byte apiIndex =     (byte)bitSlices[1];
-        byte apiClass =     (byte)bitSlices[2];
-        
-        // Parse a ManufacturerCode from bitSlices[3]
-        ManufacturerCode manufacturer = getEnumFromId(
-            ManufacturerCode.class,
-            bitSlices[3],
-            ManufacturerCode.UNKNOWN
+        return new CANMessageID(
+            (byte)getField(fullArbitrationId, DEVICE_NUM_SHIFT, DEVICE_NUM_BITS),
+            (byte)getField(fullArbitrationId, API_INDEX_SHIFT, API_INDEX_BITS),
+            (byte)getField(fullArbitrationId, API_CLASS_SHIFT, API_CLASS_BITS),
+            MANUFACTURERS_BY_ID[getField(fullArbitrationId, MANUFACTURER_SHIFT, MANUFACTURER_BITS)],
+            DEVICE_TYPES_BY_ID[getField(fullArbitrationId, DEVICE_TYPE_SHIFT, DEVICE_TYPE_BITS)]
         );
+    }
+    
+    /**
+     * Parse a {@link CANMessageID} from an integer message ID, reusing a previously parsed instance for the same ID if
+     * one is still cached. Because a CAN bus carries a limited set of distinct IDs, this usually returns a cached
+     * instance and does not allocate. {@code CANMessageID} is immutable, so the returned instance can be shared freely.
+     * @param fullArbitrationId The full message ID / arbitration ID.
+     * @return  The parsed {@code CANMessageID}.
+     */
+    public static CANMessageID fromMessageIdCached (int fullArbitrationId) {
+        int arbitrationId = fullArbitrationId & ARBITRATION_ID_MASK;
         
-        // Parse a DeviceType from bitSlices[4]
-        DeviceType deviceType = getEnumFromId(
-            DeviceType.class,
-            bitSlices[4],
-            DeviceType.UNKNOWN
-        );
+        // Mix the bits of the ID so that IDs which differ only in their upper fields use different entries
+        int hash = arbitrationId * 0x9E3779B9;
+        int index = (hash ^ (hash >>> 16)) & (CACHE_SIZE - 1);
         
-        return new CANMessageID(deviceNum, apiIndex, apiClass, manufacturer, deviceType);
+        CacheEntry entry = CACHE[index];
+        if (entry != null && entry.arbitrationId == arbitrationId)
+            return entry.messageID;
         
+        CANMessageID messageID = fromMessageId(arbitrationId);
+        CACHE[index] = new CacheEntry(arbitrationId, messageID);
+        return messageID;
     }
     
     /**
-     * Get an array of binary slices from a value.
-     * @param value         The value to take binary slices from
-     * @param sliceSizes    The size of each slice. {@code slice[0]} will be taken from the far right of the value.
-     * @return              An array of binary slices corresponding with the given {@code sliceSizes} array
+     * Check whether this message ID could have been sent by a real device, rather than being a broadcast message,
+     * a firmware update message, or an ID using a reserved or unknown device type or manufacturer.
+     * @return  Whether this ID has a valid device type and manufacturer.
      */
-    private static int[] getBinarySlices (int value, int[] sliceSizes) {
-        int[] bitSlices = new int[sliceSizes.length];
-        
-        int startIndex = 0;
-        for (int i = 0; i < bitSlices.length; i ++) {
-            bitSlices[i] = getBinarySliceFrom(value, startIndex, sliceSizes[i]);
-            startIndex += sliceSizes[i];
-        }
-        
-        return bitSlices;
+    public boolean isDeviceMessage () {
+        boolean validDeviceType =
+            deviceType != DeviceType.BROADCAST_MESSAGES &&
+            deviceType != DeviceType.RESERVED &&
+            deviceType != DeviceType.FIRMWARE_UPDATE &&
+            deviceType != DeviceType.UNKNOWN;
+        
+        boolean validManufacturer =
+            manufacturer != ManufacturerCode.BROADCAST &&
+            manufacturer != ManufacturerCode.RESERVED &&
+            manufacturer != ManufacturerCode.UNKNOWN;
+        
+        return validDeviceType && validManufacturer;
     }
     
     /**
-     * Gets a binary slice from a given value.
-     * @param value         The value to retrieve the binary slice from.
-     * @param startIndex    The index of the first bit to retrieve, starting at the 1's place (index 0).
-     * @param length        The number of bits to retrieve from the given {@code value}.
-     * @return              The section of bits retrieved from the {@code value}, shifted so the 1's place
-     * contains the rightmost bit in the slice.
+     * Gets a field from a message ID.
+     * @param value         The message ID to retrieve the field from.
+     * @param shift         The index of the first bit of the field, starting at the 1's place (index 0).
+     * @param length        The number of bits in the field.
+     * @return              The field, shifted so the 1's place contains its rightmost bit.
      */
-    private static int getBinarySliceFrom (int value, int startIndex, int length) {
-        // This creates an int bitMask which, when viewed in binary representation,
-        // looks like 1111110000, where the parameter "length" describes the number of
-        // 1 bits, and the parameter "startIndex" describes the number of 0 bits
-        int bitMask = ~(-1 << length) << startIndex;
-        
-        // The bitMask can be ANDed with "value" to get only the bits we want from it.
-        // We shift the bits back to the right to undo the "startIndex"
-        int maskedNum = (bitMask & value) >>> startIndex;
-        
-        return maskedNum;
+    private static int getField (int value, int shift, int length) {
+        return (value >>> shift) & ~(-1 << length);
     }
     
     /**
@@ -96,17 +123,20 @@ public record CANMessageID (byte deviceNum, byte apiIndex, byte apiClass, Manufa
     }
     
     /**
-     * Helps to find an enum option which corresponds with some given integer ID
+     * Build a table mapping every possible ID of a field to the enum option whose range contains it
      */
-    private static <T extends EnumWithID> T getEnumFromId (Class<T> enumClass, int id, T defaultOption) {
-        T[] enumOptions = enumClass.getEnumConstants();
-        for (int i = 0; i < enumOptions.length; i ++) {
-            if (id >= enumOptions[i].getMinId() && id <= enumOptions[i].getMaxId()) {
-                return enumOptions[i];
+    private static <T extends Enum<T> & EnumWithID> T[] buildLookupTable (Class<T> enumClass, int size, T defaultOption) {
+        T[] table = Arrays.copyOf(enumClass.getEnumConstants(), size);
+        Arrays.fill(table, defaultOption);
+        
+        for (T option : enumClass.getEnumConstants()) {
+            for (int id = Math.max(0, option.getMinId()); id <= option.getMaxId() && id < size; id ++) {
+                // Give the first matching option precedence, as the linear search this table replaces did
+                if (table[id] == defaultOption) table[id] = option;
             }
         }
         
-        return defaultOption;
+        return table;
     }
     
     /**
@@ -0,0 +1,65 @@
+package claw.hardware.can;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+
+import edu.wpi.first.hal.can.CANJNI;
+import edu.wpi.first.hal.can.CANMessageNotFoundException;
+
+/**
+ * Reads messages from the CAN bus into {@link MutableCANMessage}s. The buffers passed to the CAN driver are allocated
+ * once per reader and reused for every read. A {@code CANMessageReader} is not thread-safe, so each thread reading
+ * from the bus should use its own reader.
+ * <br></br>
+ * See the FRC CAN Device Specifications for the specifications on the message ID:
+ * https://docs.wpilib.org/en/stable/docs/software/can-devices/can-addressing.html
+ */
+public final class CANMessageReader {
+    
+    // The CAN driver reads and writes these buffers directly, so they must be direct and use the native byte order
+    private final ByteBuffer messageIDBuffer = ByteBuffer.allocateDirect(4).order(ByteOrder.nativeOrder());
+    private final ByteBuffer timestampBuffer = ByteBuffer.allocateDirect(4).order(ByteOrder.nativeOrder());
+    private final IntBuffer messageIDIntBuffer = messageIDBuffer.asIntBuffer();
+    
+    /**
+     * Read a single message from the CAN bus (from any device).
+     * @param output    The message to fill with the received message.
+     * @return          {@code true} if a message was read, or {@code false} if no message was available, in which
+     * case {@code output} is not modified.
+     */
+    public boolean read (MutableCANMessage output) {
+        return read(0, 0, output);
+    }
+    
+    /**
+     * Read a single message from the CAN bus.
+     * @param messageID         The arbitration ID of the messages to read.
+     * @param messageIDMask     A bit mask to apply to messages IDs received from the CAN bus.
+     * The received message ID, after applying a bitwise {@code &} with the given mask, will be checked
+     * against the {@code messageID} argument to see if it should be intercepted.
+     * @param output            The message to fill with the received message.
+     * @return                  {@code true} if a message was read, or {@code false} if no message was available, in
+     * which case {@code output} is not modified.
+     */
+    public boolean read (int messageID, int messageIDMask, MutableCANMessage output) {
+        // The message ID buffer selects which messages to intercept, and is filled with
+        // the ID of the received message
+        messageIDIntBuffer.put(0, messageID);
+        timestampBuffer.putInt(0, 0);
+        
+        byte[] messageContent;
+        try {
+            messageContent = CANJNI.FRCNetCommCANSessionMuxReceiveMessage(messageIDIntBuffer, messageIDMask, timestampBuffer);
+        } catch (CANMessageNotFoundException e) {
+            return false;
+        }
+        
+        if (messageContent == null) return false;
+        
+        // The driver writes the timestamp as an unsigned 32-bit count of milliseconds
+        output.set(messageIDIntBuffer.get(0), messageContent, timestampBuffer.getInt(0) & 0xFFFFFFFFL);
+        return true;
+    }
+    
+}
@@ -1,25 +1,28 @@
 package claw.hardware.can;
 
-import java.nio.ByteBuffer;
-
-import java.nio.ByteOrder;
+import java.io.File;
+import java.io.IOException;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Optional;
 import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.Consumer;
 
 import claw.LiveValues;
+import claw.hardware.can.CANBusMonitor.BusSummary;
+import claw.hardware.can.CANHealthMonitor.FrameStats;
 import claw.hardware.can.CANMessageID.DeviceType;
 import claw.hardware.can.CANMessageID.ManufacturerCode;
+import claw.math.DualDebouncer;
+import claw.math.FilterPipeline;
 import claw.rct.commands.CommandProcessor;
 import claw.rct.commands.CommandReader;
 import claw.rct.commands.CommandProcessor.BadCallException;
 import claw.rct.network.low.ConsoleManager;
 import edu.wpi.first.hal.can.CANJNI;
-import edu.wpi.first.hal.can.CANMessageNotFoundException;
 import edu.wpi.first.hal.can.CANStatus;
-import edu.wpi.first.math.filter.Debouncer;
-import edu.wpi.first.math.filter.LinearFilter;
-import edu.wpi.first.math.filter.Debouncer.DebounceType;
+import edu.wpi.first.wpilibj.Filesystem;
 
 /**
  * A utility class which can detect devices on, send messages to, and read messages from the CAN bus.
@@ -27,7 +30,7 @@ import edu.wpi.first.math.filter.Debouncer.DebounceType;
 public class CANScanner {
     
     /**
-     * A message read from the CAN bus.
+     * A message read from the CAN bus. The timestamp is in milliseconds, as reported by the roboRIO's CAN driver.
      */
     public static record CANMessage (CANMessageID messageID, byte[] messageData, long timestamp) { }
     
@@ -41,15 +44,45 @@ public class CANScanner {
      */
     public static final CommandProcessor CAN_SCAN_COMMAND_PROCESSOR = new CommandProcessor(
         "canscan",
-        "canscan [status | devices]",
+        "canscan [status | history | devices [TIMEOUT] | health | capture NAME]",
         "Use 'canscan status' to get the status of the CAN bus (bus utilization and presence of errors). " +
-        "'canscan devices' will scan to detect devices on the CAN bus. It reads manufacturers, device types, " +
-        "and device numbers (IDs).",
+        "'canscan history' shows the bus utilization and errors recorded by the background CAN bus monitor for each " +
+        "recent second and minute, and any active alarms. " +
+        "'canscan devices' broadcasts an enumerate frame and lists each device on the CAN bus as it responds, " +
+        "listening for TIMEOUT seconds (one second by default). It reads manufacturers, device types, and device " +
+        "numbers (IDs). " +
+        "'canscan health' shows live frame rates, the longest gaps between frames, and lost frames for each device. " +
+        "'canscan capture NAME' records all CAN traffic to NAME" + CANCaptureFile.EXTENSION + " in the can-captures " +
+        "directory on the roboRIO until enter is pressed. Copy the file to the driverstation and use 'candecode' to analyze it.",
         CANScanner::canScanCommand
     );
     
+    /**
+     * The reader used by {@link #readMessage(int, int)}. Readers reuse their buffers and are not thread-safe, so it must
+     * only be used while synchronized on it.
+     */
+    private static final CANMessageReader SHARED_READER = new CANMessageReader();
+    
+    /**
+     * The message {@link #SHARED_READER} reads into, guarded by the same lock (synchronize on {@link #SHARED_READER})
+     */
+    private static final MutableCANMessage SHARED_MESSAGE = new MutableCANMessage();
+    
+    /**
+     * The number of milliseconds to let the sniffer capture traffic before listing devices, if it was not already running
+     */
+    private static final long SNIFFER_WARMUP_MILLIS = 500;
+    
+    private static final double DEFAULT_DISCOVERY_TIMEOUT_SECS = 1;
+    
+    private static final int HISTORY_SECONDS_SHOWN = 30;
+    
+    private static final long HEALTH_REFRESH_MILLIS = 100;
+    
+    private static final File CAPTURE_DIRECTORY = new File(Filesystem.getOperatingDirectory(), "can-captures");
+    
     private static double roundTo (double value, int precision) {
-        return Math.round(value * precision) / precision;
+        return Math.round(value * precision) / (double)precision;
     }
     
     private static String padToSize (String str, int size) {
@@ -62,7 +95,15 @@ public class CANScanner {
     }
     
     private static void canScanCommand (ConsoleManager console, CommandReader reader) throws BadCallException {
-        String scanType = reader.readArgOneOf("scan type", "Expected a scan type of 'status' or 'devices'.", "status", "devices");
+        String scanType = reader.readArgOneOf(
+            "scan type",
+            "Expected a scan type of 'status', 'history', 'devices', 'health', or 'capture'.",
+            "status", "history", "devices", "health", "capture"
+        );
+        String captureName = scanType.equals("capture") ? reader.readArgString("capture name") : null;
+        double discoveryTimeout = scanType.equals("devices") && reader.hasNextArg()
+            ? reader.readArgDouble("timeout")
+            : DEFAULT_DISCOVERY_TIMEOUT_SECS;
         reader.noMoreArgs();
         reader.allowNoOptions();
         reader.allowNoFlags();
@@ -71,9 +112,9 @@ public class CANScanner {
         
         if (scanType.equals("status")) {
             
-            LinearFilter canUtilizationFilter = LinearFilter.movingAverage(35);
-            Debouncer receiveErrorDebouncer = new Debouncer(0.1, DebounceType.kFalling);
-            Debouncer transmitErrorDebouncer = new Debouncer(0.1, DebounceType.kFalling);
+            FilterPipeline canUtilizationFilter = new FilterPipeline(1).addMovingAverage(35);
+            DualDebouncer receiveErrorDebouncer = new DualDebouncer(false, 0.1, 0);
+            DualDebouncer transmitErrorDebouncer = new DualDebouncer(false, 0.1, 0);
             
             while (!console.hasInputReady()) {
                 
@@ -90,13 +131,33 @@ public class CANScanner {
                 values.update(console);
             }
             
-        } else if (scanType.equals("devices")) {
+        } else if (scanType.equals("history")) {
             
-            // TODO: Send an "enumerate" CAN frame, write a wrapper around the FRC_Net_Comm_Mux functions,
-            // filter out bad data, remove System.out printing, and clean up CANMessageIDs
+            CANBusMonitor monitor = CANBusMonitor.getInstance();
+            if (!monitor.isRunning())
+                console.printlnErr("The CAN bus monitor is not running, so the history may be out of date.");
             
-            console.printlnSys("Scanning...");
-            console.flush();
+            List<BusSummary> seconds = monitor.getSecondHistory();
+            console.printlnSys("Last " + Math.min(seconds.size(), HISTORY_SECONDS_SHOWN) + " seconds:");
+            printBusHistory(console, seconds.subList(Math.max(0, seconds.size() - HISTORY_SECONDS_SHOWN), seconds.size()));
+            
+            console.println("");
+            console.printlnSys("Last " + monitor.getMinuteHistory().size() + " minutes:");
+            printBusHistory(console, monitor.getMinuteHistory());
+            
+            console.println("");
+            Set<CANBusMonitor.Alarm> alarms = monitor.getActiveAlarms();
+            if (alarms.isEmpty()) {
+                console.printlnSys("No active alarms.");
+            } else {
+                for (CANBusMonitor.Alarm alarm : alarms)
+                    console.printlnErr("Active alarm: " + alarm.friendlyName);
+            }
+            
+        } else if (scanType.equals("devices")) {
+            
+            if (discoveryTimeout <= 0)
+                throw new BadCallException("The timeout must be greater than zero.");
             
             console.printlnSys(
                 padToSize("Manufacturer", 35) +
@@ -104,17 +165,146 @@ public class CANScanner {
                 padToSize("Device Number", 20)
             );
             
-            Set<CANDeviceTrace> devices = scanCANDevices(600);
-            for (CANDeviceTrace device : devices) {
-                console.println(
-                    padToSize(device.manufacturer.friendlyName, 35) +
-                    padToSize(device.deviceType+"", 35) +
-                    padToSize(device.deviceNum+"", 20)
-                );
+            // Print each device as soon as it responds
+            Set<CANDeviceTrace> devices = Set.of();
+            try {
+                devices = discoverDevices(discoveryTimeout, device -> {
+                    console.println(
+                        padToSize(device.manufacturer.friendlyName, 35) +
+                        padToSize(device.deviceType+"", 35) +
+                        padToSize(device.deviceNum+"", 20)
+                    );
+                    console.flush();
+                });
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
             }
             
+            console.printlnSys("Found " + devices.size() + " devices in " + discoveryTimeout + " seconds");
+            
+        } else if (scanType.equals("health")) {
+            
+            // The health monitor must be created before the sniffer starts so it sees every frame
+            CANHealthMonitor monitor = CANHealthMonitor.getInstance();
+            startSharedSniffer(console);
+            
+            while (!console.hasInputReady()) {
+                showDeviceHealth(monitor, values);
+                values.update(console);
+                sleepMillis(HEALTH_REFRESH_MILLIS);
+            }
+            
+        } else if (scanType.equals("capture")) {
+            
+            // The capture must stay inside the capture directory
+            if (captureName.contains("/") || captureName.contains("\\") || captureName.contains(".."))
+                throw new BadCallException("The capture name cannot contain path separators or '..'.");
+            
+            File file = new File(CAPTURE_DIRECTORY, captureName + CANCaptureFile.EXTENSION);
+            CANCapture capture;
+            try {
+                capture = new CANCapture(CANSniffer.getInstance(), file);
+            } catch (IOException e) {
+                throw new BadCallException("Could not create the capture file '" + file + "': " + e.getMessage());
+            }
+            
+            startSharedSniffer(console);
+            console.printlnSys("Capturing to " + file.getAbsolutePath() + ". Press enter to stop.");
+            
+            while (!console.hasInputReady() && capture.isRunning()) {
+                values.setField("Frames Written", Long.toString(capture.getFramesWritten()));
+                values.setField("Frames Dropped", Long.toString(capture.getFramesDropped()));
+                values.update(console);
+                sleepMillis(HEALTH_REFRESH_MILLIS);
+            }
+            
+            try {
+                capture.stopAndWait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            
+            console.printlnSys("Wrote " + capture.getFramesWritten() + " frames to " + file.getAbsolutePath());
+            
+        }
+        
+    }
+    
+    /**
+     * Print one row per summary, oldest first
+     */
+    private static void printBusHistory (ConsoleManager console, List<BusSummary> history) {
+        console.printlnSys(
+            padToSize("Min", 10) +
+            padToSize("Avg", 10) +
+            padToSize("Max", 10) +
+            padToSize("Bus-off", 10) +
+            padToSize("RX Errors", 12) +
+            padToSize("TX Errors", 12)
+        );
+        
+        for (BusSummary summary : history) {
+            console.println(
+                padToSize(roundTo(summary.minUtilization() * 100, 10) + "%", 10) +
+                padToSize(roundTo(summary.avgUtilization() * 100, 10) + "%", 10) +
+                padToSize(roundTo(summary.maxUtilization() * 100, 10) + "%", 10) +
+                padToSize(summary.busOffs() + "", 10) +
+                padToSize(summary.maxReceiveErrors() + "", 12) +
+                padToSize(summary.maxTransmitErrors() + "", 12)
+            );
+        }
+    }
+    
+    /**
+     * Start the shared {@link CANSniffer} if it is not already running, and give it time to capture some traffic
+     */
+    private static CANSniffer startSharedSniffer (ConsoleManager console) {
+        CANSniffer sniffer = CANSniffer.getInstance();
+        if (!sniffer.isRunning()) {
+            console.printlnSys("Starting the CAN sniffer...");
+            console.flush();
+            
+            sniffer.start();
+            sleepMillis(SNIFFER_WARMUP_MILLIS);
         }
         
+        return sniffer;
+    }
+    
+    private static void sleepMillis (long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+    
+    /**
+     * Put one live field per device, combining the statistics of every frame the device sends
+     */
+    private static void showDeviceHealth (CANHealthMonitor monitor, LiveValues values) {
+        // Group frame statistics by device, sorted by device key so the fields appear in a stable order
+        TreeMap<Integer, double[]> devices = new TreeMap<>();
+        for (FrameStats stats : monitor.getFrameStats()) {
+            // { frames, frame rate, max gap, losses, lost frames }
+            double[] device = devices.computeIfAbsent(stats.getDeviceKey(), key -> new double[5]);
+            device[0] ++;
+            device[1] += stats.frameRate();
+            device[2] = Math.max(device[2], stats.maxGapSecs());
+            device[3] += stats.lossCount();
+            device[4] += stats.lost() ? 1 : 0;
+        }
+        
+        devices.forEach((deviceKey, device) -> {
+            String state = device[4] == 0 ? "OK" : device[4] == device[0] ? "LOST" : "DEGRADED";
+            values.setField(
+                CANHealthMonitor.describeDevice(deviceKey),
+                padToSize(state, 10) +
+                padToSize(roundTo(device[1], 10) + " frames/s", 20) +
+                padToSize("max gap " + Math.round(device[2] * 1000) + " ms", 20) +
+                padToSize((int)device[3] + " drops", 12)
+            );
+        });
     }
     
     /**
@@ -142,7 +332,8 @@ public class CANScanner {
      * <br></br>
      * Note that there are generally better options through WPILib for reading messages
      * from the CAN bus. This would only be useful if you need to read a broad range of
-     * messages from varying IDs for some reason.
+     * messages from varying IDs for some reason. To read many messages without allocating,
+     * use a {@link CANMessageReader} instead.
      * @param messageID         The arbitration ID of the messages to read. See the specifications.
      * @param messageIDMask     A bit mask to apply to messages IDs received from the CAN bus.
      * The received message ID, after applying a bitwise {@code &} with the given mask, will be checked
@@ -150,64 +341,87 @@ public class CANScanner {
      * @return                  The CAN message intercepted from the bus, if one could be read.
      */
     public static Optional<CANMessage> readMessage (int messageID, int messageIDMask) {
-        
-        // Create a message ID buffer for distinguishing which messages to intercept
-        // This buffer will also be filled with the ID of the retrieved message once done
-        ByteBuffer messageIDBuffer = ByteBuffer.allocateDirect(4);
-        messageIDBuffer.order(ByteOrder.LITTLE_ENDIAN);
-        messageIDBuffer.clear();
-        messageIDBuffer.asIntBuffer().put(messageID, 0);
-        
-        // Create a buffer to store the timestamp of the received message. This will be filled
-        // after receiving the message
-        ByteBuffer timestampBuffer = ByteBuffer.allocate(4);
-        
-        byte[] messageContent;
-        
-        try {
-            // Receive a message from the CAN bus and fill the messageIDBuffer and timestampBuffer
-            messageContent = CANJNI.FRCNetCommCANSessionMuxReceiveMessage(
-                messageIDBuffer.asIntBuffer(),
-                messageIDMask,
-                timestampBuffer
-            );
-        } catch (CANMessageNotFoundException e) {
-            // If no message was found, return the empty optional
-            return Optional.empty();
+        synchronized (SHARED_READER) {
+            if (!SHARED_READER.read(messageID, messageIDMask, SHARED_MESSAGE))
+                return Optional.empty();
+            return Optional.of(SHARED_MESSAGE.toMessage());
         }
-        
-        // TODO: Use timestamp ByteBuffer to get message timestamp
-        return Optional.of(new CANMessage(CANMessageID.fromMessageId(messageIDBuffer.asIntBuffer().get()), messageContent, 0));
-        
     }
     
+    /**
+     * Synchronously read a number of messages from the CAN bus to find the devices which sent them. Messages
+     * which are not from a device are skipped (see {@link CANMessageID#isDeviceMessage()}).
+     * @param messagesToScan    The number of reads to attempt.
+     * @return                  The set of {@link CANDeviceTrace}s.
+     * @deprecated              This only finds devices which happen to send frames during the scan, and it competes
+     *                          with the {@link CANSniffer} for messages. Use {@link #discoverDevices(double, Consumer)}
+     *                          or {@link CANDeviceDiscovery} instead.
+     */
+    @Deprecated
     public static Set<CANDeviceTrace> scanCANDevices (int messagesToScan) {
-        
-        // Create a set of CAN device traces to return
         HashSet<CANDeviceTrace> devices = new HashSet<>();
-        
-        // TODO: Send the enumerate message or something else to encourage devices to identify themselves
+        CANMessageReader reader = new CANMessageReader();
+        MutableCANMessage message = new MutableCANMessage();
         
         // Scan through the given number of messages to find all device traces
         for (int i = 0; i < messagesToScan; i ++) {
-            readMessage().ifPresent(msg -> {
-                
-                // TODO: Filter out devices with non-device manufacturers or device types
-                
-                // Add the device trace to the set
-                CANDeviceTrace deviceTrace = new CANDeviceTrace(
-                    msg.messageID().deviceType(),
-                    msg.messageID().manufacturer(),
-                    msg.messageID().deviceNum()
-                );
-                
-                devices.add(deviceTrace);
-                
-            });
+            if (!reader.read(message)) continue;
+            
+            CANMessageID messageID = message.getMessageID();
+            if (!messageID.isDeviceMessage()) continue;
+            
+            devices.add(new CANDeviceTrace(
+                messageID.deviceType(),
+                messageID.manufacturer(),
+                messageID.deviceNum()
+            ));
         }
         
         return devices;
+    }
+    
+    /**
+     * Get the devices which sent any of the frames currently held by a {@link CANSniffer}.
+     * @param sniffer   The sniffer to read captured frames from.
+     * @return          The set of {@link CANDeviceTrace}s.
+     */
+    public static Set<CANDeviceTrace> getCapturedDevices (CANSniffer sniffer) {
+        HashSet<CANDeviceTrace> devices = new HashSet<>();
+        MutableCANMessage message = new MutableCANMessage();
+        
+        // Only read frames which were captured before the scan started, skipping any which are overwritten during the scan
+        long endSequence = sniffer.getNextSequence();
+        for (long sequence = sniffer.getOldestSequence(); sequence < endSequence; sequence ++) {
+            sequence = Math.max(sequence, sniffer.getOldestSequence());
+            if (!sniffer.getFrame(sequence, message)) continue;
+            
+            CANMessageID messageID = message.getMessageID();
+            if (!messageID.isDeviceMessage()) continue;
+            
+            devices.add(new CANDeviceTrace(
+                messageID.deviceType(),
+                messageID.manufacturer(),
+                messageID.deviceNum()
+            ));
+        }
         
+        return devices;
+    }
+    
+    /**
+     * Actively discover the devices on the CAN bus, blocking until the timeout has passed. This broadcasts the
+     * enumerate frame and listens through the shared {@link CANSniffer} (starting it if it is not already running).
+     * See {@link CANDeviceDiscovery} to get devices without blocking.
+     * @param timeoutSecs   The time to listen for devices, in seconds.
+     * @param onDeviceFound A callback run on the calling thread for each device, as soon as it responds.
+     * @return              The set of discovered {@link CANDeviceTrace}s, in the order they responded.
+     * @throws InterruptedException If the thread was interrupted while waiting for devices.
+     */
+    public static Set<CANDeviceTrace> discoverDevices (
+        double timeoutSecs,
+        Consumer<CANDeviceTrace> onDeviceFound
+    ) throws InterruptedException {
+        return CANDeviceDiscovery.discover(CANSniffer.getInstance(), timeoutSecs, onDeviceFound);
     }
     
     private CANScanner () { }
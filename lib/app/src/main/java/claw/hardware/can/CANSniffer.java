@@ -0,0 +1,281 @@
+package claw.hardware.can;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import claw.hardware.can.CANScanner.CANMessage;
+import edu.wpi.first.wpilibj.Notifier;
+import edu.wpi.first.wpilibj.RobotController;
+
+/**
+ * A background service which continuously drains messages from the CAN bus into a fixed-size ring buffer, so that
+ * short bursts of traffic are not missed and the recent history of the bus can be inspected at any time. Frames are
+ * stored in primitive arrays (arbitration ID, timestamp, and payload), and each captured frame is given a sequence
+ * number so that readers can walk through the buffer with {@link #getFrame(long, MutableCANMessage)} without
+ * allocating.
+ * <br></br>
+ * Polling happens on a WPILib {@link Notifier}. Each poll reads messages until none are available (or a maximum
+ * number of messages have been read), so a short poll period should be used for busy buses.
+ */
+public final class CANSniffer implements AutoCloseable {
+    
+    /**
+     * The default number of frames held by the shared sniffer's ring buffer.
+     */
+    public static final int DEFAULT_CAPACITY = 4096;
+    
+    /**
+     * The default period between polls of the shared sniffer, in seconds.
+     */
+    public static final double DEFAULT_POLL_PERIOD = 0.002;
+    
+    /**
+     * The maximum number of messages read in a single poll, so that a poll cannot run indefinitely
+     */
+    private static final int MAX_READS_PER_POLL = 256;
+    
+    private static CANSniffer instance;
+    
+    /**
+     * A listener which is notified of every frame captured by a {@link CANSniffer}. Listeners are called on the
+     * sniffer's notifier thread, so they should be fast and must be thread-safe.
+     */
+    public interface FrameListener {
+        
+        /**
+         * Called for each captured frame.
+         * @param message       The captured message. This object is reused for every frame, so it must not be kept.
+         * @param captureTime   The FPGA timestamp of the poll which captured the frame, in microseconds.
+         */
+        public void onFrame (MutableCANMessage message, long captureTime);
+        
+        /**
+         * Called at the end of every poll, after all frames captured in the poll have been passed to
+         * {@link #onFrame(MutableCANMessage, long)}.
+         * @param pollTime      The FPGA timestamp of the poll, in microseconds.
+         */
+        public default void onPoll (long pollTime) { }
+        
+    }
+    
+    /**
+     * Get the shared {@link CANSniffer}, used by the {@code canscan} command. The shared sniffer is created the first
+     * time this is called, but it is not started automatically.
+     * @return  The shared {@code CANSniffer}.
+     */
+    public static synchronized CANSniffer getInstance () {
+        if (instance == null)
+            instance = new CANSniffer(DEFAULT_CAPACITY, DEFAULT_POLL_PERIOD);
+        return instance;
+    }
+    
+    private final int capacity;
+    private final double pollPeriodSecs;
+    
+    // Ring buffer storage. Frame with sequence number n is stored at index n % capacity
+    private final int[] messageIDs;
+    private final long[] timestamps;
+    private final byte[] lengths;
+    private final byte[] payloads;
+    
+    /**
+     * The sequence number which will be given to the next captured frame (equal to the total number of captured frames)
+     */
+    private long nextSequence = 0;
+    
+    /**
+     * The sequence number before which frames have been cleared
+     */
+    private long clearedBefore = 0;
+    
+    // Only used on the notifier thread
+    private final CANMessageReader reader = new CANMessageReader();
+    private final MutableCANMessage pollMessage = new MutableCANMessage();
+    
+    private final Notifier notifier;
+    private boolean running = false;
+    
+    /**
+     * Replaced (rather than modified) whenever a listener is added or removed, so polls can iterate it without locking
+     */
+    private volatile FrameListener[] listeners = new FrameListener[0];
+    
+    /**
+     * Create a new {@link CANSniffer}. Most users should use the shared sniffer from {@link #getInstance()} instead,
+     * as multiple sniffers will compete for the same messages.
+     * @param capacity          The number of frames to hold in the ring buffer. Once the buffer is full, the oldest
+     * frames are overwritten.
+     * @param pollPeriodSecs    The period between polls of the CAN bus, in seconds.
+     */
+    public CANSniffer (int capacity, double pollPeriodSecs) {
+        if (capacity < 1)
+            throw new IllegalArgumentException("The capacity of a CANSniffer must be at least one frame");
+        if (pollPeriodSecs <= 0)
+            throw new IllegalArgumentException("The poll period must be greater than zero");
+        
+        this.capacity = capacity;
+        this.pollPeriodSecs = pollPeriodSecs;
+        
+        messageIDs = new int[capacity];
+        timestamps = new long[capacity];
+        lengths = new byte[capacity];
+        payloads = new byte[capacity * MutableCANMessage.MAX_DATA_LENGTH];
+        
+        notifier = new Notifier(this::poll);
+        notifier.setName("CANSniffer");
+    }
+    
+    /**
+     * Start capturing messages in the background. This has no effect if the sniffer is already running.
+     */
+    public synchronized void start () {
+        if (running) return;
+        running = true;
+        notifier.startPeriodic(pollPeriodSecs);
+    }
+    
+    /**
+     * Stop capturing messages. Frames already in the buffer are kept.
+     */
+    public synchronized void stop () {
+        if (!running) return;
+        running = false;
+        notifier.stop();
+    }
+    
+    /**
+     * Check whether the sniffer is capturing messages.
+     * @return  Whether the sniffer is running.
+     */
+    public synchronized boolean isRunning () {
+        return running;
+    }
+    
+    /**
+     * Remove all frames from the buffer. Sequence numbers continue from where they were.
+     */
+    public synchronized void clear () {
+        clearedBefore = nextSequence;
+    }
+    
+    /**
+     * Add a listener to be notified of every captured frame.
+     * @param listener  The {@link FrameListener} to add.
+     */
+    public synchronized void addListener (FrameListener listener) {
+        FrameListener[] newListeners = Arrays.copyOf(listeners, listeners.length + 1);
+        newListeners[listeners.length] = listener;
+        listeners = newListeners;
+    }
+    
+    /**
+     * Remove a listener added with {@link #addListener(FrameListener)}.
+     * @param listener  The {@link FrameListener} to remove.
+     */
+    public synchronized void removeListener (FrameListener listener) {
+        listeners = Arrays.stream(listeners).filter(l -> l != listener).toArray(FrameListener[]::new);
+    }
+    
+    private void poll () {
+        long pollTime = RobotController.getFPGATime();
+        FrameListener[] currentListeners = listeners;
+        
+        for (int i = 0; i < MAX_READS_PER_POLL && reader.read(pollMessage); i ++) {
+            addFrame(pollMessage);
+            for (FrameListener listener : currentListeners)
+                listener.onFrame(pollMessage, pollTime);
+        }
+        
+        for (FrameListener listener : currentListeners)
+            listener.onPoll(pollTime);
+    }
+    
+    /**
+     * Add a frame to the ring buffer, overwriting the oldest frame if the buffer is full.
+     * @param message   The message to add.
+     */
+    synchronized void addFrame (MutableCANMessage message) {
+        int index = (int)(nextSequence % capacity);
+        messageIDs[index] = message.messageID;
+        timestamps[index] = message.timestamp;
+        lengths[index] = (byte)message.length;
+        System.arraycopy(message.data, 0, payloads, index * MutableCANMessage.MAX_DATA_LENGTH, message.length);
+        nextSequence ++;
+    }
+    
+    /**
+     * Get the capacity of the ring buffer.
+     * @return  The maximum number of frames the buffer can hold.
+     */
+    public int getCapacity () {
+        return capacity;
+    }
+    
+    /**
+     * Get the sequence number which will be given to the next captured frame. This is also the total number of frames
+     * captured since the sniffer was created.
+     * @return  The next sequence number.
+     */
+    public synchronized long getNextSequence () {
+        return nextSequence;
+    }
+    
+    /**
+     * Get the sequence number of the oldest frame still in the buffer.
+     * @return  The oldest available sequence number. If this is equal to {@link #getNextSequence()}, the buffer is empty.
+     */
+    public synchronized long getOldestSequence () {
+        return Math.max(clearedBefore, nextSequence - capacity);
+    }
+    
+    /**
+     * Get the number of frames currently in the buffer.
+     * @return  The number of frames in the buffer.
+     */
+    public synchronized int getNumFrames () {
+        return (int)(nextSequence - getOldestSequence());
+    }
+    
+    /**
+     * Copy a captured frame into a {@link MutableCANMessage}. To read every new frame, keep track of the next
+     * sequence number to read (starting from {@link #getOldestSequence()}), and call this until it returns
+     * {@code false}. If frames were overwritten between calls, skip forward to {@link #getOldestSequence()}.
+     * @param sequence  The sequence number of the frame.
+     * @param output    The message to copy the frame into.
+     * @return          {@code true} if the frame was copied, or {@code false} if it has not been captured yet or has
+     * already been overwritten or cleared.
+     */
+    public synchronized boolean getFrame (long sequence, MutableCANMessage output) {
+        if (sequence < getOldestSequence() || sequence >= nextSequence) return false;
+        
+        int index = (int)(sequence % capacity);
+        output.messageID = messageIDs[index];
+        output.timestamp = timestamps[index];
+        output.length = lengths[index];
+        System.arraycopy(payloads, index * MutableCANMessage.MAX_DATA_LENGTH, output.data, 0, output.length);
+        return true;
+    }
+    
+    /**
+     * Get a copy of every frame currently in the buffer, from oldest to newest.
+     * @return  A list of the captured {@link CANMessage}s.
+     */
+    public synchronized List<CANMessage> snapshot () {
+        ArrayList<CANMessage> messages = new ArrayList<>(getNumFrames());
+        MutableCANMessage message = new MutableCANMessage();
+        for (long sequence = getOldestSequence(); sequence < nextSequence; sequence ++) {
+            getFrame(sequence, message);
+            messages.add(message.toMessage());
+        }
+        
+        return messages;
+    }
+    
+    @Override
+    public void close () {
+        stop();
+        notifier.close();
+    }
+    
+}
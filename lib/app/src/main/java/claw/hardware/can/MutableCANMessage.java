@@ -0,0 +1,69 @@
+package claw.hardware.can;
+
+import java.util.Arrays;
+
+import claw.hardware.can.CANScanner.CANMessage;
+
+/**
+ * A mutable CAN message which can be filled repeatedly by a {@link CANMessageReader} without allocating. This is
+ * useful for reading many messages from the bus in a tight loop. Use {@link #toMessage()} to get an immutable copy
+ * of a message which should be kept.
+ */
+public final class MutableCANMessage {
+    
+    /**
+     * The maximum number of data bytes in a single CAN message.
+     */
+    public static final int MAX_DATA_LENGTH = 8;
+    
+    /**
+     * The full arbitration ID of the message.
+     */
+    public int messageID;
+    
+    /**
+     * The data of the message. Only the first {@link #length} bytes are meaningful.
+     */
+    public final byte[] data = new byte[MAX_DATA_LENGTH];
+    
+    /**
+     * The number of data bytes in the message.
+     */
+    public int length;
+    
+    /**
+     * The timestamp at which the message was received, in milliseconds, as reported by the roboRIO's CAN driver.
+     */
+    public long timestamp;
+    
+    /**
+     * Set the contents of this message.
+     * @param messageID     The full arbitration ID of the message.
+     * @param data          The data of the message. Only the first {@link #MAX_DATA_LENGTH} bytes are copied.
+     * @param timestamp     The timestamp at which the message was received, in milliseconds.
+     */
+    public void set (int messageID, byte[] data, long timestamp) {
+        this.messageID = messageID;
+        this.length = Math.min(data.length, MAX_DATA_LENGTH);
+        System.arraycopy(data, 0, this.data, 0, length);
+        this.timestamp = timestamp;
+    }
+    
+    /**
+     * Parse the arbitration ID of this message into a {@link CANMessageID}, using the interning cache of
+     * {@link CANMessageID#fromMessageIdCached(int)}.
+     * @return  The parsed message ID.
+     */
+    public CANMessageID getMessageID () {
+        return CANMessageID.fromMessageIdCached(messageID);
+    }
+    
+    /**
+     * Get an immutable copy of this message.
+     * @return  A new {@link CANMessage} with the contents of this message.
+     */
+    public CANMessage toMessage () {
+        return new CANMessage(getMessageID(), Arrays.copyOf(data, length), timestamp);
+    }
+    
+}
@@ -0,0 +1,71 @@
+package claw.math;
+
+/**
+ * A {@link Transform2d} which interpolates between values on a rectilinear grid (a grid whose rows and columns
+ * may be unevenly spaced). This is useful for lookup tables which depend on two measurements, such as a shooter
+ * speed which depends on both the distance and the angle to a target. Inputs beyond the edges of the grid
+ * are extrapolated linearly from the nearest cell.
+ */
+public class BilinearInterpolator implements Transform2d {
+    
+    private final double[] xs, ys;
+    
+    /**
+     * The value at each grid point, where the value at {@code (xs[i], ys[j])} is at index {@code i * ys.length + j}
+     */
+    private final double[] values;
+    
+    /**
+     * The indices of the last cell looked up. These are only starting points for the next lookup, so they do not need
+     * to be synchronized.
+     */
+    private int lastCellX = 0, lastCellY = 0;
+    
+    /**
+     * Create a new {@link BilinearInterpolator}.
+     * @param xs        The x coordinates of the grid's columns, which must be strictly increasing.
+     * @param ys        The y coordinates of the grid's rows, which must be strictly increasing.
+     * @param values    The values at each grid point, where {@code values[i][j]} is the value at {@code (xs[i], ys[j])}.
+     */
+    public BilinearInterpolator (double[] xs, double[] ys, double[][] values) {
+        GridSearch.requireIncreasing(xs, "x");
+        GridSearch.requireIncreasing(ys, "y");
+        if (values.length != xs.length)
+            throw new IllegalArgumentException("There must be one array of values for each x coordinate");
+        
+        this.xs = xs.clone();
+        this.ys = ys.clone();
+        this.values = new double[xs.length * ys.length];
+        
+        for (int i = 0; i < xs.length; i ++) {
+            if (values[i].length != ys.length)
+                throw new IllegalArgumentException("There must be one value for each y coordinate in every array of values");
+            System.arraycopy(values[i], 0, this.values, i * ys.length, ys.length);
+        }
+    }
+    
+    @Override
+    public double apply (double x, double y) {
+        int cellX = GridSearch.findCell(xs, x, lastCellX);
+        int cellY = GridSearch.findCell(ys, y, lastCellY);
+        lastCellX = cellX;
+        lastCellY = cellY;
+        
+        // Get the position of the point within the cell, on [0, 1] (or beyond, when extrapolating)
+        double u = (x - xs[cellX]) / (xs[cellX + 1] - xs[cellX]);
+        double v = (y - ys[cellY]) / (ys[cellY + 1] - ys[cellY]);
+        
+        // Get the values at the corners of the cell
+        int corner = cellX * ys.length + cellY;
+        double v00 = values[corner];
+        double v01 = values[corner + 1];
+        double v10 = values[corner + ys.length];
+        double v11 = values[corner + ys.length + 1];
+        
+        // Interpolate along y on either side of the cell, then along x between the two
+        double low = v00 + (v01 - v00) * v;
+        double high = v10 + (v11 - v10) * v;
+        return low + (high - low) * u;
+    }
+    
+}
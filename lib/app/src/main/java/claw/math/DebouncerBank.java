@@ -0,0 +1,233 @@
+package claw.math;
+
+import edu.wpi.first.wpilibj.RobotController;
+
+/**
+ * Debounces many boolean channels (such as every limit switch or DIO port on the robot) at once. Each channel behaves
+ * like a {@link DualDebouncer} with its own rising edge and falling edge debounce times, but the states of all channels
+ * are stored in bitsets so that a single call to {@link #update(long[])} filters every channel in one pass, only doing
+ * per-channel work for channels whose input currently differs from their debounced state.
+ * <br></br>
+ * Channel {@code i} is stored at bit {@code i % 64} of word {@code i / 64} of each bitset.
+ */
+public class DebouncerBank {
+    
+    private final int numChannels;
+    
+    /**
+     * The debounced state of each channel
+     */
+    private final long[] baselineBits;
+    
+    /**
+     * The channels whose input differed from the baseline on the last update
+     */
+    private final long[] pendingBits;
+    
+    /**
+     * For each pending channel, the last time (in FPGA microseconds) its input matched the baseline
+     */
+    private final long[] lastBaselineTimes;
+    
+    private final long[] risingEdgeMicros, fallingEdgeMicros;
+    
+    /**
+     * A reused bitset for packing boolean array inputs
+     */
+    private final long[] scratchBits;
+    
+    private long lastUpdateTime;
+    
+    /**
+     * Create a new {@link DebouncerBank}. All channels start with a debounced state of {@code false}.
+     * @param numChannels       The number of channels to debounce.
+     * @param fallingEdgeTime   The number of seconds a channel's input must be {@code false} while its state is
+     * {@code true} in order for the state to change.
+     * @param risingEdgeTime    The number of seconds a channel's input must be {@code true} while its state is
+     * {@code false} in order for the state to change.
+     */
+    public DebouncerBank (int numChannels, double fallingEdgeTime, double risingEdgeTime) {
+        this(numChannels, fallingEdgeTime, risingEdgeTime, RobotController.getFPGATime());
+    }
+    
+    /**
+     * Create a new {@link DebouncerBank} whose debounce timers start at a given timestamp instead of reading the FPGA
+     * clock. This is meant to be used along with {@link #update(long[], long)}. All channels start with a debounced
+     * state of {@code false}.
+     * @param numChannels       The number of channels to debounce.
+     * @param fallingEdgeTime   The number of seconds a channel's input must be {@code false} while its state is
+     * {@code true} in order for the state to change.
+     * @param risingEdgeTime    The number of seconds a channel's input must be {@code true} while its state is
+     * {@code false} in order for the state to change.
+     * @param startTime         The FPGA timestamp to start the debounce timers at, in microseconds.
+     */
+    public DebouncerBank (int numChannels, double fallingEdgeTime, double risingEdgeTime, long startTime) {
+        if (numChannels < 0)
+            throw new IllegalArgumentException("The number of channels cannot be negative");
+        
+        this.numChannels = numChannels;
+        
+        int numWords = getNumWords(numChannels);
+        baselineBits = new long[numWords];
+        pendingBits = new long[numWords];
+        scratchBits = new long[numWords];
+        lastBaselineTimes = new long[numChannels];
+        risingEdgeMicros = new long[numChannels];
+        fallingEdgeMicros = new long[numChannels];
+        
+        for (int i = 0; i < numChannels; i ++)
+            setDebounceTimes(i, fallingEdgeTime, risingEdgeTime);
+        
+        lastUpdateTime = startTime;
+    }
+    
+    /**
+     * Get the number of {@code long} words needed to store a bitset with one bit per channel.
+     * @param numChannels   The number of channels.
+     * @return              The length of the bitset array.
+     */
+    public static int getNumWords (int numChannels) {
+        return (numChannels + 63) / 64;
+    }
+    
+    /**
+     * Get the number of channels in this bank.
+     * @return  The number of channels.
+     */
+    public int getNumChannels () {
+        return numChannels;
+    }
+    
+    /**
+     * Set the debounce times of a single channel.
+     * @param channel           The index of the channel.
+     * @param fallingEdgeTime   The falling edge debounce time, in seconds.
+     * @param risingEdgeTime    The rising edge debounce time, in seconds.
+     */
+    public void setDebounceTimes (int channel, double fallingEdgeTime, double risingEdgeTime) {
+        checkChannel(channel);
+        fallingEdgeMicros[channel] = (long)(fallingEdgeTime * 1e6);
+        risingEdgeMicros[channel] = (long)(risingEdgeTime * 1e6);
+    }
+    
+    /**
+     * Set the debounced state of a channel, discarding any pending change in its input. The input must then differ from
+     * the new state for the full debounce time, counted from the most recent {@link #update(long[])} call, before the
+     * state changes again.
+     * @param channel   The index of the channel.
+     * @param state     The new debounced state.
+     */
+    public void resetChannel (int channel, boolean state) {
+        checkChannel(channel);
+        long bit = 1L << channel;
+        int word = channel >>> 6;
+        
+        if (state) baselineBits[word] |= bit;
+        else baselineBits[word] &= ~bit;
+        pendingBits[word] &= ~bit;
+    }
+    
+    private void checkChannel (int channel) {
+        if (channel < 0 || channel >= numChannels)
+            throw new IndexOutOfBoundsException("Channel " + channel + " does not exist in a bank of " + numChannels + " channels");
+    }
+    
+    /**
+     * Update every channel with its current input. This should be called once per loop.
+     * @param inputBits A bitset containing the input of every channel, with at least {@link #getNumWords(int)} words.
+     */
+    public void update (long[] inputBits) {
+        update(inputBits, RobotController.getFPGATime());
+    }
+    
+    /**
+     * Update every channel with its current input, using a given timestamp instead of reading the FPGA clock.
+     * @param inputBits A bitset containing the input of every channel, with at least {@link #getNumWords(int)} words.
+     * @param time      The current FPGA timestamp, in microseconds.
+     */
+    public void update (long[] inputBits, long time) {
+        for (int word = 0; word < baselineBits.length; word ++) {
+            // Get the channels whose input differs from their debounced state, ignoring bits beyond the last channel
+            long differing = (inputBits[word] ^ baselineBits[word]) & getWordMask(word);
+            
+            // Channels which just started differing last matched their baseline on the previous update
+            long newlyDiffering = differing & ~pendingBits[word];
+            while (newlyDiffering != 0) {
+                int bit = Long.numberOfTrailingZeros(newlyDiffering);
+                lastBaselineTimes[(word << 6) + bit] = lastUpdateTime;
+                newlyDiffering &= newlyDiffering - 1;
+            }
+            
+            pendingBits[word] = differing;
+            
+            // Flip every differing channel which has differed for long enough
+            while (differing != 0) {
+                int bit = Long.numberOfTrailingZeros(differing);
+                int channel = (word << 6) + bit;
+                long mask = 1L << bit;
+                
+                boolean state = (baselineBits[word] & mask) != 0;
+                long debounceTime = state ? fallingEdgeMicros[channel] : risingEdgeMicros[channel];
+                
+                if (time - lastBaselineTimes[channel] >= debounceTime) {
+                    baselineBits[word] ^= mask;
+                    pendingBits[word] &= ~mask;
+                }
+                
+                differing &= differing - 1;
+            }
+        }
+        
+        lastUpdateTime = time;
+    }
+    
+    /**
+     * Update every channel with its current input. This should be called once per loop.
+     * @param inputs    The input of every channel, with at least {@link #getNumChannels()} values.
+     */
+    public void update (boolean[] inputs) {
+        update(inputs, RobotController.getFPGATime());
+    }
+    
+    /**
+     * Update every channel with its current input, using a given timestamp instead of reading the FPGA clock.
+     * @param inputs    The input of every channel, with at least {@link #getNumChannels()} values.
+     * @param time      The current FPGA timestamp, in microseconds.
+     */
+    public void update (boolean[] inputs, long time) {
+        // Pack the inputs into a reused bitset
+        for (int word = 0; word < scratchBits.length; word ++) {
+            long bits = 0;
+            int end = Math.min(numChannels - (word << 6), 64);
+            for (int bit = 0; bit < end; bit ++)
+                if (inputs[(word << 6) + bit]) bits |= 1L << bit;
+            scratchBits[word] = bits;
+        }
+        
+        update(scratchBits, time);
+    }
+    
+    private long getWordMask (int word) {
+        int channelsInWord = numChannels - (word << 6);
+        return channelsInWord >= 64 ? -1L : (1L << channelsInWord) - 1;
+    }
+    
+    /**
+     * Get the debounced state of a channel.
+     * @param channel   The index of the channel.
+     * @return          The debounced state.
+     */
+    public boolean get (int channel) {
+        checkChannel(channel);
+        return (baselineBits[channel >>> 6] & (1L << channel)) != 0;
+    }
+    
+    /**
+     * Copy the debounced states of every channel into a bitset.
+     * @param output    The bitset to copy the states into, with at least {@link #getNumWords(int)} words.
+     */
+    public void getStates (long[] output) {
+        System.arraycopy(baselineBits, 0, output, 0, baselineBits.length);
+    }
+    
+}
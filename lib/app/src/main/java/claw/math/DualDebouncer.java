@@ -1,6 +1,7 @@
 package claw.math;
 
 import edu.wpi.first.math.filter.Debouncer;
+import edu.wpi.first.wpilibj.RobotController;
 
 /**
  * An extension of the WPILib {@link Debouncer} allowing for a different rising edge and falling edge debounce times.
@@ -10,19 +11,19 @@ import edu.wpi.first.math.filter.Debouncer;
  */
 public class DualDebouncer extends Debouncer {
     
-    private final double fallingEdgeTime, risingEdgeTime;
+    private final long fallingEdgeMicros, risingEdgeMicros;
     
     /**
-     * The current state of the debouncer (the "baseline", because the internalDebouncer is set up to
-     * only debounce the edge which would change this baselineState)
+     * The current state of the debouncer (the "baseline", because only the edge which would change this
+     * baselineState is debounced)
      */
     private boolean baselineState;
     
     /**
-     * The internal debouncer, which is reset whenever the baseline changes (i.e. there will be a different
-     * internalDebouncer for falling edge vs. rising edge debouncing)
+     * The FPGA timestamp (in microseconds) of the last time the input matched the baseline state, or the last time the
+     * debouncer was reset. The baseline changes once the input has been different for the edge's debounce time since then.
      */
-    private Debouncer internalDebouncer;
+    private long lastBaselineTime;
     
     /**
      * Create a new {@link DualDebouncer} with separate falling edge and rising edge debounce times.
@@ -33,16 +34,31 @@ public class DualDebouncer extends Debouncer {
      * baseline is {@code false} in order for the baseline to change.
      */
     public DualDebouncer (boolean baselineState, double fallingEdgeTime, double risingEdgeTime) {
+        this(baselineState, fallingEdgeTime, risingEdgeTime, RobotController.getFPGATime());
+    }
+    
+    /**
+     * Create a new {@link DualDebouncer} with separate falling edge and rising edge debounce times, starting its timer at
+     * a given timestamp instead of reading the FPGA clock. This is meant to be used along with
+     * {@link #calculate(boolean, long)}.
+     * @param baselineState     The initial state of this debouncer.
+     * @param fallingEdgeTime   The number of seconds the input must be changed to {@code false} when the
+     * baseline is {@code true} in order for the baseline to change.
+     * @param risingEdgeTime    The number of seconds the input must be changed to {@code true} when the
+     * baseline is {@code false} in order for the baseline to change.
+     * @param startTime         The FPGA timestamp to start the debounce timer at, in microseconds.
+     */
+    public DualDebouncer (boolean baselineState, double fallingEdgeTime, double risingEdgeTime, long startTime) {
         // This class only extends Debouncer so that it can be used in place
         // of a WPILib Debouncer. Otherwise, it actually doesn't use inheritance
         // to control the debounce filter at all.
         super(0);
         
-        this.fallingEdgeTime = fallingEdgeTime;
-        this.risingEdgeTime = risingEdgeTime;
+        this.fallingEdgeMicros = (long)(fallingEdgeTime * 1e6);
+        this.risingEdgeMicros = (long)(risingEdgeTime * 1e6);
         
         // Reset to the given baselineState
-        resetToBaseline(baselineState);
+        resetToBaseline(baselineState, startTime);
     }
     
     /**
@@ -67,29 +83,45 @@ public class DualDebouncer extends Debouncer {
      * @param newBaseline   The new baseline state of the debouncer.
      */
     public void resetToBaseline (boolean newBaseline) {
-        // Reset the baseline state
+        resetToBaseline(newBaseline, RobotController.getFPGATime());
+    }
+    
+    /**
+     * Reset the timer of the debouncer to a given timestamp and change the baseline state.
+     * @param newBaseline   The new baseline state of the debouncer.
+     * @param time          The FPGA timestamp to restart the debounce timer at, in microseconds.
+     */
+    public void resetToBaseline (boolean newBaseline, long time) {
         baselineState = newBaseline;
-        
-        // Set the internalDebouncer for the new baseline
-        internalDebouncer = newBaseline
-            // If the newBaseline is true, we debounce the falling edge
-            ? new Debouncer(fallingEdgeTime, DebounceType.kFalling)
-            
-            // If the newBaseline is false, we debounce the rising edge
-            : new Debouncer(risingEdgeTime, DebounceType.kRising);
+        lastBaselineTime = time;
     }
     
     @Override
     public boolean calculate (boolean input) {
         
-        // Again, we actually don't use any details from the superclass implementation of the debouncer.
+        // We actually don't use any details from the superclass implementation of the debouncer.
         // All debounce control is internal. We only extend the WPILib Debouncer so this DualDebouncer
         // can be used in any place the WPILib Debouncer can be used
+        return calculate(input, RobotController.getFPGATime());
+        
+    }
+    
+    /**
+     * Debounce an input using a given timestamp instead of reading the FPGA clock. This allows many debouncers
+     * to share a single timestamp each loop.
+     * @param input The input to debounce.
+     * @param time  The current FPGA timestamp, in microseconds.
+     * @return      The debounced state.
+     */
+    public boolean calculate (boolean input, long time) {
         
-        // If the internalDebouncer indicates that the baseline state must change,
-        // reset to the new baseline
-        if (internalDebouncer.calculate(input) != baselineState) {
-            resetToBaseline(!baselineState);
+        if (input == baselineState) {
+            // Restart the debounce timer whenever the input matches the baseline
+            lastBaselineTime = time;
+        } else if (time - lastBaselineTime >= (baselineState ? fallingEdgeMicros : risingEdgeMicros)) {
+            // If the input has been different from the baseline for long enough, change the baseline
+            baselineState = input;
+            lastBaselineTime = time;
         }
         
         return baselineState;
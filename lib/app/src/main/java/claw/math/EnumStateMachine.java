@@ -0,0 +1,301 @@
+package claw.math;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.BiFunction;
+
+import edu.wpi.first.wpilibj.RobotController;
+
+/**
+ * A state machine whose states and inputs are both enums. All transitions are computed once, when the state machine
+ * is created, and stored in a table indexed by state and input, so transitioning never calls back into user code
+ * or allocates. The state machine can notify {@link TransitionListener}s whenever the state changes, keeps a
+ * fixed-size history of the most recent state changes, and tracks how long is spent in each state, which helps
+ * with diagnosing how a mechanism is sequencing.
+ */
+public class EnumStateMachine <S extends Enum<S>, I extends Enum<I>> {
+    
+    private final S[] states;
+    private final I[] inputs;
+    
+    /**
+     * The ordinal of the state to transition to, at index {@code stateOrdinal * inputs.length + inputOrdinal}
+     */
+    private final int[] transitionTable;
+    
+    private final ArrayList<TransitionListener<S, I>> listeners = new ArrayList<>();
+    
+    // History of state changes, stored as a ring buffer
+    private final int[] historyFrom, historyInput, historyTo;
+    private final long[] historyTimes;
+    private int historyNext = 0, historySize = 0;
+    
+    // Dwell time metrics
+    private final long[] totalDwellMicros, maxDwellMicros;
+    private final int[] entryCounts;
+    private long stateEnteredTime;
+    
+    private int currentState;
+    
+    /**
+     * Create a new {@link EnumStateMachine}.
+     * @param stateClass        The enum class of the states.
+     * @param inputClass        The enum class of the inputs.
+     * @param initialState      The initial state.
+     * @param transitions       A function giving the new state for a given state and input. This is called once for every
+     * combination of state and input when the state machine is created, and never again. If it returns {@code null},
+     * the input will not change the state.
+     * @param historyLength     The maximum number of state changes to keep in the history.
+     */
+    public EnumStateMachine (Class<S> stateClass, Class<I> inputClass, S initialState, BiFunction<S, I, S> transitions, int historyLength) {
+        if (historyLength < 0)
+            throw new IllegalArgumentException("The history length cannot be negative");
+        
+        states = stateClass.getEnumConstants();
+        inputs = inputClass.getEnumConstants();
+        
+        // Compile the transition table
+        transitionTable = new int[states.length * inputs.length];
+        for (S state : states) {
+            for (I input : inputs) {
+                S newState = transitions.apply(state, input);
+                transitionTable[state.ordinal() * inputs.length + input.ordinal()] =
+                    newState == null ? state.ordinal() : newState.ordinal();
+            }
+        }
+        
+        historyFrom = new int[historyLength];
+        historyInput = new int[historyLength];
+        historyTo = new int[historyLength];
+        historyTimes = new long[historyLength];
+        
+        totalDwellMicros = new long[states.length];
+        maxDwellMicros = new long[states.length];
+        entryCounts = new int[states.length];
+        
+        currentState = initialState.ordinal();
+        resetMetrics();
+    }
+    
+    /**
+     * Create a new {@link EnumStateMachine} from an enum which implements {@link State}. Each state's
+     * {@link State#getNewState(Object)} is called once for every input when the state machine is created.
+     * @param stateClass        The enum class of the states.
+     * @param inputClass        The enum class of the inputs.
+     * @param initialState      The initial state.
+     * @param historyLength     The maximum number of state changes to keep in the history.
+     * @return                  The new state machine.
+     */
+    public static <S extends Enum<S> & State<S, I>, I extends Enum<I>> EnumStateMachine<S, I> fromStates (
+            Class<S> stateClass, Class<I> inputClass, S initialState, int historyLength) {
+        return new EnumStateMachine<>(stateClass, inputClass, initialState, State::getNewState, historyLength);
+    }
+    
+    /**
+     * Transition the state of this {@link EnumStateMachine} according to a given {@code input}.
+     * @param input The input which will be used to get a new state.
+     * @return      This state machine, so that several transition inputs can easily be chained together.
+     */
+    public EnumStateMachine<S, I> transition (I input) {
+        int newState = transitionTable[currentState * inputs.length + input.ordinal()];
+        if (newState == currentState) return this;
+        
+        int oldState = currentState;
+        long time = RobotController.getFPGATime();
+        
+        // Update dwell metrics for the state being left
+        long dwell = time - stateEnteredTime;
+        totalDwellMicros[oldState] += dwell;
+        maxDwellMicros[oldState] = Math.max(maxDwellMicros[oldState], dwell);
+        entryCounts[newState] ++;
+        stateEnteredTime = time;
+        
+        // Record the transition
+        if (historyTimes.length > 0) {
+            historyFrom[historyNext] = oldState;
+            historyInput[historyNext] = input.ordinal();
+            historyTo[historyNext] = newState;
+            historyTimes[historyNext] = time;
+            historyNext = (historyNext + 1) % historyTimes.length;
+            historySize = Math.min(historySize + 1, historyTimes.length);
+        }
+        
+        currentState = newState;
+        
+        // Notify listeners
+        for (int i = 0; i < listeners.size(); i ++)
+            listeners.get(i).onTransition(states[oldState], input, states[newState]);
+        
+        return this;
+    }
+    
+    /**
+     * Get the current state of this {@link EnumStateMachine}.
+     * @return  The current state.
+     */
+    public S getState () {
+        return states[currentState];
+    }
+    
+    /**
+     * Add a listener which will be notified whenever the state changes.
+     * @param listener  The {@link TransitionListener} to add.
+     */
+    public void addListener (TransitionListener<S, I> listener) {
+        listeners.add(listener);
+    }
+    
+    /**
+     * Remove a listener previously added with {@link #addListener(TransitionListener)}.
+     * @param listener  The {@link TransitionListener} to remove.
+     */
+    public void removeListener (TransitionListener<S, I> listener) {
+        listeners.remove(listener);
+    }
+    
+    /**
+     * A listener which is notified whenever the state of an {@link EnumStateMachine} changes.
+     */
+    @FunctionalInterface
+    public static interface TransitionListener <S, I> {
+        /**
+         * Called after the state of the state machine changes.
+         * @param oldState  The state before the transition.
+         * @param input     The input which caused the transition.
+         * @param newState  The state after the transition.
+         */
+        public void onTransition (S oldState, I input, S newState);
+    }
+    
+    /**
+     * A record of a single state change.
+     * @param oldState      The state before the transition.
+     * @param input         The input which caused the transition.
+     * @param newState      The state after the transition.
+     * @param timeMicros    The FPGA timestamp of the transition, in microseconds.
+     */
+    public static record Transition <S, I> (S oldState, I input, S newState, long timeMicros) {
+        @Override
+        public String toString () {
+            return String.format("%.3fs: %s --%s--> %s", timeMicros / 1e6, oldState, input, newState);
+        }
+    }
+    
+    /**
+     * Get the most recent state changes, oldest first. At most as many transitions as the history length given in the
+     * constructor are kept.
+     * @return  A list of the recorded transitions.
+     */
+    public List<Transition<S, I>> getHistory () {
+        ArrayList<Transition<S, I>> history = new ArrayList<>(historySize);
+        int start = historyNext - historySize + historyTimes.length;
+        
+        for (int i = 0; i < historySize; i ++) {
+            int index = (start + i) % historyTimes.length;
+            history.add(new Transition<>(
+                states[historyFrom[index]],
+                inputs[historyInput[index]],
+                states[historyTo[index]],
+                historyTimes[index]
+            ));
+        }
+        
+        return history;
+    }
+    
+    /**
+     * Clear the transition history and dwell time metrics. The current state counts as having just been entered.
+     */
+    public void resetMetrics () {
+        historyNext = 0;
+        historySize = 0;
+        
+        for (int i = 0; i < states.length; i ++) {
+            totalDwellMicros[i] = 0;
+            maxDwellMicros[i] = 0;
+            entryCounts[i] = 0;
+        }
+        
+        entryCounts[currentState] = 1;
+        stateEnteredTime = RobotController.getFPGATime();
+    }
+    
+    /**
+     * Get the amount of time since the state machine entered its current state.
+     * @return  The time in the current state, in seconds.
+     */
+    public double getTimeInStateSecs () {
+        return (RobotController.getFPGATime() - stateEnteredTime) / 1e6;
+    }
+    
+    /**
+     * Get the number of times a state has been entered since the metrics were last reset (including the current
+     * state at the time of the reset).
+     * @param state The state to get the entry count of.
+     * @return      The number of times the state was entered.
+     */
+    public int getEntryCount (S state) {
+        return entryCounts[state.ordinal()];
+    }
+    
+    private long getTotalDwellMicros (int state) {
+        long total = totalDwellMicros[state];
+        if (state == currentState) total += RobotController.getFPGATime() - stateEnteredTime;
+        return total;
+    }
+    
+    /**
+     * Get the total amount of time spent in a state since the metrics were last reset, including time spent in the
+     * current state so far.
+     * @param state The state to get the total dwell time of.
+     * @return      The total dwell time, in seconds.
+     */
+    public double getTotalDwellSecs (S state) {
+        return getTotalDwellMicros(state.ordinal()) / 1e6;
+    }
+    
+    /**
+     * Get the mean amount of time spent in a state each time it was entered.
+     * @param state The state to get the mean dwell time of.
+     * @return      The mean dwell time, in seconds, or zero if the state has not been entered.
+     */
+    public double getMeanDwellSecs (S state) {
+        int entries = entryCounts[state.ordinal()];
+        return entries == 0 ? 0 : getTotalDwellSecs(state) / entries;
+    }
+    
+    /**
+     * Get the longest amount of time spent in a state in a single visit, including the current visit if the
+     * state machine is in the given state.
+     * @param state The state to get the maximum dwell time of.
+     * @return      The maximum dwell time, in seconds.
+     */
+    public double getMaxDwellSecs (S state) {
+        long max = maxDwellMicros[state.ordinal()];
+        if (state.ordinal() == currentState)
+            max = Math.max(max, RobotController.getFPGATime() - stateEnteredTime);
+        return max / 1e6;
+    }
+    
+    /**
+     * Get a human-readable summary of the dwell time metrics for every state.
+     * @return  The dwell time report.
+     */
+    public String getDwellReport () {
+        StringBuilder report = new StringBuilder();
+        for (S state : states) {
+            report.append(String.format(
+                "%s%s: %d entries, %.3fs total, %.3fs mean, %.3fs max\n",
+                state,
+                state.ordinal() == currentState ? " (current)" : "",
+                getEntryCount(state),
+                getTotalDwellSecs(state),
+                getMeanDwellSecs(state),
+                getMaxDwellSecs(state)
+            ));
+        }
+        
+        return report.toString();
+    }
+    
+}
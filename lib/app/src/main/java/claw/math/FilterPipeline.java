@@ -0,0 +1,419 @@
+package claw.math;
+
+import java.util.Arrays;
+
+import edu.wpi.first.wpilibj.RobotController;
+
+/**
+ * A chain of signal filters (moving average, median, exponential smoothing, rate limiting, and differentiation) which
+ * can filter any number of channels at once. Every stage keeps its state for all channels in preallocated primitive
+ * arrays, so filtering dozens of sensor signals takes a single pass through each stage per loop and never allocates.
+ * Sample windows are stored slot-major, with the values of every channel for one sample interleaved next to each other,
+ * so that a new sample for all channels is written to one contiguous block.
+ * <br></br>
+ * Stages are added in order, with each stage filtering the output of the stage before it:
+ * <pre>
+ * FilterPipeline pipeline = new FilterPipeline(1)
+ *     .addMedian(5)
+ *     .addMovingAverage(10)
+ *     .addRateLimit(2);
+ * double filtered = pipeline.calculate(rawValue);
+ * </pre>
+ * Time-dependent stages (rate limiting and differentiation) measure the time between calls using the FPGA clock,
+ * so the pipeline should be called once per loop.
+ */
+public class FilterPipeline {
+    
+    private final int numChannels;
+    private Stage[] stages = new Stage[0];
+    
+    /**
+     * A reused array for single-channel calculations
+     */
+    private final double[] scratch;
+    
+    private boolean initialized = false;
+    private long lastCalculateTime;
+    
+    /**
+     * Create a new {@link FilterPipeline} with no stages.
+     * @param numChannels   The number of channels to filter at once.
+     */
+    public FilterPipeline (int numChannels) {
+        if (numChannels < 1)
+            throw new IllegalArgumentException("A filter pipeline must have at least one channel");
+        
+        this.numChannels = numChannels;
+        this.scratch = new double[numChannels];
+    }
+    
+    /**
+     * Get the number of channels this pipeline filters.
+     * @return  The number of channels.
+     */
+    public int getNumChannels () {
+        return numChannels;
+    }
+    
+    private FilterPipeline addStage (Stage stage) {
+        stages = Arrays.copyOf(stages, stages.length + 1);
+        stages[stages.length - 1] = stage;
+        return this;
+    }
+    
+    /**
+     * Add a stage which outputs the mean of the last {@code windowSize} values.
+     * @param windowSize    The number of values to average.
+     * @return              This pipeline.
+     */
+    public FilterPipeline addMovingAverage (int windowSize) {
+        return addStage(new MovingAverageStage(numChannels, windowSize));
+    }
+    
+    /**
+     * Add a stage which outputs the median of the last {@code windowSize} values. This is useful for rejecting
+     * occasional outliers (such as a bad sensor reading).
+     * @param windowSize    The number of values to take the median of.
+     * @return              This pipeline.
+     */
+    public FilterPipeline addMedian (int windowSize) {
+        return addStage(new MedianStage(numChannels, windowSize));
+    }
+    
+    /**
+     * Add a stage which applies exponential smoothing, moving the output a fraction {@code alpha} of the way
+     * toward each new value.
+     * @param alpha The smoothing factor, on the interval (0, 1]. Smaller values give smoother output.
+     * @return      This pipeline.
+     */
+    public FilterPipeline addExponential (double alpha) {
+        if (!(alpha > 0 && alpha <= 1))
+            throw new IllegalArgumentException("The exponential smoothing factor must be on the interval (0, 1]");
+        return addStage(new ExponentialStage(numChannels, alpha));
+    }
+    
+    /**
+     * Add a stage which limits how quickly the output can change.
+     * @param maxRatePerSecond  The maximum change in the output per second.
+     * @return                  This pipeline.
+     */
+    public FilterPipeline addRateLimit (double maxRatePerSecond) {
+        if (!(maxRatePerSecond >= 0))
+            throw new IllegalArgumentException("The maximum rate cannot be negative");
+        return addStage(new RateLimitStage(numChannels, maxRatePerSecond));
+    }
+    
+    /**
+     * Add a stage which outputs the rate of change of its input per second.
+     * @return  This pipeline.
+     */
+    public FilterPipeline addDerivative () {
+        return addStage(new DerivativeStage(numChannels));
+    }
+    
+    /**
+     * Add a stage which applies a {@link Transform} to every value.
+     * @param transform The transform to apply.
+     * @return          This pipeline.
+     */
+    public FilterPipeline addTransform (Transform transform) {
+        return addStage(new TransformStage(transform));
+    }
+    
+    /**
+     * Filter the next value of every channel.
+     * @param inputs    The next input value of every channel.
+     * @param outputs   The array to write the filtered value of every channel to. This may be the same array as
+     * {@code inputs}.
+     */
+    public void calculate (double[] inputs, double[] outputs) {
+        calculate(inputs, outputs, RobotController.getFPGATime());
+    }
+    
+    /**
+     * Filter the next value of every channel, using a given timestamp instead of reading the FPGA clock.
+     * @param inputs    The next input value of every channel.
+     * @param outputs   The array to write the filtered value of every channel to.
+     * @param time      The current FPGA timestamp, in microseconds.
+     */
+    public void calculate (double[] inputs, double[] outputs, long time) {
+        if (inputs.length != numChannels || outputs.length != numChannels)
+            throw new IllegalArgumentException("The input and output arrays must have one value for each channel");
+        
+        double dtSecs = initialized ? (time - lastCalculateTime) / 1e6 : 0;
+        lastCalculateTime = time;
+        
+        if (inputs != outputs)
+            System.arraycopy(inputs, 0, outputs, 0, numChannels);
+        
+        for (Stage stage : stages)
+            stage.process(outputs, dtSecs, !initialized);
+        
+        initialized = true;
+    }
+    
+    /**
+     * Filter the next value of a single-channel pipeline.
+     * @param input The next input value.
+     * @return      The filtered value.
+     * @throws IllegalStateException If this pipeline has more than one channel.
+     */
+    public double calculate (double input) throws IllegalStateException {
+        if (numChannels != 1)
+            throw new IllegalStateException("Only a single-channel filter pipeline can filter a single value");
+        
+        scratch[0] = input;
+        calculate(scratch, scratch);
+        return scratch[0];
+    }
+    
+    /**
+     * Reset every stage of the pipeline, clearing all stored values.
+     */
+    public void reset () {
+        initialized = false;
+        for (Stage stage : stages)
+            stage.reset();
+    }
+    
+    // Stages
+    
+    private static abstract class Stage {
+        
+        /**
+         * Filter one value from every channel in place
+         * @param values    The value of every channel
+         * @param dtSecs    The time since the last values, or zero for the first values
+         * @param isFirst   Whether these are the first values since the pipeline was created or reset
+         */
+        public abstract void process (double[] values, double dtSecs, boolean isFirst);
+        
+        public abstract void reset ();
+        
+    }
+    
+    private static class MovingAverageStage extends Stage {
+        
+        private final int numChannels, windowSize;
+        
+        /**
+         * The value of channel {@code c} from slot {@code s} of the window is at {@code s * numChannels + c}
+         */
+        private final double[] window;
+        private final double[] sums;
+        private int nextSlot = 0, count = 0;
+        
+        public MovingAverageStage (int numChannels, int windowSize) {
+            if (windowSize < 1)
+                throw new IllegalArgumentException("The window size must be at least 1");
+            
+            this.numChannels = numChannels;
+            this.windowSize = windowSize;
+            window = new double[windowSize * numChannels];
+            sums = new double[numChannels];
+        }
+        
+        @Override
+        public void process (double[] values, double dtSecs, boolean isFirst) {
+            int offset = nextSlot * numChannels;
+            boolean full = count == windowSize;
+            int newCount = full ? count : count + 1;
+            
+            for (int c = 0; c < numChannels; c ++) {
+                double value = values[c];
+                sums[c] += value - (full ? window[offset + c] : 0);
+                window[offset + c] = value;
+                values[c] = sums[c] / newCount;
+            }
+            
+            count = newCount;
+            nextSlot = (nextSlot + 1) % windowSize;
+            
+            // Recompute the sums once per window so floating point error cannot accumulate
+            if (nextSlot == 0) recomputeSums();
+        }
+        
+        private void recomputeSums () {
+            Arrays.fill(sums, 0);
+            for (int s = 0; s < count; s ++)
+                for (int c = 0; c < numChannels; c ++)
+                    sums[c] += window[s * numChannels + c];
+        }
+        
+        @Override
+        public void reset () {
+            Arrays.fill(sums, 0);
+            nextSlot = 0;
+            count = 0;
+        }
+        
+    }
+    
+    private static class MedianStage extends Stage {
+        
+        private final int numChannels, windowSize;
+        
+        /**
+         * The values in each window in the order they were received, laid out as in {@link MovingAverageStage}
+         */
+        private final double[] window;
+        
+        /**
+         * The values in the window of channel {@code c}, sorted, from index {@code c * windowSize}
+         */
+        private final double[] sorted;
+        private int nextSlot = 0, count = 0;
+        
+        public MedianStage (int numChannels, int windowSize) {
+            if (windowSize < 1)
+                throw new IllegalArgumentException("The window size must be at least 1");
+            
+            this.numChannels = numChannels;
+            this.windowSize = windowSize;
+            window = new double[windowSize * numChannels];
+            sorted = new double[windowSize * numChannels];
+        }
+        
+        @Override
+        public void process (double[] values, double dtSecs, boolean isFirst) {
+            int offset = nextSlot * numChannels;
+            boolean full = count == windowSize;
+            
+            for (int c = 0; c < numChannels; c ++) {
+                int start = c * windowSize;
+                int end = start + count;
+                
+                // Remove the oldest value from the sorted window if the window is full
+                if (full) {
+                    int removeIndex = Arrays.binarySearch(sorted, start, end, window[offset + c]);
+                    System.arraycopy(sorted, removeIndex + 1, sorted, removeIndex, end - removeIndex - 1);
+                    end --;
+                }
+                
+                // Insert the new value into the sorted window
+                double value = values[c];
+                int insertIndex = Arrays.binarySearch(sorted, start, end, value);
+                if (insertIndex < 0) insertIndex = -insertIndex - 1;
+                System.arraycopy(sorted, insertIndex, sorted, insertIndex + 1, end - insertIndex);
+                sorted[insertIndex] = value;
+                end ++;
+                
+                window[offset + c] = value;
+                
+                // Get the median
+                int size = end - start;
+                int middle = start + size / 2;
+                values[c] = size % 2 == 1 ? sorted[middle] : (sorted[middle - 1] + sorted[middle]) / 2;
+            }
+            
+            if (!full) count ++;
+            nextSlot = (nextSlot + 1) % windowSize;
+        }
+        
+        @Override
+        public void reset () {
+            nextSlot = 0;
+            count = 0;
+        }
+        
+    }
+    
+    private static class ExponentialStage extends Stage {
+        
+        private final double alpha;
+        private final double[] outputs;
+        
+        public ExponentialStage (int numChannels, double alpha) {
+            this.alpha = alpha;
+            outputs = new double[numChannels];
+        }
+        
+        @Override
+        public void process (double[] values, double dtSecs, boolean isFirst) {
+            if (isFirst) System.arraycopy(values, 0, outputs, 0, outputs.length);
+            
+            for (int c = 0; c < outputs.length; c ++) {
+                outputs[c] += alpha * (values[c] - outputs[c]);
+                values[c] = outputs[c];
+            }
+        }
+        
+        @Override
+        public void reset () { }
+        
+    }
+    
+    private static class RateLimitStage extends Stage {
+        
+        private final double maxRatePerSecond;
+        private final double[] outputs;
+        
+        public RateLimitStage (int numChannels, double maxRatePerSecond) {
+            this.maxRatePerSecond = maxRatePerSecond;
+            outputs = new double[numChannels];
+        }
+        
+        @Override
+        public void process (double[] values, double dtSecs, boolean isFirst) {
+            if (isFirst) System.arraycopy(values, 0, outputs, 0, outputs.length);
+            
+            double maxChange = maxRatePerSecond * dtSecs;
+            for (int c = 0; c < outputs.length; c ++) {
+                outputs[c] += Math.min(Math.max(values[c] - outputs[c], -maxChange), maxChange);
+                values[c] = outputs[c];
+            }
+        }
+        
+        @Override
+        public void reset () { }
+        
+    }
+    
+    private static class DerivativeStage extends Stage {
+        
+        private final double[] lastInputs, outputs;
+        
+        public DerivativeStage (int numChannels) {
+            lastInputs = new double[numChannels];
+            outputs = new double[numChannels];
+        }
+        
+        @Override
+        public void process (double[] values, double dtSecs, boolean isFirst) {
+            if (isFirst) {
+                System.arraycopy(values, 0, lastInputs, 0, lastInputs.length);
+                Arrays.fill(outputs, 0);
+            }
+            
+            for (int c = 0; c < outputs.length; c ++) {
+                // Hold the last derivative if no time has passed
+                if (dtSecs > 0) outputs[c] = (values[c] - lastInputs[c]) / dtSecs;
+                lastInputs[c] = values[c];
+                values[c] = outputs[c];
+            }
+        }
+        
+        @Override
+        public void reset () { }
+        
+    }
+    
+    private static class TransformStage extends Stage {
+        
+        private final Transform transform;
+        
+        public TransformStage (Transform transform) {
+            this.transform = transform;
+        }
+        
+        @Override
+        public void process (double[] values, double dtSecs, boolean isFirst) {
+            transform.applyAll(values, values);
+        }
+        
+        @Override
+        public void reset () { }
+        
+    }
+    
+}
@@ -0,0 +1,59 @@
+package claw.math;
+
+/**
+ * Helpers for finding the cell of a sorted grid axis which contains a value.
+ */
+final class GridSearch {
+    
+    private GridSearch () { }
+    
+    /**
+     * Check that the coordinates of a grid axis are strictly increasing.
+     * @param axis      The coordinates of the axis.
+     * @param axisName  The name of the axis, for the exception message.
+     * @throws IllegalArgumentException If the axis has fewer than two coordinates or is not strictly increasing.
+     */
+    static void requireIncreasing (double[] axis, String axisName) throws IllegalArgumentException {
+        if (axis.length < 2)
+            throw new IllegalArgumentException("The " + axisName + " axis must have at least two coordinates");
+        
+        for (int i = 1; i < axis.length; i ++) {
+            if (!(axis[i] > axis[i - 1]))
+                throw new IllegalArgumentException("The " + axisName + " coordinates must be strictly increasing");
+        }
+    }
+    
+    /**
+     * Find the index {@code i} of the cell {@code [axis[i], axis[i+1]]} containing a value. Values beyond either end
+     * of the axis give the first or last cell. The cell containing the last value looked up is checked first,
+     * along with its neighbors, before falling back to a binary search.
+     * @param axis  The strictly increasing coordinates of the axis.
+     * @param value The value to find the cell of.
+     * @param hint  The cell index to check first.
+     * @return      The index of the cell, on {@code [0, axis.length - 2]}.
+     */
+    static int findCell (double[] axis, double value, int hint) {
+        int lastCell = axis.length - 2;
+        
+        if (hint >= 0 && hint <= lastCell) {
+            if (isInCell(axis, value, hint)) return hint;
+            if (hint < lastCell && isInCell(axis, value, hint + 1)) return hint + 1;
+            if (hint > 0 && isInCell(axis, value, hint - 1)) return hint - 1;
+        }
+        
+        // Find the index of the first coordinate greater than the value
+        int low = 0, high = axis.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (axis[mid] <= value) low = mid + 1;
+            else high = mid;
+        }
+        
+        return Math.min(Math.max(low - 1, 0), lastCell);
+    }
+    
+    private static boolean isInCell (double[] axis, double value, int cell) {
+        return (cell == 0 || axis[cell] <= value) && (cell == axis.length - 2 || value < axis[cell + 1]);
+    }
+    
+}
@@ -13,7 +13,21 @@ public class LinearInterpolator implements Transform {
      */
     public static record Point (double x, double y) { }
     
-    private final Point[] points;
+    /**
+     * The maximum deviation (as a fraction of the spacing between points) of the x coordinates from a uniform grid
+     * for which the uniform grid lookup will be used
+     */
+    private static final double UNIFORM_GRID_TOLERANCE = 1e-6;
+    
+    /**
+     * The x and y coordinates of each point, sorted by x coordinate
+     */
+    private final double[] xs, ys;
+    
+    /**
+     * If the points are evenly spaced, this is the inverse of the spacing between them. Otherwise, this is zero.
+     */
+    private final double uniformInverseStep;
     
     /**
      * Create a linear interpolator from the given points to interpolate between.
@@ -26,7 +40,79 @@ public class LinearInterpolator implements Transform {
             a.x < b.x ? -1 : (a.x > b.x ? 1 : 0)
         );
         
-        this.points = sortedPoints;
+        // Store the coordinates in primitive arrays
+        xs = new double[sortedPoints.length];
+        ys = new double[sortedPoints.length];
+        for (int i = 0; i < sortedPoints.length; i ++) {
+            xs[i] = sortedPoints[i].x;
+            ys[i] = sortedPoints[i].y;
+        }
+        
+        uniformInverseStep = getUniformInverseStep(xs);
+    }
+    
+    /**
+     * Create a linear interpolator from arrays of x and y coordinates. This avoids creating a {@link Point} for each
+     * point, which is useful for large tables.
+     * @param xs    The x coordinates of the points.
+     * @param ys    The y coordinates of the points. This must be the same length as {@code xs}.
+     */
+    public LinearInterpolator (double[] xs, double[] ys) {
+        if (xs.length != ys.length)
+            throw new IllegalArgumentException("The number of x coordinates must match the number of y coordinates");
+        
+        if (isSorted(xs)) {
+            // Tables are usually given in order already, so they can just be copied
+            this.xs = xs.clone();
+            this.ys = ys.clone();
+        } else {
+            // Sort the indices of the points by x value (the same stable ordering used for points), then copy the
+            // coordinates over in that order
+            Integer[] order = new Integer[xs.length];
+            for (int i = 0; i < order.length; i ++)
+                order[i] = i;
+            
+            Arrays.sort(order, (Integer a, Integer b) ->
+                xs[a] < xs[b] ? -1 : (xs[a] > xs[b] ? 1 : 0)
+            );
+            
+            this.xs = new double[xs.length];
+            this.ys = new double[ys.length];
+            for (int i = 0; i < order.length; i ++) {
+                this.xs[i] = xs[order[i]];
+                this.ys[i] = ys[order[i]];
+            }
+        }
+        
+        uniformInverseStep = getUniformInverseStep(this.xs);
+    }
+    
+    /**
+     * Check whether the given x coordinates are already in non-decreasing order (NaNs are never considered sorted)
+     */
+    private static boolean isSorted (double[] xs) {
+        for (int i = 1; i < xs.length; i ++) {
+            if (!(xs[i - 1] <= xs[i])) return false;
+        }
+        
+        return true;
+    }
+    
+    /**
+     * Get the inverse of the spacing between the given sorted x coordinates if they are evenly spaced, or zero otherwise
+     */
+    private static double getUniformInverseStep (double[] xs) {
+        if (xs.length < 3) return 0;
+        
+        double step = (xs[xs.length - 1] - xs[0]) / (xs.length - 1);
+        if (!(step > 0) || Double.isInfinite(step)) return 0;
+        
+        for (int i = 1; i < xs.length - 1; i ++) {
+            if (Math.abs(xs[i] - (xs[0] + i * step)) > step * UNIFORM_GRID_TOLERANCE)
+                return 0;
+        }
+        
+        return 1 / step;
     }
     
     /**
@@ -76,7 +162,8 @@ public class LinearInterpolator implements Transform {
     
     /**
      * Get a corresponding y coordinate for the given x coordinate by performing a linear interpolation betwen
-     * the points provided to this {@link LinearInterpolator}.
+     * the points provided to this {@link LinearInterpolator}. If the points are evenly spaced along the x-axis,
+     * the lookup takes constant time. Otherwise, the points are binary searched.
      * @param x The x input coordinate.
      * @return  The corresponding y output coordinate.
      */
@@ -85,31 +172,88 @@ public class LinearInterpolator implements Transform {
         
         // Return a constant value if there are exactly 0 or 1 given points, as all later calculations
         // depends on there being at least two points
-        if (points.length == 0) return 0;
-        if (points.length == 1) return points[0].y;
-        final int lastIndex = points.length - 1;
+        if (xs.length == 0) return 0;
+        if (xs.length == 1) return ys[0];
         
-        // If x is further to the left than the first point, we interpolate between the first two points
-        if (x < points[0].x) return interpolate(x, points[0], points[1]);
+        if (uniformInverseStep != 0) {
+            // Jump straight to the segment on a uniform grid, then correct for any rounding error
+            return interpolateSegment(x, walkToSegment(x, (int)((x - xs[0]) * uniformInverseStep)));
+        } else {
+            return interpolateSegment(x, searchForSegment(x));
+        }
         
-        // Find the first point which is further to the right than the given x
-        for (int i = 0; i <= lastIndex; i ++) {
-            
-            // Return the y coordinate of this point if it exactly matches the given x coordinate
-            if (points[i].x == x) return points[i].y;
-            
-            // Because points[i] is the first point further to the right than x, points[i-1] must
-            // also be the last point further to the left than x, so we interpolate between the two
-            if (points[i].x > x) {
-                return interpolate(x, points[i-1], points[i]);
-            }
+    }
+    
+    /**
+     * Get a stateful {@link Transform} which gives the same results as this interpolator, but which remembers the
+     * segment of the last lookup and starts searching from there next time. When inputs change gradually
+     * (for example, a measured distance from a target), each lookup only needs to check a couple of points.
+     * The returned transform is not thread-safe.
+     * @return  The hinted lookup transform.
+     */
+    public Transform withHint () {
+        return new HintedLookup();
+    }
+    
+    private class HintedLookup implements Transform {
+        
+        private int segment = 0;
+        
+        @Override
+        public double apply (double x) {
+            if (xs.length == 0) return 0;
+            if (xs.length == 1) return ys[0];
             
+            segment = walkToSegment(x, segment);
+            return interpolateSegment(x, segment);
         }
         
-        // Because no point was further to the right than x, x is beyond the last point and we must
-        // interpolate between the last two points
-        return interpolate(x, points[lastIndex - 1], points[lastIndex]);
+    }
+    
+    // The points are looked up by finding a segment index i (on [0, n-2]) such that either i is the first segment or
+    // xs[i] < x, and either i is the last segment or x <= xs[i+1]. Points beyond either end of the dataset are
+    // extrapolated from the first or last segment, and NaN is treated as being beyond the last point.
+    
+    /**
+     * Binary search for the segment containing x
+     */
+    private int searchForSegment (double x) {
+        // Find the index of the first point whose x coordinate is at least x
+        int low = 0, high = xs.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (!(xs[mid] >= x)) low = mid + 1;
+            else high = mid;
+        }
+        
+        // The segment starts at the point before that one
+        return Math.min(Math.max(low - 1, 0), xs.length - 2);
+    }
+    
+    /**
+     * Walk from a starting segment to the segment containing x
+     */
+    private int walkToSegment (double x, int segment) {
+        int lastSegment = xs.length - 2;
+        segment = Math.min(Math.max(segment, 0), lastSegment);
+        
+        while (segment > 0 && x <= xs[segment]) segment --;
+        while (segment < lastSegment && !(x <= xs[segment + 1])) segment ++;
+        
+        return segment;
+    }
+    
+    private double interpolateSegment (double x, int segment) {
+        // Return the y coordinate of a point if it exactly matches the given x coordinate
+        if (xs[segment] == x) return ys[segment];
+        if (xs[segment + 1] == x) return ys[segment + 1];
+        
+        // If both points have exactly the same x value, just get the mean of their y values
+        if (xs[segment] == xs[segment + 1]) return (ys[segment] + ys[segment + 1]) / 2;
         
+        // Calculate p. If p=0, (x,y) should be on the first point, if p=1, (x,y) should be on the second
+        double p = (x - xs[segment]) / (xs[segment + 1] - xs[segment]);
+        return p * (ys[segment + 1] - ys[segment]) + ys[segment];
     }
     
 }
@@ -0,0 +1,104 @@
+package claw.math;
+
+/**
+ * A {@link Transform} which interpolates smoothly between a set of points using a monotone cubic spline
+ * (the Fritsch-Carlson method). Unlike the {@link LinearInterpolator}, the output has a continuous slope, and unlike
+ * an ordinary cubic spline, the output never overshoots the data: between any two points, the output is monotonic
+ * whenever the data is. This makes it well suited to lookup tables measured on a robot (such as shooter speed
+ * by distance). Inputs beyond either end of the data are extrapolated linearly along the slope at the end point.
+ */
+public class MonotoneCubicInterpolator implements Transform {
+    
+    private final double[] xs, ys, slopes;
+    
+    /**
+     * The index of the last cell looked up. This is only a starting point for the next lookup, so it does not need
+     * to be synchronized.
+     */
+    private int lastCell = 0;
+    
+    /**
+     * Create a new {@link MonotoneCubicInterpolator} through the given points.
+     * @param xs    The x coordinates of the points, which must be strictly increasing.
+     * @param ys    The y coordinates of the points. This must be the same length as {@code xs}.
+     */
+    public MonotoneCubicInterpolator (double[] xs, double[] ys) {
+        if (xs.length != ys.length)
+            throw new IllegalArgumentException("The number of x coordinates must match the number of y coordinates");
+        GridSearch.requireIncreasing(xs, "x");
+        
+        this.xs = xs.clone();
+        this.ys = ys.clone();
+        this.slopes = computeSlopes(this.xs, this.ys);
+    }
+    
+    /**
+     * Compute the slope of the spline at each point using the Fritsch-Carlson method
+     */
+    private static double[] computeSlopes (double[] xs, double[] ys) {
+        int n = xs.length;
+        
+        // Get the slope of the secant line through each pair of adjacent points
+        double[] secants = new double[n - 1];
+        for (int i = 0; i < n - 1; i ++)
+            secants[i] = (ys[i + 1] - ys[i]) / (xs[i + 1] - xs[i]);
+        
+        // Start with the average of the secants on either side of each point, or zero at local extrema
+        double[] slopes = new double[n];
+        slopes[0] = secants[0];
+        slopes[n - 1] = secants[n - 2];
+        for (int i = 1; i < n - 1; i ++) {
+            slopes[i] = secants[i - 1] * secants[i] <= 0
+                ? 0
+                : (secants[i - 1] + secants[i]) / 2;
+        }
+        
+        // Limit the slopes so that each cell of the spline is monotonic
+        for (int i = 0; i < n - 1; i ++) {
+            if (secants[i] == 0) {
+                slopes[i] = 0;
+                slopes[i + 1] = 0;
+                continue;
+            }
+            
+            double alpha = slopes[i] / secants[i];
+            double beta = slopes[i + 1] / secants[i];
+            
+            if (alpha < 0) slopes[i] = 0;
+            if (beta < 0) slopes[i + 1] = 0;
+            
+            double magnitudeSquared = alpha*alpha + beta*beta;
+            if (magnitudeSquared > 9) {
+                double tau = 3 / Math.sqrt(magnitudeSquared);
+                slopes[i] = tau * alpha * secants[i];
+                slopes[i + 1] = tau * beta * secants[i];
+            }
+        }
+        
+        return slopes;
+    }
+    
+    @Override
+    public double apply (double x) {
+        int lastIndex = xs.length - 1;
+        
+        // Extrapolate linearly beyond either end
+        if (x <= xs[0]) return ys[0] + slopes[0] * (x - xs[0]);
+        if (x >= xs[lastIndex]) return ys[lastIndex] + slopes[lastIndex] * (x - xs[lastIndex]);
+        
+        int cell = GridSearch.findCell(xs, x, lastCell);
+        lastCell = cell;
+        
+        // Evaluate the cubic Hermite polynomial for the cell
+        double width = xs[cell + 1] - xs[cell];
+        double t = (x - xs[cell]) / width;
+        double t2 = t * t, t3 = t2 * t;
+        
+        return
+            (2*t3 - 3*t2 + 1) * ys[cell] +
+            (t3 - 2*t2 + t) * width * slopes[cell] +
+            (-2*t3 + 3*t2) * ys[cell + 1] +
+            (t3 - t2) * width * slopes[cell + 1];
+    }
+    
+}
@@ -0,0 +1,225 @@
+package claw.math;
+
+import edu.wpi.first.math.numbers.N2;
+
+/**
+ * A mutable two-dimensional vector. Every operation modifies this vector in place and returns it, so that
+ * calculations can be chained in hot loops without allocating any garbage. Use {@link #toVector2()} to take an
+ * immutable snapshot of the result.
+ */
+public final class MutableVector2 {
+    
+    /**
+     * The x component of the vector.
+     */
+    public double x;
+    
+    /**
+     * The y component of the vector.
+     */
+    public double y;
+    
+    /**
+     * Create a new zero vector {@code <0, 0>}.
+     */
+    public MutableVector2 () {
+        this(0, 0);
+    }
+    
+    /**
+     * Create a new vector {@code <x, y>}.
+     * @param x The x component of the vector.
+     * @param y The y component of the vector.
+     */
+    public MutableVector2 (double x, double y) {
+        this.x = x;
+        this.y = y;
+    }
+    
+    /**
+     * Set the components of this vector.
+     * @param x The new x component.
+     * @param y The new y component.
+     * @return  This vector.
+     */
+    public MutableVector2 set (double x, double y) {
+        this.x = x;
+        this.y = y;
+        return this;
+    }
+    
+    /**
+     * Set the components of this vector to match another vector.
+     * @param other The vector to copy.
+     * @return      This vector.
+     */
+    public MutableVector2 set (Vector2 other) {
+        return set(other.x, other.y);
+    }
+    
+    /**
+     * Set the components of this vector to match another vector.
+     * @param other The vector to copy.
+     * @return      This vector.
+     */
+    public MutableVector2 set (MutableVector2 other) {
+        return set(other.x, other.y);
+    }
+    
+    /**
+     * Set the components of this vector to match a two-dimensional generic {@link Vector}.
+     * @param other The vector to copy.
+     * @return      This vector.
+     */
+    public MutableVector2 set (Vector<N2> other) {
+        return set(other.getX(), other.getY());
+    }
+    
+    /**
+     * Get an immutable snapshot of this vector.
+     * @return  A new {@link Vector2} with the same components.
+     */
+    public Vector2 toVector2 () {
+        return new Vector2(x, y);
+    }
+    
+    /**
+     * Get a copy of this vector as a two-dimensional generic {@link Vector}.
+     * @return  A new generic {@code Vector} with the same components.
+     */
+    public Vector<N2> toVector () {
+        return Vector.from(x, y);
+    }
+    
+    /**
+     * Gets the magnitude of the vector.
+     * @return The magnitude.
+     */
+    public double getMagnitude () {
+        return Math.sqrt(x*x + y*y);
+    }
+    
+    /**
+     * Returns the angle formed between this vector and the x-axis, in radians, on the interval {@code [0, 2pi)}.
+     * This angle increases counterclockwise, and matches {@link Vector#getAngle(Vector)}.
+     * @return The angle of the vector, in radians.
+     */
+    public double getAngle () {
+        return getAngle(x, y);
+    }
+    
+    static double getAngle (double x, double y) {
+        // Return 0 for the zero vector, as with Vector.getAngle
+        if (x == 0 && y == 0) return 0;
+        double angle = Math.atan2(y, x);
+        return angle < 0 ? angle + 2*Math.PI : angle;
+    }
+    
+    /**
+     * Apply a {@link Transform} to both components of this vector.
+     * @param transform The transform to apply to each component.
+     * @return          This vector.
+     */
+    public MutableVector2 apply (Transform transform) {
+        return set(transform.apply(x), transform.apply(y));
+    }
+    
+    /**
+     * Scale this vector by a given coefficient.
+     * @param k The coefficient to scale this vector by.
+     * @return  This vector.
+     */
+    public MutableVector2 scale (double k) {
+        return set(x*k, y*k);
+    }
+    
+    /**
+     * Scale this vector so that its magnitude is equal to the given magnitude. If this vector's magnitude
+     * is zero, it will be left as a zero vector.
+     * @param magnitude The magnitude of the vector after scaling.
+     * @return          This vector.
+     */
+    public MutableVector2 scaleToMagnitude (double magnitude) {
+        double currentMagnitude = getMagnitude();
+        return currentMagnitude == 0 ? set(0, 0) : scale(magnitude / currentMagnitude);
+    }
+    
+    /**
+     * Negate this vector.
+     * @return This vector.
+     */
+    public MutableVector2 negate () {
+        return set(-x, -y);
+    }
+    
+    /**
+     * Add another vector to this one.
+     * @param otherX    The x component of the vector to add.
+     * @param otherY    The y component of the vector to add.
+     * @return          This vector.
+     */
+    public MutableVector2 add (double otherX, double otherY) {
+        return set(x + otherX, y + otherY);
+    }
+    
+    /**
+     * Add another vector to this one.
+     * @param other The vector to add.
+     * @return      This vector.
+     */
+    public MutableVector2 add (MutableVector2 other) {
+        return add(other.x, other.y);
+    }
+    
+    /**
+     * Add another vector to this one.
+     * @param other The vector to add.
+     * @return      This vector.
+     */
+    public MutableVector2 add (Vector2 other) {
+        return add(other.x, other.y);
+    }
+    
+    /**
+     * Subtract another vector from this one.
+     * @param other The vector to subtract.
+     * @return      This vector.
+     */
+    public MutableVector2 subtract (MutableVector2 other) {
+        return add(-other.x, -other.y);
+    }
+    
+    /**
+     * Subtract another vector from this one.
+     * @param other The vector to subtract.
+     * @return      This vector.
+     */
+    public MutableVector2 subtract (Vector2 other) {
+        return add(-other.x, -other.y);
+    }
+    
+    /**
+     * Calculate the dot product of this vector and other.
+     * @param other The vector to calculate the dot product with.
+     * @return      The dot product.
+     */
+    public double dotProduct (MutableVector2 other) {
+        return x*other.x + y*other.y;
+    }
+    
+    /**
+     * Rotate this vector counterclockwise by a given angle.
+     * @param angle The angle to rotate by, in radians.
+     * @return      This vector.
+     */
+    public MutableVector2 rotate (double angle) {
+        double cos = Math.cos(angle), sin = Math.sin(angle);
+        return set(x*cos - y*sin, x*sin + y*cos);
+    }
+    
+    @Override
+    public String toString () {
+        return "<" + x + ", " + y + ">";
+    }
+    
+}
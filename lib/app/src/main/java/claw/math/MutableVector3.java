@@ -0,0 +1,222 @@
+package claw.math;
+
+import edu.wpi.first.math.numbers.N3;
+
+/**
+ * A mutable three-dimensional vector. Every operation modifies this vector in place and returns it, so that
+ * calculations can be chained in hot loops without allocating any garbage. Use {@link #toVector3()} to take an
+ * immutable snapshot of the result.
+ */
+public final class MutableVector3 {
+    
+    /**
+     * The x component of the vector.
+     */
+    public double x;
+    
+    /**
+     * The y component of the vector.
+     */
+    public double y;
+    
+    /**
+     * The z component of the vector.
+     */
+    public double z;
+    
+    /**
+     * Create a new zero vector {@code <0, 0, 0>}.
+     */
+    public MutableVector3 () {
+        this(0, 0, 0);
+    }
+    
+    /**
+     * Create a new vector {@code <x, y, z>}.
+     * @param x The x component of the vector.
+     * @param y The y component of the vector.
+     * @param z The z component of the vector.
+     */
+    public MutableVector3 (double x, double y, double z) {
+        this.x = x;
+        this.y = y;
+        this.z = z;
+    }
+    
+    /**
+     * Set the components of this vector.
+     * @param x The new x component.
+     * @param y The new y component.
+     * @param z The new z component.
+     * @return  This vector.
+     */
+    public MutableVector3 set (double x, double y, double z) {
+        this.x = x;
+        this.y = y;
+        this.z = z;
+        return this;
+    }
+    
+    /**
+     * Set the components of this vector to match another vector.
+     * @param other The vector to copy.
+     * @return      This vector.
+     */
+    public MutableVector3 set (Vector3 other) {
+        return set(other.x, other.y, other.z);
+    }
+    
+    /**
+     * Set the components of this vector to match another vector.
+     * @param other The vector to copy.
+     * @return      This vector.
+     */
+    public MutableVector3 set (MutableVector3 other) {
+        return set(other.x, other.y, other.z);
+    }
+    
+    /**
+     * Set the components of this vector to match a three-dimensional generic {@link Vector}.
+     * @param other The vector to copy.
+     * @return      This vector.
+     */
+    public MutableVector3 set (Vector<N3> other) {
+        return set(other.getX(), other.getY(), other.getZ());
+    }
+    
+    /**
+     * Get an immutable snapshot of this vector.
+     * @return  A new {@link Vector3} with the same components.
+     */
+    public Vector3 toVector3 () {
+        return new Vector3(x, y, z);
+    }
+    
+    /**
+     * Get a copy of this vector as a three-dimensional generic {@link Vector}.
+     * @return  A new generic {@code Vector} with the same components.
+     */
+    public Vector<N3> toVector () {
+        return Vector.from(x, y, z);
+    }
+    
+    /**
+     * Gets the magnitude of the vector.
+     * @return The magnitude.
+     */
+    public double getMagnitude () {
+        return Math.sqrt(x*x + y*y + z*z);
+    }
+    
+    /**
+     * Apply a {@link Transform} to every component of this vector.
+     * @param transform The transform to apply to each component.
+     * @return          This vector.
+     */
+    public MutableVector3 apply (Transform transform) {
+        return set(transform.apply(x), transform.apply(y), transform.apply(z));
+    }
+    
+    /**
+     * Scale this vector by a given coefficient.
+     * @param k The coefficient to scale this vector by.
+     * @return  This vector.
+     */
+    public MutableVector3 scale (double k) {
+        return set(x*k, y*k, z*k);
+    }
+    
+    /**
+     * Scale this vector so that its magnitude is equal to the given magnitude. If this vector's magnitude
+     * is zero, it will be left as a zero vector.
+     * @param magnitude The magnitude of the vector after scaling.
+     * @return          This vector.
+     */
+    public MutableVector3 scaleToMagnitude (double magnitude) {
+        double currentMagnitude = getMagnitude();
+        return currentMagnitude == 0 ? set(0, 0, 0) : scale(magnitude / currentMagnitude);
+    }
+    
+    /**
+     * Negate this vector.
+     * @return This vector.
+     */
+    public MutableVector3 negate () {
+        return set(-x, -y, -z);
+    }
+    
+    /**
+     * Add another vector to this one.
+     * @param otherX    The x component of the vector to add.
+     * @param otherY    The y component of the vector to add.
+     * @param otherZ    The z component of the vector to add.
+     * @return          This vector.
+     */
+    public MutableVector3 add (double otherX, double otherY, double otherZ) {
+        return set(x + otherX, y + otherY, z + otherZ);
+    }
+    
+    /**
+     * Add another vector to this one.
+     * @param other The vector to add.
+     * @return      This vector.
+     */
+    public MutableVector3 add (MutableVector3 other) {
+        return add(other.x, other.y, other.z);
+    }
+    
+    /**
+     * Add another vector to this one.
+     * @param other The vector to add.
+     * @return      This vector.
+     */
+    public MutableVector3 add (Vector3 other) {
+        return add(other.x, other.y, other.z);
+    }
+    
+    /**
+     * Subtract another vector from this one.
+     * @param other The vector to subtract.
+     * @return      This vector.
+     */
+    public MutableVector3 subtract (MutableVector3 other) {
+        return add(-other.x, -other.y, -other.z);
+    }
+    
+    /**
+     * Subtract another vector from this one.
+     * @param other The vector to subtract.
+     * @return      This vector.
+     */
+    public MutableVector3 subtract (Vector3 other) {
+        return add(-other.x, -other.y, -other.z);
+    }
+    
+    /**
+     * Calculate the dot product of this vector and other.
+     * @param other The vector to calculate the dot product with.
+     * @return      The dot product.
+     */
+    public double dotProduct (MutableVector3 other) {
+        return x*other.x + y*other.y + z*other.z;
+    }
+    
+    /**
+     * Set this vector to the cross product of itself and another vector ({@code this x other}).
+     * @param other The vector to calculate the cross product with.
+     * @return      This vector.
+     */
+    public MutableVector3 crossProduct (MutableVector3 other) {
+        return set(
+            y*other.z - z*other.y,
+            z*other.x - x*other.z,
+            x*other.y - y*other.x
+        );
+    }
+    
+    @Override
+    public String toString () {
+        return "<" + x + ", " + y + ", " + z + ">";
+    }
+    
+}
@@ -0,0 +1,139 @@
+package claw.math;
+
+/**
+ * A {@link Transform} which approximates another transform using a precomputed table of evenly spaced samples
+ * and linear interpolation between them. This turns an expensive transform (such as one using {@link Math#pow(double, double)})
+ * into a few arithmetic operations. Inputs outside the tabulated range are passed to the original transform.
+ * @see Transform#tabulate(Transform, double, double, int)
+ */
+public final class TabulatedTransform implements Transform {
+    
+    private static final int
+        MIN_RESOLUTION = 16,
+        MAX_RESOLUTION = 1 << 20;
+    
+    private final Transform source;
+    private final double low, high, inverseStep;
+    private final double[] table;
+    private final double maxError;
+    
+    /**
+     * Create a new {@link TabulatedTransform}.
+     * @param source        The transform to approximate.
+     * @param low           The lower end of the tabulated input range.
+     * @param high          The upper end of the tabulated input range.
+     * @param resolution    The number of intervals to divide the input range into. The table will contain
+     * {@code resolution + 1} samples.
+     */
+    public TabulatedTransform (Transform source, double low, double high, int resolution) {
+        if (!(high > low))
+            throw new IllegalArgumentException("The upper end of the tabulated range must be greater than the lower end");
+        if (resolution < 1)
+            throw new IllegalArgumentException("The tabulation resolution must be at least 1");
+        
+        this.source = source;
+        this.low = low;
+        this.high = high;
+        this.inverseStep = resolution / (high - low);
+        
+        table = new double[resolution + 1];
+        for (int i = 0; i <= resolution; i ++)
+            table[i] = source.apply(low + i * (high - low) / resolution);
+        
+        maxError = measureMaxError();
+    }
+    
+    /**
+     * Tabulate a transform at the lowest resolution (doubling from a minimum of 16 intervals) whose estimated maximum
+     * error is no greater than a given bound.
+     * @param source    The transform to approximate.
+     * @param low       The lower end of the tabulated input range.
+     * @param high      The upper end of the tabulated input range.
+     * @param maxError  The maximum allowed error between the tabulated transform and the source transform.
+     * @return          The tabulated transform.
+     * @throws IllegalArgumentException If the error bound cannot be met at any reasonable resolution, which usually
+     * means the source transform is discontinuous in the tabulated range.
+     * @see #getMaxError()
+     */
+    public static TabulatedTransform withMaxError (Transform source, double low, double high, double maxError)
+            throws IllegalArgumentException {
+        if (!(maxError > 0))
+            throw new IllegalArgumentException("The maximum tabulation error must be greater than zero");
+        
+        for (int resolution = MIN_RESOLUTION; resolution <= MAX_RESOLUTION; resolution *= 2) {
+            TabulatedTransform tabulated = new TabulatedTransform(source, low, high, resolution);
+            if (tabulated.getMaxError() <= maxError) return tabulated;
+        }
+        
+        throw new IllegalArgumentException(
+            "Could not tabulate the transform to within an error of " + maxError +
+            " (the transform may be discontinuous on the interval [" + low + ", " + high + "])"
+        );
+    }
+    
+    /**
+     * Estimate the maximum error by comparing the interpolated value to the source transform at several points within
+     * every interval of the table
+     */
+    private double measureMaxError () {
+        double error = 0;
+        int resolution = table.length - 1;
+        for (int i = 0; i < resolution; i ++) {
+            for (int j = 1; j < 4; j ++) {
+                double x = low + (i + j / 4.) * (high - low) / resolution;
+                error = Math.max(error, Math.abs(apply(x) - source.apply(x)));
+            }
+        }
+        
+        return error;
+    }
+    
+    /**
+     * Get the estimated maximum error between this tabulated transform and the source transform, within the tabulated
+     * range. The error is measured at several points between each pair of samples in the table when the table is built.
+     * @return  The estimated maximum error.
+     */
+    public double getMaxError () {
+        return maxError;
+    }
+    
+    /**
+     * Get the number of intervals the tabulated range is divided into.
+     * @return  The resolution of the table.
+     */
+    public int getResolution () {
+        return table.length - 1;
+    }
+    
+    @Override
+    public double apply (double x) {
+        // Use the source transform outside of the tabulated range (or for NaN)
+        if (!(x >= low && x <= high)) return source.apply(x);
+        
+        double position = (x - low) * inverseStep;
+        int index = Math.min((int)position, table.length - 2);
+        double fraction = position - index;
+        
+        return table[index] + (table[index + 1] - table[index]) * fraction;
+    }
+    
+    @Override
+    public void applyAll (double[] input, double[] output) {
+        TransformCompiler.requireSameLength(input, output);
+        
+        int lastIndex = table.length - 2;
+        for (int i = 0; i < input.length; i ++) {
+            double x = input[i];
+            if (!(x >= low && x <= high)) {
+                output[i] = source.apply(x);
+                continue;
+            }
+            
+            double position = (x - low) * inverseStep;
+            int index = Math.min((int)position, lastIndex);
+            double fraction = position - index;
+            output[i] = table[index] + (table[index + 1] - table[index]) * fraction;
+        }
+    }
+    
+}
@@ -8,17 +8,17 @@ public interface Transform {
     /**
      * f(x) = x
      */
-    public static final Transform NONE = x -> x;
+    public static final Transform NONE = new TransformCompiler.Linear(1, 0);
     
     /**
      * f(x) = -x
      */
-    public static final Transform NEGATE = x -> -x;
-        
+    public static final Transform NEGATE = new TransformCompiler.Linear(-1, 0);
+    
     /**
      * The mathematical sign (sgn) function.
      */
-    public static final Transform SIGN = x -> x == 0 ? 0 : (x > 0 ? 1 : -1);
+    public static final Transform SIGN = new TransformCompiler.Sign();
     
     /**
      * Gets a {@link Transform} which clamps a value to a closed interval.
@@ -27,7 +27,7 @@ public interface Transform {
      * @return      The described clamp transform.
      */
     public static Transform clamp (double low, double high) {
-        return input -> Math.min(Math.max(input, low), high);
+        return new TransformCompiler.Clamp(low, high);
     }
     
     /**
@@ -38,7 +38,7 @@ public interface Transform {
      * @return  The linear transform.
      */
     public static Transform linear (double m, double b) {
-        return x -> m*x + b;
+        return new TransformCompiler.Linear(m, b);
     }
     
     /**
@@ -47,7 +47,7 @@ public interface Transform {
      * @return          The symmetrical (even function) version of the given transform. 
      */
     public static Transform toEven (Transform transform) {
-        return x -> transform.apply(x >= 0 ? x : -x);
+        return new TransformCompiler.Even(transform);
     }
     
     /**
@@ -58,7 +58,22 @@ public interface Transform {
      * @return          The symmetrical (odd function) version of the given transform. 
      */
     public static Transform toOdd (Transform transform) {
-        return x -> toEven(transform).apply(x) * SIGN.apply(x);
+        return new TransformCompiler.Odd(transform);
+    }
+    
+    /**
+     * Approximate a transform with a table of evenly spaced samples on the interval {@code [low, high]}, linearly
+     * interpolating between them. This makes expensive transforms much cheaper to apply, at the cost of some accuracy.
+     * Inputs outside of the interval are passed directly to the given transform.
+     * @param transform     The transform to approximate.
+     * @param low           The lower end of the tabulated input range.
+     * @param high          The upper end of the tabulated input range.
+     * @param resolution    The number of intervals to divide the input range into.
+     * @return              The tabulated transform.
+     * @see TabulatedTransform#withMaxError(Transform, double, double, double)
+     */
+    public static TabulatedTransform tabulate (Transform transform, double low, double high, int resolution) {
+        return new TabulatedTransform(transform, low, high, resolution);
     }
     
     /**
@@ -69,7 +84,36 @@ public interface Transform {
      * @return          The composition of the two transforms.
      */
     public default Transform then (Transform transform) {
-        return x -> transform.apply(this.apply(x));
+        return new TransformCompiler.Compose(this, transform);
+    }
+    
+    /**
+     * Simplify a {@link Transform} and compile it into a single evaluator. Chains of built-in transforms (such as
+     * those produced by {@link #then(Transform)}, {@link #toOdd(Transform)} and {@link #clamp(double, double)})
+     * are merged and constant-folded, so the compiled transform is usually much cheaper to apply than the original.
+     * Compiling is relatively slow, so transforms should be compiled once and then reused. Collapsed linear transforms
+     * may differ from the original by floating-point rounding and overflow (see {@link TransformCompiler}).
+     * @param transform The transform to compile.
+     * @return          The compiled transform.
+     * @see TransformCompiler
+     */
+    public static Transform compile (Transform transform) {
+        return TransformCompiler.compile(transform);
+    }
+    
+    /**
+     * Apply this transform to every value in an array, writing the results to another array. This is equivalent to
+     * calling {@link #apply(double)} on each value, but the built-in transforms override it with simple loops which
+     * the JIT compiler can vectorize, making it much faster for processing large amounts of data (such as recorded
+     * telemetry).
+     * @param input     The values to transform.
+     * @param output    The array to write the transformed values to, which must be the same length as {@code input}.
+     * This may be the same array as {@code input}.
+     */
+    public default void applyAll (double[] input, double[] output) {
+        TransformCompiler.requireSameLength(input, output);
+        for (int i = 0; i < input.length; i ++)
+            output[i] = apply(input[i]);
     }
     
     /**
@@ -0,0 +1,45 @@
+package claw.math;
+
+/**
+ * Represents a functional mapping of two real numbers onto another real number. This is the two-input analogue of
+ * {@link Transform}.
+ */
+@FunctionalInterface
+public interface Transform2d {
+    
+    /**
+     * Fix the second input of this transform, giving a single-input {@link Transform} of the first input.
+     * @param y The value of the second input.
+     * @return  The transform {@code x -> apply(x, y)}.
+     */
+    public default Transform withY (double y) {
+        return x -> apply(x, y);
+    }
+    
+    /**
+     * Fix the first input of this transform, giving a single-input {@link Transform} of the second input.
+     * @param x The value of the first input.
+     * @return  The transform {@code y -> apply(x, y)}.
+     */
+    public default Transform withX (double x) {
+        return y -> apply(x, y);
+    }
+    
+    /**
+     * Apply a {@link Transform} to the output of this transform.
+     * @param transform The transform to apply after this one.
+     * @return          The composition of the two transforms.
+     */
+    public default Transform2d then (Transform transform) {
+        return (x, y) -> transform.apply(this.apply(x, y));
+    }
+    
+    /**
+     * Apply the functional mapping described by this transformation.
+     * @param x The first {@code double} input to the function.
+     * @param y The second {@code double} input to the function.
+     * @return  The {@code double} output from the function.
+     */
+    public double apply (double x, double y);
+    
+}
@@ -0,0 +1,477 @@
+package claw.math;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Simplifies and compiles {@link Transform}s. The built-in transforms ({@link Transform#linear(double, double)},
+ * {@link Transform#clamp(double, double)}, {@link Transform#toOdd(Transform)}, {@link Transform#then(Transform)}, etc.)
+ * are represented as nodes in an expression tree rather than as opaque lambdas. {@link #compile(Transform)} flattens
+ * this tree into a chain of operations, simplifies the chain (merging adjacent clamps, collapsing linear compositions,
+ * and folding constants), and then compiles it into a single evaluator which runs the whole chain in one loop
+ * instead of through a stack of nested virtual calls.
+ * <br></br>
+ * Simplification assumes every transform is a pure function of its input, which is the contract of {@link Transform}.
+ * Merging clamps and folding constants only happen where the simplified chain gives the same output as the original
+ * for every input, including NaN and infinite inputs. Collapsing two linear transforms into one is only equal up to
+ * floating-point rounding and overflow: intermediate results are no longer rounded, and an intermediate result which
+ * would overflow to infinity (for example, {@code linear(1e200, 0).then(linear(1e-200, 0))}) gives a finite output
+ * once collapsed.
+ */
+public final class TransformCompiler {
+    
+    private TransformCompiler () { }
+    
+    /**
+     * The maximum nesting depth of {@link Transform#toOdd(Transform)} which can be compiled. Odd transforms nested deeper
+     * than this are evaluated as ordinary transforms.
+     */
+    private static final int MAX_ODD_DEPTH = 32;
+    
+    /**
+     * Simplify and compile a {@link Transform} into a single evaluator.
+     * @param transform The transform to compile.
+     * @return          A transform which gives the same output as the original transform for every input, up to the
+     * rounding and overflow of collapsed linear transforms.
+     * @see Transform#compile(Transform)
+     */
+    public static Transform compile (Transform transform) {
+        List<Transform> chain = simplify(transform);
+        if (chain.size() == 0) return Transform.NONE;
+        
+        ProgramBuilder builder = new ProgramBuilder();
+        builder.emitChain(chain, 0);
+        return new CompiledTransform(chain, builder);
+    }
+    
+    /**
+     * Ensure the input and output arrays for {@link Transform#applyAll(double[], double[])} have the same length
+     */
+    static void requireSameLength (double[] input, double[] output) {
+        if (output.length != input.length)
+            throw new IllegalArgumentException("The output array must be the same length as the input array");
+    }
+    
+    // Expression tree nodes
+    
+    /**
+     * f(x) = mx + b
+     */
+    static record Linear (double m, double b) implements Transform {
+        @Override
+        public double apply (double x) {
+            return m*x + b;
+        }
+        
+        @Override
+        public void applyAll (double[] input, double[] output) {
+            requireSameLength(input, output);
+            applyLinear(input, output, m, b);
+        }
+        
+        boolean isConstant () {
+            return m == 0;
+        }
+        
+        boolean isIdentity () {
+            return m == 1 && b == 0;
+        }
+    }
+    
+    /**
+     * f(x) = min(max(x, low), high)
+     */
+    static record Clamp (double low, double high) implements Transform {
+        @Override
+        public double apply (double x) {
+            return Math.min(Math.max(x, low), high);
+        }
+        
+        @Override
+        public void applyAll (double[] input, double[] output) {
+            requireSameLength(input, output);
+            applyClamp(input, output, low, high);
+        }
+        
+        /**
+         * Whether {@code low <= high}. A clamp with inverted (or NaN) bounds does not clamp to an interval, so it is
+         * never merged with other clamps.
+         */
+        boolean isOrdered () {
+            return low <= high;
+        }
+    }
+    
+    /**
+     * f(x) = sgn(x)
+     */
+    static record Sign () implements Transform {
+        @Override
+        public double apply (double x) {
+            return x == 0 ? 0 : (x > 0 ? 1 : -1);
+        }
+        
+        @Override
+        public void applyAll (double[] input, double[] output) {
+            requireSameLength(input, output);
+            applySign(input, output);
+        }
+    }
+    
+    /**
+     * f(x) = inner(|x|)
+     */
+    static record Even (Transform inner) implements Transform {
+        @Override
+        public double apply (double x) {
+            return inner.apply(x >= 0 ? x : -x);
+        }
+        
+        @Override
+        public void applyAll (double[] input, double[] output) {
+            requireSameLength(input, output);
+            applyAbs(input, output);
+            inner.applyAll(output, output);
+        }
+    }
+    
+    /**
+     * f(x) = sgn(x) * inner(|x|)
+     */
+    static record Odd (Transform inner) implements Transform {
+        @Override
+        public double apply (double x) {
+            return inner.apply(x >= 0 ? x : -x) * (x == 0 ? 0 : (x > 0 ? 1 : -1));
+        }
+    }
+    
+    /**
+     * f(x) = second(first(x))
+     */
+    static record Compose (Transform first, Transform second) implements Transform {
+        @Override
+        public double apply (double x) {
+            return second.apply(first.apply(x));
+        }
+        
+        @Override
+        public void applyAll (double[] input, double[] output) {
+            first.applyAll(input, output);
+            second.applyAll(output, output);
+        }
+    }
+    
+    // Array loops, kept as simple counted loops so that they can be vectorized
+    
+    private static void applyLinear (double[] input, double[] output, double m, double b) {
+        for (int i = 0; i < input.length; i ++)
+            output[i] = m*input[i] + b;
+    }
+    
+    private static void applyClamp (double[] input, double[] output, double low, double high) {
+        for (int i = 0; i < input.length; i ++)
+            output[i] = Math.min(Math.max(input[i], low), high);
+    }
+    
+    private static void applySign (double[] input, double[] output) {
+        for (int i = 0; i < input.length; i ++) {
+            double x = input[i];
+            output[i] = x == 0 ? 0 : (x > 0 ? 1 : -1);
+        }
+    }
+    
+    private static void applyAbs (double[] input, double[] output) {
+        for (int i = 0; i < input.length; i ++) {
+            double x = input[i];
+            output[i] = x >= 0 ? x : -x;
+        }
+    }
+    
+    // Simplification
+    
+    /**
+     * Flatten a transform into a simplified chain of transforms to apply in order, none of which are {@link Compose}s
+     */
+    private static List<Transform> simplify (Transform transform) {
+        ArrayList<Transform> chain = new ArrayList<>();
+        appendSimplified(chain, transform);
+        return chain;
+    }
+    
+    private static void appendSimplified (List<Transform> chain, Transform transform) {
+        if (transform instanceof Compose) {
+            Compose compose = (Compose)transform;
+            appendSimplified(chain, compose.first());
+            appendSimplified(chain, compose.second());
+        } else if (transform instanceof CompiledTransform) {
+            // Inline already-compiled transforms so they can be simplified along with the rest of the chain
+            for (Transform node : ((CompiledTransform)transform).chain)
+                append(chain, node);
+        } else if (transform instanceof Even) {
+            append(chain, simplifyEven(simplify(((Even)transform).inner())));
+        } else if (transform instanceof Odd) {
+            append(chain, simplifyOdd(simplify(((Odd)transform).inner())));
+        } else {
+            append(chain, transform);
+        }
+    }
+    
+    private static Transform simplifyEven (List<Transform> inner) {
+        Transform innerNode = toNode(inner);
+        
+        // An even function of a constant is that constant
+        if (innerNode instanceof Linear && ((Linear)innerNode).isConstant()) return innerNode;
+        
+        return new Even(innerNode);
+    }
+    
+    private static Transform simplifyOdd (List<Transform> inner) {
+        Transform innerNode = toNode(inner);
+        
+        // sgn(x) * (m|x| + 0) = mx, so an odd linear transform through the origin is itself
+        if (innerNode instanceof Linear && ((Linear)innerNode).b() == 0) return innerNode;
+        
+        return new Odd(innerNode);
+    }
+    
+    /**
+     * Convert a simplified chain back into a single transform
+     */
+    private static Transform toNode (List<Transform> chain) {
+        if (chain.size() == 0) return new Linear(1, 0);
+        Transform node = chain.get(0);
+        for (int i = 1; i < chain.size(); i ++)
+            node = new Compose(node, chain.get(i));
+        return node;
+    }
+    
+    /**
+     * Append a (non-composed) transform to the end of a simplified chain, merging it with the previous transform in the
+     * chain where possible
+     */
+    private static void append (List<Transform> chain, Transform next) {
+        // The identity transform does nothing
+        if (next instanceof Linear && ((Linear)next).isIdentity()) return;
+        
+        if (chain.size() == 0) {
+            chain.add(next);
+            return;
+        }
+        
+        Transform last = chain.get(chain.size() - 1);
+        Transform merged = merge(last, next);
+        
+        if (merged == null) {
+            chain.add(next);
+        } else {
+            // The merged transform might be able to merge with the transform before it as well
+            chain.remove(chain.size() - 1);
+            append(chain, merged);
+        }
+    }
+    
+    /**
+     * Merge two adjacent transforms into one equivalent transform, or return null if they cannot be merged
+     */
+    private static Transform merge (Transform first, Transform second) {
+        // Fold constants. A constant linear transform still maps NaN and infinite inputs to NaN (0 * x is NaN), so it can
+        // only be folded into the next transform if that transform also maps NaN to NaN.
+        if (first instanceof Linear && ((Linear)first).isConstant() && Double.isNaN(second.apply(Double.NaN)))
+            return new Linear(0, second.apply(((Linear)first).b()));
+        
+        // m2(m1 x + b1) + b2 = (m2 m1) x + (m2 b1 + b2)
+        if (first instanceof Linear && second instanceof Linear) {
+            Linear a = (Linear)first, b = (Linear)second;
+            return new Linear(b.m() * a.m(), b.m() * a.b() + b.b());
+        }
+        
+        if (first instanceof Clamp && second instanceof Clamp) {
+            Clamp a = (Clamp)first, b = (Clamp)second;
+            if (!a.isOrdered() || !b.isOrdered()) return null;
+            
+            double low = Math.max(a.low(), b.low());
+            double high = Math.min(a.high(), b.high());
+            
+            // If the intervals do not overlap, the output of the first clamp is always clamped to one end of the second.
+            // This is kept as a clamp rather than a constant so that infinite inputs still give that end (not NaN).
+            if (low <= high) return new Clamp(low, high);
+            double end = b.apply(a.high() < b.low() ? a.high() : a.low());
+            return new Clamp(end, end);
+        }
+        
+        // sgn(sgn(x)) = sgn(x)
+        if (first instanceof Sign && second instanceof Sign)
+            return first;
+        
+        return null;
+    }
+    
+    // Compilation
+    
+    private static final int
+        OP_LINEAR       = 0,
+        OP_CLAMP        = 1,
+        OP_SIGN         = 2,
+        OP_ABS          = 3,
+        OP_ODD_BEGIN    = 4,
+        OP_ODD_END      = 5,
+        OP_TRANSFORM    = 6;
+    
+    private static class ProgramBuilder {
+        
+        private final ArrayList<Integer> opcodes = new ArrayList<>();
+        private final ArrayList<Double> argsA = new ArrayList<>(), argsB = new ArrayList<>();
+        private final ArrayList<Transform> transforms = new ArrayList<>();
+        
+        private void emit (int opcode, double a, double b) {
+            opcodes.add(opcode);
+            argsA.add(a);
+            argsB.add(b);
+        }
+        
+        private void emitChain (List<Transform> chain, int oddDepth) {
+            for (Transform node : chain)
+                emitNode(node, oddDepth);
+        }
+        
+        private void emitNode (Transform node, int oddDepth) {
+            if (node instanceof Compose) {
+                emitNode(((Compose)node).first(), oddDepth);
+                emitNode(((Compose)node).second(), oddDepth);
+            } else if (node instanceof Linear) {
+                emit(OP_LINEAR, ((Linear)node).m(), ((Linear)node).b());
+            } else if (node instanceof Clamp) {
+                emit(OP_CLAMP, ((Clamp)node).low(), ((Clamp)node).high());
+            } else if (node instanceof Sign) {
+                emit(OP_SIGN, 0, 0);
+            } else if (node instanceof Even) {
+                emit(OP_ABS, 0, 0);
+                emitNode(((Even)node).inner(), oddDepth);
+            } else if (node instanceof Odd && oddDepth < MAX_ODD_DEPTH) {
+                emit(OP_ODD_BEGIN, 0, 0);
+                emitNode(((Odd)node).inner(), oddDepth + 1);
+                emit(OP_ODD_END, 0, 0);
+            } else {
+                // Any other transform is applied directly
+                emit(OP_TRANSFORM, transforms.size(), 0);
+                transforms.add(node);
+            }
+        }
+        
+    }
+    
+    /**
+     * A transform which evaluates a compiled program of operations in a single loop
+     */
+    private static final class CompiledTransform implements Transform {
+        
+        private final List<Transform> chain;
+        private final int[] opcodes;
+        private final double[] argsA, argsB;
+        private final Transform[] transforms;
+        
+        /**
+         * Whether the program contains any odd transforms, which cannot be applied to an array one operation at a time
+         */
+        private final boolean hasOddOperations;
+        
+        private CompiledTransform (List<Transform> chain, ProgramBuilder builder) {
+            this.chain = List.copyOf(chain);
+            
+            int length = builder.opcodes.size();
+            opcodes = new int[length];
+            argsA = new double[length];
+            argsB = new double[length];
+            
+            for (int i = 0; i < length; i ++) {
+                opcodes[i] = builder.opcodes.get(i);
+                argsA[i] = builder.argsA.get(i);
+                argsB[i] = builder.argsB.get(i);
+            }
+            
+            transforms = builder.transforms.toArray(new Transform[0]);
+            hasOddOperations = builder.opcodes.contains(OP_ODD_BEGIN);
+        }
+        
+        @Override
+        public void applyAll (double[] input, double[] output) {
+            requireSameLength(input, output);
+            
+            if (hasOddOperations) {
+                // Odd transforms need a sign stack for each value, so values must be processed one at a time
+                for (int i = 0; i < input.length; i ++)
+                    output[i] = apply(input[i]);
+                return;
+            }
+            
+            // Otherwise, run each operation over the whole array before moving on to the next
+            if (input != output)
+                System.arraycopy(input, 0, output, 0, input.length);
+            
+            for (int i = 0; i < opcodes.length; i ++) {
+                switch (opcodes[i]) {
+                    case OP_LINEAR:
+                        applyLinear(output, output, argsA[i], argsB[i]);
+                        break;
+                    case OP_CLAMP:
+                        applyClamp(output, output, argsA[i], argsB[i]);
+                        break;
+                    case OP_SIGN:
+                        applySign(output, output);
+                        break;
+                    case OP_ABS:
+                        applyAbs(output, output);
+                        break;
+                    default:
+                        transforms[(int)argsA[i]].applyAll(output, output);
+                        break;
+                }
+            }
+            
+        }
+        
+        @Override
+        public double apply (double x) {
+            // A stack of signs for odd transforms, two bits per level: 0 for zero, 1 for positive, 2 for negative
+            long signs = 0;
+            
+            for (int i = 0; i < opcodes.length; i ++) {
+                switch (opcodes[i]) {
+                    case OP_LINEAR:
+                        x = argsA[i]*x + argsB[i];
+                        break;
+                    case OP_CLAMP:
+                        x = Math.min(Math.max(x, argsA[i]), argsB[i]);
+                        break;
+                    case OP_SIGN:
+                        x = x == 0 ? 0 : (x > 0 ? 1 : -1);
+                        break;
+                    case OP_ABS:
+                        x = x >= 0 ? x : -x;
+                        break;
+                    case OP_ODD_BEGIN:
+                        signs = (signs << 2) | (x == 0 ? 0 : (x > 0 ? 1 : 2));
+                        x = x >= 0 ? x : -x;
+                        break;
+                    case OP_ODD_END:
+                        int sign = (int)(signs & 3);
+                        signs >>>= 2;
+                        x = sign == 0 ? 0 : (sign == 1 ? x : -x);
+                        break;
+                    default:
+                        x = transforms[(int)argsA[i]].apply(x);
+                        break;
+                }
+            }
+            
+            return x;
+        }
+        
+        @Override
+        public String toString () {
+            return "CompiledTransform" + chain;
+        }
+        
+    }
+    
+}
@@ -164,8 +164,7 @@ public class Vector <N extends Num> {
      */
     public Vector<N> apply (Transform transform) {
         double[] newComponents = new double[components.length];
-        for (int i = 0; i < components.length; i ++)
-            newComponents[i] = transform.apply(components[i]);
+        transform.applyAll(components, newComponents);
         return new Vector<N>(dimensionality, newComponents);
     }
     
@@ -0,0 +1,170 @@
+package claw.math;
+
+import edu.wpi.first.math.numbers.N2;
+
+/**
+ * An immutable two-dimensional vector. Unlike the generic {@link Vector}, the components are stored directly in fields,
+ * so no arrays or boxed values are allocated by any operation. See {@link MutableVector2} for a variant which can
+ * be updated in place, so that hot loops can run without allocating at all.
+ */
+public final class Vector2 {
+    
+    /**
+     * The zero vector {@code <0, 0>}.
+     */
+    public static final Vector2 ZERO = new Vector2(0, 0);
+    
+    /**
+     * The x component of the vector.
+     */
+    public final double x;
+    
+    /**
+     * The y component of the vector.
+     */
+    public final double y;
+    
+    /**
+     * Create a new vector {@code <x, y>}.
+     * @param x The x component of the vector.
+     * @param y The y component of the vector.
+     */
+    public Vector2 (double x, double y) {
+        this.x = x;
+        this.y = y;
+    }
+    
+    /**
+     * Create a {@link Vector2} from a two-dimensional generic {@link Vector}.
+     * @param vector    The vector to copy the components of.
+     * @return          The {@code Vector2} with the same components.
+     */
+    public static Vector2 from (Vector<N2> vector) {
+        return new Vector2(vector.getX(), vector.getY());
+    }
+    
+    /**
+     * Convert this vector into a two-dimensional generic {@link Vector}.
+     * @return  The generic {@code Vector} with the same components.
+     */
+    public Vector<N2> toVector () {
+        return Vector.from(x, y);
+    }
+    
+    /**
+     * Get a mutable copy of this vector.
+     * @return  A new {@link MutableVector2} with the same components.
+     */
+    public MutableVector2 toMutable () {
+        return new MutableVector2(x, y);
+    }
+    
+    /**
+     * Gets the magnitude of the vector.
+     * @return The magnitude.
+     */
+    public double getMagnitude () {
+        return Math.sqrt(x*x + y*y);
+    }
+    
+    /**
+     * Returns the angle formed between this vector and the x-axis, in radians, on the interval {@code [0, 2pi)}.
+     * This angle increases counterclockwise, and matches {@link Vector#getAngle(Vector)}.
+     * @return The angle of the vector, in radians.
+     */
+    public double getAngle () {
+        return MutableVector2.getAngle(x, y);
+    }
+    
+    /**
+     * Applies a {@link Transform} to both components of this vector.
+     * @param transform The transform to apply to each component.
+     * @return          The result of the transformation applied to each component of this vector.
+     */
+    public Vector2 apply (Transform transform) {
+        return new Vector2(transform.apply(x), transform.apply(y));
+    }
+    
+    /**
+     * Returns this vector scaled by a given coefficient.
+     * @param k The coefficient to scale this vector by.
+     * @return  The scaled vector result.
+     */
+    public Vector2 scale (double k) {
+        return new Vector2(x*k, y*k);
+    }
+    
+    /**
+     * Returns this vector scaled so that the new magnitude is equal to the given magnitude. If this vector's magnitude
+     * is zero, a zero vector will be returned.
+     * @param magnitude The magnitude of the vector after scaling.
+     * @return          This vector, scaled such that the magnitude equals the provided magnitude.
+     */
+    public Vector2 scaleToMagnitude (double magnitude) {
+        double currentMagnitude = getMagnitude();
+        return currentMagnitude == 0 ? ZERO : scale(magnitude / currentMagnitude);
+    }
+    
+    /**
+     * Negates this vector, resulting in a vector of equal magnitude and opposite direction.
+     * @return This vector, but negated.
+     */
+    public Vector2 negate () {
+        return new Vector2(-x, -y);
+    }
+    
+    /**
+     * Add this vector and another together.
+     * @param other The vector to add.
+     * @return      The sum of the two vectors.
+     */
+    public Vector2 add (Vector2 other) {
+        return new Vector2(x + other.x, y + other.y);
+    }
+    
+    /**
+     * Subtract another vector from this one.
+     * @param other The vector to subtract.
+     * @return      The difference of the two vectors.
+     */
+    public Vector2 subtract (Vector2 other) {
+        return new Vector2(x - other.x, y - other.y);
+    }
+    
+    /**
+     * Calculate the dot product of this vector and other.
+     * @param other The vector to calculate the dot product with.
+     * @return      The dot product.
+     */
+    public double dotProduct (Vector2 other) {
+        return x*other.x + y*other.y;
+    }
+    
+    /**
+     * Rotate this vector counterclockwise by a given angle.
+     * @param angle The angle to rotate by, in radians.
+     * @return      The rotated vector.
+     */
+    public Vector2 rotate (double angle) {
+        double cos = Math.cos(angle), sin = Math.sin(angle);
+        return new Vector2(x*cos - y*sin, x*sin + y*cos);
+    }
+    
+    @Override
+    public boolean equals (Object other) {
+        if (!(other instanceof Vector2)) return false;
+        Vector2 otherVector = (Vector2)other;
+        return Double.compare(x, otherVector.x) == 0 && Double.compare(y, otherVector.y) == 0;
+    }
+    
+    @Override
+    public int hashCode () {
+        return 31 * Double.hashCode(x) + Double.hashCode(y);
+    }
+    
+    @Override
+    public String toString () {
+        return "<" + x + ", " + y + ">";
+    }
+    
+}
@@ -0,0 +1,174 @@
+package claw.math;
+
+import edu.wpi.first.math.numbers.N3;
+
+/**
+ * An immutable three-dimensional vector. Unlike the generic {@link Vector}, the components are stored directly in fields,
+ * so no arrays or boxed values are allocated by any operation. See {@link MutableVector3} for a variant which can
+ * be updated in place.
+ */
+public final class Vector3 {
+    
+    /**
+     * The zero vector {@code <0, 0, 0>}.
+     */
+    public static final Vector3 ZERO = new Vector3(0, 0, 0);
+    
+    /**
+     * The x component of the vector.
+     */
+    public final double x;
+    
+    /**
+     * The y component of the vector.
+     */
+    public final double y;
+    
+    /**
+     * The z component of the vector.
+     */
+    public final double z;
+    
+    /**
+     * Create a new vector {@code <x, y, z>}.
+     * @param x The x component of the vector.
+     * @param y The y component of the vector.
+     * @param z The z component of the vector.
+     */
+    public Vector3 (double x, double y, double z) {
+        this.x = x;
+        this.y = y;
+        this.z = z;
+    }
+    
+    /**
+     * Create a {@link Vector3} from a three-dimensional generic {@link Vector}.
+     * @param vector    The vector to copy the components of.
+     * @return          The {@code Vector3} with the same components.
+     */
+    public static Vector3 from (Vector<N3> vector) {
+        return new Vector3(vector.getX(), vector.getY(), vector.getZ());
+    }
+    
+    /**
+     * Convert this vector into a three-dimensional generic {@link Vector}.
+     * @return  The generic {@code Vector} with the same components.
+     */
+    public Vector<N3> toVector () {
+        return Vector.from(x, y, z);
+    }
+    
+    /**
+     * Get a mutable copy of this vector.
+     * @return  A new {@link MutableVector3} with the same components.
+     */
+    public MutableVector3 toMutable () {
+        return new MutableVector3(x, y, z);
+    }
+    
+    /**
+     * Gets the magnitude of the vector.
+     * @return The magnitude.
+     */
+    public double getMagnitude () {
+        return Math.sqrt(x*x + y*y + z*z);
+    }
+    
+    /**
+     * Applies a {@link Transform} to every component of this vector.
+     * @param transform The transform to apply to each component.
+     * @return          The result of the transformation applied to each component of this vector.
+     */
+    public Vector3 apply (Transform transform) {
+        return new Vector3(transform.apply(x), transform.apply(y), transform.apply(z));
+    }
+    
+    /**
+     * Returns this vector scaled by a given coefficient.
+     * @param k The coefficient to scale this vector by.
+     * @return  The scaled vector result.
+     */
+    public Vector3 scale (double k) {
+        return new Vector3(x*k, y*k, z*k);
+    }
+    
+    /**
+     * Returns this vector scaled so that the new magnitude is equal to the given magnitude. If this vector's magnitude
+     * is zero, a zero vector will be returned.
+     * @param magnitude The magnitude of the vector after scaling.
+     * @return          This vector, scaled such that the magnitude equals the provided magnitude.
+     */
+    public Vector3 scaleToMagnitude (double magnitude) {
+        double currentMagnitude = getMagnitude();
+        return currentMagnitude == 0 ? ZERO : scale(magnitude / currentMagnitude);
+    }
+    
+    /**
+     * Negates this vector, resulting in a vector of equal magnitude and opposite direction.
+     * @return This vector, but negated.
+     */
+    public Vector3 negate () {
+        return new Vector3(-x, -y, -z);
+    }
+    
+    /**
+     * Add this vector and another together.
+     * @param other The vector to add.
+     * @return      The sum of the two vectors.
+     */
+    public Vector3 add (Vector3 other) {
+        return new Vector3(x + other.x, y + other.y, z + other.z);
+    }
+    
+    /**
+     * Subtract another vector from this one.
+     * @param other The vector to subtract.
+     * @return      The difference of the two vectors.
+     */
+    public Vector3 subtract (Vector3 other) {
+        return new Vector3(x - other.x, y - other.y, z - other.z);
+    }
+    
+    /**
+     * Calculate the dot product of this vector and other.
+     * @param other The vector to calculate the dot product with.
+     * @return      The dot product.
+     */
+    public double dotProduct (Vector3 other) {
+        return x*other.x + y*other.y + z*other.z;
+    }
+    
+    /**
+     * Calculate the cross product of this vector and other ({@code this x other}).
+     * @param other The vector to calculate the cross product with.
+     * @return      The cross product.
+     */
+    public Vector3 crossProduct (Vector3 other) {
+        return new Vector3(
+            y*other.z - z*other.y,
+            z*other.x - x*other.z,
+            x*other.y - y*other.x
+        );
+    }
+    
+    @Override
+    public boolean equals (Object other) {
+        if (!(other instanceof Vector3)) return false;
+        Vector3 otherVector = (Vector3)other;
+        return
+            Double.compare(x, otherVector.x) == 0 &&
+            Double.compare(y, otherVector.y) == 0 &&
+            Double.compare(z, otherVector.z) == 0;
+    }
+    
+    @Override
+    public int hashCode () {
+        return 31 * (31 * Double.hashCode(x) + Double.hashCode(y)) + Double.hashCode(z);
+    }
+    
+    @Override
+    public String toString () {
+        return "<" + x + ", " + y + ", " + z + ">";
+    }
+    
+}
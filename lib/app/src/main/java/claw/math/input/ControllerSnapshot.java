@@ -0,0 +1,100 @@
+package claw.math.input;
+
+import edu.wpi.first.wpilibj.DriverStation;
+import edu.wpi.first.wpilibj.RobotController;
+
+/**
+ * A snapshot of every axis, button, and the POV of a controller at a single point in time, stored in primitive fields
+ * so that it can be captured every loop without allocating.
+ * @see RaptorsXboxController#setSnapshotMode(boolean)
+ */
+public final class ControllerSnapshot {
+    
+    /**
+     * The maximum number of axes a snapshot can hold (the maximum supported by the Driver Station).
+     */
+    public static final int MAX_AXES = 12;
+    
+    /**
+     * The maximum number of buttons a snapshot can hold (the maximum supported by the Driver Station).
+     */
+    public static final int MAX_BUTTONS = 32;
+    
+    /**
+     * The value of each axis. Only the first {@link #numAxes} values are meaningful.
+     */
+    public final double[] axes = new double[MAX_AXES];
+    
+    /**
+     * The number of axes on the controller.
+     */
+    public int numAxes;
+    
+    /**
+     * The state of every button, where button {@code n} (starting from 1, as in {@code GenericHID.getRawButton})
+     * is held down if bit {@code n - 1} is set.
+     */
+    public int buttons;
+    
+    /**
+     * The number of buttons on the controller.
+     */
+    public int numButtons;
+    
+    /**
+     * The angle of the first POV (D-pad) in degrees, or {@code -1} if it is not pressed.
+     */
+    public int pov = -1;
+    
+    /**
+     * The FPGA timestamp at which the snapshot was captured, in microseconds.
+     */
+    public long timeMicros;
+    
+    /**
+     * Capture the current state of a controller from the Driver Station into this snapshot.
+     * @param port  The port index of the controller on the Driver Station.
+     */
+    public void capture (int port) {
+        numAxes = Math.min(DriverStation.getStickAxisCount(port), MAX_AXES);
+        for (int i = 0; i < numAxes; i ++)
+            axes[i] = DriverStation.getStickAxis(port, i);
+        
+        numButtons = Math.min(DriverStation.getStickButtonCount(port), MAX_BUTTONS);
+        buttons = DriverStation.getStickButtons(port);
+        pov = DriverStation.getStickPOVCount(port) > 0 ? DriverStation.getStickPOV(port, 0) : -1;
+        timeMicros = RobotController.getFPGATime();
+    }
+    
+    /**
+     * Copy the contents of another snapshot into this one.
+     * @param other The snapshot to copy.
+     */
+    public void copyFrom (ControllerSnapshot other) {
+        System.arraycopy(other.axes, 0, axes, 0, MAX_AXES);
+        numAxes = other.numAxes;
+        buttons = other.buttons;
+        numButtons = other.numButtons;
+        pov = other.pov;
+        timeMicros = other.timeMicros;
+    }
+    
+    /**
+     * Get the value of an axis.
+     * @param axis  The index of the axis.
+     * @return      The value of the axis, or zero if the controller has no such axis.
+     */
+    public double getAxis (int axis) {
+        return axis >= 0 && axis < numAxes ? axes[axis] : 0;
+    }
+    
+    /**
+     * Get whether a button is held down.
+     * @param button    The button number, starting from 1.
+     * @return          Whether the button is held down.
+     */
+    public boolean getButton (int button) {
+        return button >= 1 && button <= numButtons && (buttons & (1 << (button - 1))) != 0;
+    }
+    
+}
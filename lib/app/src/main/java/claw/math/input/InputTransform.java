@@ -1,5 +1,6 @@
 package claw.math.input;
 
+import claw.math.TabulatedTransform;
 import claw.math.Transform;
 
 /**
@@ -60,10 +61,29 @@ public class InputTransform implements Transform {
      * @param deadbandValue Any input with a magnitude of less than this deadband value will be mapped to zero.
      */
     public InputTransform (Transform inputMap, double deadbandValue) {
-        innerTransform =
+        this(inputMap, deadbandValue, 0);
+    }
+    
+    /**
+     * Create an {@link InputTransform}, as with {@link #InputTransform(Transform, double)}, but with the input map
+     * approximated by a lookup table on the interval [-1, 1] (see {@link TabulatedTransform}). This is useful for
+     * expensive input curves like {@link InputTransform#THREE_HALVES_CURVE}. The deadband and clamp are still
+     * applied exactly.
+     * 
+     * @param inputMap          The input curve to apply after the deadband.
+     * @param deadbandValue     Any input with a magnitude of less than this deadband value will be mapped to zero.
+     * @param curveMaxError     The maximum error allowed in the tabulated input map, or zero to apply the input map
+     * without tabulating it.
+     */
+    public InputTransform (Transform inputMap, double deadbandValue, double curveMaxError) {
+        if (curveMaxError != 0)
+            inputMap = TabulatedTransform.withMaxError(inputMap, -1, 1, curveMaxError);
+        
+        innerTransform = Transform.compile(
             makeDeadband(deadbandValue)
             .then(inputMap)
-            .then(INPUT_CLAMP);
+            .then(INPUT_CLAMP)
+        );
     }
     
     /**
@@ -1,24 +1,83 @@
 package claw.math.input;
 
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Optional;
+import java.util.function.Consumer;
 
+import claw.math.MutableVector2;
+import claw.math.TabulatedTransform;
 import claw.math.Transform;
 import claw.math.Vector;
+import claw.math.Vector2;
 import edu.wpi.first.math.geometry.Rotation2d;
 import edu.wpi.first.math.numbers.N2;
 import edu.wpi.first.wpilibj.XboxController;
-import edu.wpi.first.wpilibj2.command.InstantCommand;
-import edu.wpi.first.wpilibj2.command.SequentialCommandGroup;
-import edu.wpi.first.wpilibj2.command.WaitCommand;
+import edu.wpi.first.wpilibj2.command.CommandScheduler;
+import edu.wpi.first.wpilibj2.command.Subsystem;
 
 /**
  * An extension of the {@link XboxController} providing better control over the D-pad, {@link InputTransform}
  * applications to joysticks, and other quality-of-life improvements.
  */
-public class RaptorsXboxController extends XboxController {
+public class RaptorsXboxController extends XboxController implements AutoCloseable {
+    
+    /**
+     * The largest possible magnitude of a joystick vector, with both axes at full deflection
+     */
+    private static final double MAX_STICK_MAGNITUDE = Math.sqrt(2);
+    
+    /**
+     * The most recently created controller on each Driver Station port
+     */
+    private static final Map<Integer, RaptorsXboxController> CONTROLLERS_BY_PORT = new HashMap<>();
+    
+    /**
+     * Get the most recently created {@link RaptorsXboxController} on a given Driver Station port.
+     * @param port  The port index on the Driver Station.
+     * @return      The controller on that port, if one has been created.
+     */
+    public static Optional<RaptorsXboxController> getControllerOnPort (int port) {
+        synchronized (CONTROLLERS_BY_PORT) {
+            return Optional.ofNullable(CONTROLLERS_BY_PORT.get(port));
+        }
+    }
     
     private final Transform leftStickTransform, rightStickTransform;
     
+    /**
+     * Every rumble setter goes through the scheduler, which writes to the controller directly (bypassing the
+     * overridden setters) so that its record of the controller's rumble is never out of date
+     */
+    private final RumbleScheduler rumbleScheduler = new RumbleScheduler(super::setRumble);
+    
+    private final ControllerSnapshot snapshot = new ControllerSnapshot();
+    private boolean snapshotMode = false;
+    
+    /**
+     * In snapshot mode, the buttons held down in the previous snapshot, and the buttons which have been pressed or
+     * released between snapshots since they were last checked (using the same bit layout as
+     * {@link ControllerSnapshot#buttons})
+     */
+    private int lastSnapshotButtons, pressedButtons, releasedButtons;
+    
+    /**
+     * If this is not {@code null}, it fills the snapshot instead of the Driver Station
+     */
+    private Consumer<ControllerSnapshot> inputOverride = null;
+    private boolean snapshotModeBeforeOverride = false;
+    
+    /**
+     * A subsystem which is registered with the {@link CommandScheduler} only so that its periodic method updates the
+     * snapshot at the start of every scheduler run, before any commands read from the controller
+     */
+    private final Subsystem snapshotUpdater = new Subsystem() {
+        @Override
+        public void periodic () {
+            updateSnapshot();
+        }
+    };
+    
     /**
      * Create a new {@link RaptorsXboxController}.
      * @param port The port index of this Xbox controller on the Driver Station.
@@ -49,15 +108,215 @@ public class RaptorsXboxController extends XboxController {
         super(port);
         leftStickTransform = leftStickVectorTransform;
         rightStickTransform = rightStickVectorTransform;
+        
+        synchronized (CONTROLLERS_BY_PORT) {
+            CONTROLLERS_BY_PORT.put(port, this);
+        }
+    }
+    
+    /**
+     * Create a new {@link RaptorsXboxController} with {@link Transform}s to apply to the left and right joysticks, each
+     * approximated by a lookup table (see {@link TabulatedTransform}) over every possible joystick magnitude. This makes
+     * reading the joystick vectors cheap even for expensive transforms. Note that a discontinuity in a transform
+     * (such as the edge of a deadband) will be smoothed over the width of one table interval.
+     * @param port                      The port index of this Xbox controller on the Driver Station.
+     * @param leftStickVectorTransform  The transform to apply to the left joystick's position vector (magnitude).
+     * @param rightStickVectorTransform The transform to apply to the right joystick's position vector (magnitude).
+     * @param tabulationResolution      The number of intervals in each transform's lookup table.
+     */
+    public RaptorsXboxController (int port, Transform leftStickVectorTransform, Transform rightStickVectorTransform, int tabulationResolution) {
+        this(
+            port,
+            Transform.tabulate(leftStickVectorTransform, 0, MAX_STICK_MAGNITUDE, tabulationResolution),
+            Transform.tabulate(rightStickVectorTransform, 0, MAX_STICK_MAGNITUDE, tabulationResolution)
+        );
     }
     
-    private Vector<N2> getStickVector (double x, double y, Transform transform) {
+    /**
+     * Enable or disable snapshot mode. In snapshot mode, every axis, button, and the POV of the controller are
+     * captured into a {@link ControllerSnapshot} once per {@link CommandScheduler} run, and all getters
+     * ({@link #getRawAxis(int)}, {@link #getRawButton(int)}, {@link #getPOV(int)}, and everything built on them, such
+     * as {@link #getLeftX()} or {@link #getLeftStickAsVector()}) read from the snapshot. This gives every command a
+     * consistent view of the controller within a loop, and avoids repeatedly reading from the Driver Station.
+     * <br></br>
+     * Edge detection methods such as {@link #getAButtonPressed()} compare each snapshot with the one before it, so they
+     * report whether a button was pressed or released between snapshots since the last time they were checked.
+     * @param enabled   Whether snapshot mode should be enabled.
+     */
+    public void setSnapshotMode (boolean enabled) {
+        if (enabled == snapshotMode) return;
+        if (!enabled && inputOverride != null)
+            throw new IllegalStateException("Snapshot mode cannot be disabled while the controller's input is overridden");
+        
+        if (enabled) {
+            updateSnapshot();
+            
+            // Buttons already held down when snapshot mode starts were not pressed between snapshots
+            lastSnapshotButtons = getSnapshotButtons();
+            pressedButtons = 0;
+            releasedButtons = 0;
+            
+            CommandScheduler.getInstance().registerSubsystem(snapshotUpdater);
+        } else {
+            CommandScheduler.getInstance().unregisterSubsystem(snapshotUpdater);
+        }
+        
+        snapshotMode = enabled;
+    }
+    
+    /**
+     * Check whether snapshot mode is enabled.
+     * @return  Whether snapshot mode is enabled.
+     * @see #setSnapshotMode(boolean)
+     */
+    public boolean isSnapshotMode () {
+        return snapshotMode;
+    }
+    
+    /**
+     * Capture the current state of the controller into the snapshot. This is called automatically once per
+     * {@link CommandScheduler} run while snapshot mode is enabled, but can be called manually to refresh the
+     * snapshot at other times.
+     */
+    public void updateSnapshot () {
+        if (inputOverride != null) inputOverride.accept(snapshot);
+        else snapshot.capture(getPort());
+        
+        // Latch the buttons which changed since the last snapshot until they are checked
+        int buttons = getSnapshotButtons();
+        int changed = buttons ^ lastSnapshotButtons;
+        pressedButtons |= changed & buttons;
+        releasedButtons |= changed & ~buttons;
+        lastSnapshotButtons = buttons;
+    }
+    
+    /**
+     * Get the buttons held down in the snapshot, ignoring bits beyond the snapshot's number of buttons
+     */
+    private int getSnapshotButtons () {
+        int numButtons = snapshot.numButtons;
+        return numButtons >= ControllerSnapshot.MAX_BUTTONS ? snapshot.buttons : snapshot.buttons & ((1 << numButtons) - 1);
+    }
+    
+    /**
+     * Override the input of this controller. While an override is set, snapshot mode is enabled and the snapshot is
+     * filled by the override instead of the Driver Station, so every getter reads the overridden input. This is used
+     * to replay recorded driver input (see {@link claw.replay.ControllerInputRecording}).
+     * @param override  A consumer which fills in the controller's snapshot each loop, or {@code null} to remove the
+     * override and restore the previous snapshot mode.
+     */
+    public void setInputOverride (Consumer<ControllerSnapshot> override) {
+        if (override != null) {
+            if (inputOverride == null) snapshotModeBeforeOverride = snapshotMode;
+            inputOverride = override;
+            setSnapshotMode(true);
+            updateSnapshot();
+        } else if (inputOverride != null) {
+            inputOverride = null;
+            setSnapshotMode(snapshotModeBeforeOverride);
+            if (snapshotMode) updateSnapshot();
+        }
+    }
+    
+    /**
+     * Get the snapshot of the controller's state. The returned snapshot is updated in place, so it should not be
+     * modified or held onto across loops.
+     * @return  The controller's current {@link ControllerSnapshot}.
+     * @see #setSnapshotMode(boolean)
+     */
+    public ControllerSnapshot getSnapshot () {
+        return snapshot;
+    }
+    
+    @Override
+    public double getRawAxis (int axis) {
+        return snapshotMode ? snapshot.getAxis(axis) : super.getRawAxis(axis);
+    }
+    
+    @Override
+    public boolean getRawButton (int button) {
+        return snapshotMode ? snapshot.getButton(button) : super.getRawButton(button);
+    }
+    
+    @Override
+    public boolean getRawButtonPressed (int button) {
+        if (!snapshotMode) return super.getRawButtonPressed(button);
+        if (button < 1 || button > ControllerSnapshot.MAX_BUTTONS) return false;
+        
+        int bit = 1 << (button - 1);
+        boolean pressed = (pressedButtons & bit) != 0;
+        pressedButtons &= ~bit;
+        return pressed;
+    }
+    
+    @Override
+    public boolean getRawButtonReleased (int button) {
+        if (!snapshotMode) return super.getRawButtonReleased(button);
+        if (button < 1 || button > ControllerSnapshot.MAX_BUTTONS) return false;
+        
+        int bit = 1 << (button - 1);
+        boolean released = (releasedButtons & bit) != 0;
+        releasedButtons &= ~bit;
+        return released;
+    }
+    
+    @Override
+    public int getPOV (int pov) {
+        return snapshotMode && pov == 0 ? snapshot.pov : super.getPOV(pov);
+    }
+    
+    /**
+     * Write a joystick position into a {@link MutableVector2}, inverting y and applying the transform to the magnitude
+     */
+    private static MutableVector2 getStickVector (double x, double y, Transform transform, MutableVector2 output) {
         // Invert y because the input from the driver station is also inverted
-        Vector<N2> rawVector = Vector.from(x, -y);
+        output.set(x, -y);
         
         // Re-scale the vector to a new magnitude
-        double rawMagnitude = rawVector.getMagnitude();
-        return rawVector.scaleToMagnitude(transform.apply(rawMagnitude));
+        double rawMagnitude = output.getMagnitude();
+        return output.scaleToMagnitude(transform.apply(rawMagnitude));
+    }
+    
+    /**
+     * Write the left joystick's position into a {@link MutableVector2} without allocating. The left joystick
+     * transform given through the constructor method will be applied to the vector's magnitude,
+     * if one was provided. Also, the vector will be normalized so that up on the joystick corresponds
+     * with a positive y value.
+     * @param output    The vector to write the joystick's position to.
+     * @return          The {@code output} vector.
+     */
+    public MutableVector2 getLeftStick (MutableVector2 output) {
+        return getStickVector(getLeftX(), getLeftY(), leftStickTransform, output);
+    }
+    
+    /**
+     * Write the right joystick's position into a {@link MutableVector2} without allocating. The right joystick
+     * transform given through the constructor method will be applied to the vector's magnitude,
+     * if one was provided. Also, the vector will be normalized so that up on the joystick corresponds
+     * with a positive y value.
+     * @param output    The vector to write the joystick's position to.
+     * @return          The {@code output} vector.
+     */
+    public MutableVector2 getRightStick (MutableVector2 output) {
+        return getStickVector(getRightX(), getRightY(), rightStickTransform, output);
+    }
+    
+    /**
+     * Retrieves the left joystick's position as a {@link Vector2}.
+     * @return  A {@code Vector2} representing the left joystick's position.
+     * @see #getLeftStick(MutableVector2)
+     */
+    public Vector2 getLeftStickAsVector2 () {
+        return getLeftStick(new MutableVector2()).toVector2();
+    }
+    
+    /**
+     * Retrieves the right joystick's position as a {@link Vector2}.
+     * @return  A {@code Vector2} representing the right joystick's position.
+     * @see #getRightStick(MutableVector2)
+     */
+    public Vector2 getRightStickAsVector2 () {
+        return getRightStick(new MutableVector2()).toVector2();
     }
     
     /**
@@ -68,7 +327,7 @@ public class RaptorsXboxController extends XboxController {
      * @return  A {@code Vector} representing the left joystick's position.
      */
     public Vector<N2> getLeftStickAsVector () {
-        return getStickVector(getLeftX(), getLeftY(), leftStickTransform);
+        return getLeftStick(new MutableVector2()).toVector();
     }
     
     /**
@@ -79,17 +338,23 @@ public class RaptorsXboxController extends XboxController {
      * @return  A {@code Vector} representing the right joystick's position.
      */
     public Vector<N2> getRightStickAsVector () {
-        return getStickVector(getRightX(), getRightY(), rightStickTransform);
+        return getRightStick(new MutableVector2()).toVector();
     }
     
     /**
-     * Set the controller's rumble.
+     * Set the controller's rumble. This sets the base rumble of the controller's {@link RumbleScheduler}, so it is
+     * overridden by any {@link RumblePattern} or timed rumble while one is playing.
      * @param leftRumble    A value on the interval [0, 1] representing the rumble to apply to the left side of the controller.
      * @param rightRumble   A value on the interval [0, 1] representing the rumble to apply to the right side of the controller.
+     * @see RumbleScheduler#setBaseRumble(double, double)
      */
     public void setRumble (double leftRumble, double rightRumble) {
-        setRumble(RumbleType.kLeftRumble, leftRumble);
-        setRumble(RumbleType.kRightRumble, rightRumble);
+        rumbleScheduler.setBaseRumble(leftRumble, rightRumble);
+    }
+    
+    @Override
+    public void setRumble (RumbleType type, double value) {
+        rumbleScheduler.setBaseRumble(type, value);
     }
     
     /**
@@ -101,28 +366,54 @@ public class RaptorsXboxController extends XboxController {
     }
     
     /**
-     * Stop all controller rumble.
+     * Stop all controller rumble, cancelling every pattern and timed rumble playing on the controller.
      */
     public void stopRumble () {
-        setRumble(0);
+        rumbleScheduler.cancelAll();
+        rumbleScheduler.setBaseRumble(0, 0);
+    }
+    
+    /**
+     * Release this controller: stop its rumble and stop updating its {@link RumbleScheduler}, disable snapshot mode
+     * and any input override, and stop returning it from {@link #getControllerOnPort(int)}. The controller should not
+     * be used after it is closed.
+     */
+    @Override
+    public void close () {
+        rumbleScheduler.close();
+        setInputOverride(null);
+        setSnapshotMode(false);
+        
+        synchronized (CONTROLLERS_BY_PORT) {
+            CONTROLLERS_BY_PORT.remove(getPort(), this);
+        }
     }
     
     /**
-     * Set the controller to rumble for a given duration.
+     * Get the {@link RumbleScheduler} which plays {@link RumblePattern}s on this controller.
+     * @return  The controller's {@code RumbleScheduler}.
+     */
+    public RumbleScheduler getRumbleScheduler () {
+        return rumbleScheduler;
+    }
+    
+    /**
+     * Set the controller to rumble for a given duration. The rumble is played through the controller's
+     * {@link RumbleScheduler} at priority zero, so a later timed rumble takes over from an earlier one instead of
+     * being cut short when the earlier one ends. The rumble starts immediately, but it is only stopped once it ends by
+     * the scheduler's updates, which the {@link claw.CLAWRobot} runtime runs once per loop. Robots which do not use the
+     * CLAW runtime must call {@link RumbleScheduler#update()} once per loop, or the rumble will never stop.
      * @param durationSecs  The duration of the rumble, in seconds.
      * @param leftRumble    A value on the interval [0, 1] representing the rumble to apply to the left side of the controller.
      * @param rightRumble   A value on the interval [0, 1] representing the rumble to apply to the right side of the controller.
      */
     public void setTimedRumble (double durationSecs, double leftRumble, double rightRumble) {
-        new SequentialCommandGroup(
-            new InstantCommand(() -> this.setRumble(leftRumble, rightRumble)),
-            new WaitCommand(durationSecs),
-            new InstantCommand(this::stopRumble)
-        ).schedule();
+        rumbleScheduler.playConstant(durationSecs, leftRumble, rightRumble, 0);
     }
     
     /**
-     * Set the controller to rumble for a given duration.
+     * Set the controller to rumble for a given duration. See {@link #setTimedRumble(double, double, double)} for the
+     * runtime requirement.
      * @param durationSecs  The duration of the rumble, in seconds.
      * @param rumbleValue   A value on the interval [0, 1] representing the rumble to apply to the controller.
      */
@@ -140,7 +431,7 @@ public class RaptorsXboxController extends XboxController {
         int directionInt = getPOV();
         
         // Search through the DPadDirection enum to find one which corresponds with the current directionInt
-        for (DPadDirection direction : DPadDirection.values()) {
+        for (DPadDirection direction : DPAD_DIRECTIONS) {
             if (directionInt == direction.direction) return Optional.of(direction);
         }
         
@@ -159,6 +450,11 @@ public class RaptorsXboxController extends XboxController {
         return currentDirection.isPresent() && currentDirection.get().equals(direction);
     }
     
+    /**
+     * A cached copy of {@code DPadDirection.values()}, which would otherwise allocate a new array on every call
+     */
+    private static final DPadDirection[] DPAD_DIRECTIONS = DPadDirection.values();
+    
     /**
      * An enum representing the buttons or orientations of the D-pad.
      * @see RaptorsXboxController#getDPad()
@@ -0,0 +1,185 @@
+package claw.math.input;
+
+/**
+ * An immutable rumble pattern for a controller, played by a {@link RumbleScheduler}. A pattern is a series of
+ * keyframes, each giving a time and the left and right rumble intensities at that time. Between keyframes, the
+ * intensities are linearly interpolated, so a ramp is two keyframes with different intensities and an abrupt change
+ * is two keyframes at the same time. Patterns should be created once and reused, as playing a pattern does not
+ * allocate.
+ */
+public final class RumblePattern {
+    
+    private final long[] times;
+    private final double[] left, right;
+    private final boolean loop;
+    
+    /**
+     * Create a new {@link RumblePattern} from keyframes.
+     * @param timesSecs The time of each keyframe since the start of the pattern, in seconds. The first keyframe must
+     * be at time zero, and times must not decrease. The pattern ends at the last keyframe.
+     * @param left      The left rumble intensity at each keyframe, on the interval [0, 1].
+     * @param right     The right rumble intensity at each keyframe, on the interval [0, 1].
+     * @param loop      Whether the pattern repeats until it is cancelled.
+     */
+    public RumblePattern (double[] timesSecs, double[] left, double[] right, boolean loop) {
+        if (timesSecs.length == 0 || timesSecs.length != left.length || timesSecs.length != right.length)
+            throw new IllegalArgumentException("A RumblePattern must have the same nonzero number of times and intensities");
+        if (timesSecs[0] != 0)
+            throw new IllegalArgumentException("The first keyframe of a RumblePattern must be at time zero");
+        
+        times = new long[timesSecs.length];
+        for (int i = 0; i < timesSecs.length; i ++) {
+            times[i] = Math.round(timesSecs[i] * 1e6);
+            if (i > 0 && times[i] < times[i - 1])
+                throw new IllegalArgumentException("RumblePattern keyframe times must not decrease");
+        }
+        
+        if (loop && times[times.length - 1] == 0)
+            throw new IllegalArgumentException("A looping RumblePattern must have a nonzero duration");
+        
+        this.left = clampAll(left);
+        this.right = clampAll(right);
+        this.loop = loop;
+    }
+    
+    private static double[] clampAll (double[] values) {
+        double[] clamped = new double[values.length];
+        for (int i = 0; i < values.length; i ++)
+            clamped[i] = Math.max(0, Math.min(1, values[i]));
+        return clamped;
+    }
+    
+    /**
+     * Create a pattern which rumbles at a constant intensity.
+     * @param durationSecs  The duration of the rumble, in seconds.
+     * @param left          The left rumble intensity, on the interval [0, 1].
+     * @param right         The right rumble intensity, on the interval [0, 1].
+     * @return              The pattern.
+     */
+    public static RumblePattern constant (double durationSecs, double left, double right) {
+        return new RumblePattern(
+            new double[] { 0, durationSecs },
+            new double[] { left, left },
+            new double[] { right, right },
+            false
+        );
+    }
+    
+    /**
+     * Create a pattern which linearly ramps the rumble intensity of both sides.
+     * @param durationSecs  The duration of the ramp, in seconds.
+     * @param from          The intensity at the start of the ramp, on the interval [0, 1].
+     * @param to            The intensity at the end of the ramp, on the interval [0, 1].
+     * @return              The pattern.
+     */
+    public static RumblePattern ramp (double durationSecs, double from, double to) {
+        return new RumblePattern(
+            new double[] { 0, durationSecs },
+            new double[] { from, to },
+            new double[] { from, to },
+            false
+        );
+    }
+    
+    /**
+     * Create a pattern of pulses on both sides of the controller.
+     * @param count         The number of pulses.
+     * @param onSecs        The duration of each pulse, in seconds.
+     * @param offSecs       The time between pulses, in seconds.
+     * @param intensity     The rumble intensity of each pulse, on the interval [0, 1].
+     * @return              The pattern.
+     */
+    public static RumblePattern pulses (int count, double onSecs, double offSecs, double intensity) {
+        if (count < 1)
+            throw new IllegalArgumentException("A pulse pattern must have at least one pulse");
+        
+        // Each pulse is four keyframes: on, hold, off, wait (the wait is omitted after the last pulse)
+        int numKeyframes = count * 4 - 1;
+        double[] times = new double[numKeyframes];
+        double[] values = new double[numKeyframes];
+        
+        double time = 0;
+        for (int p = 0; p < count; p ++) {
+            int k = p * 4;
+            times[k] = time;
+            values[k] = intensity;
+            
+            time += onSecs;
+            times[k + 1] = time;
+            values[k + 1] = intensity;
+            times[k + 2] = time;
+            values[k + 2] = 0;
+            
+            if (p < count - 1) {
+                time += offSecs;
+                times[k + 3] = time;
+                values[k + 3] = 0;
+            }
+        }
+        
+        return new RumblePattern(times, values, values, false);
+    }
+    
+    /**
+     * Get a looping version of this pattern, which repeats until it is cancelled.
+     * @return  The looping pattern.
+     */
+    public RumblePattern looping () {
+        double[] timesSecs = new double[times.length];
+        for (int i = 0; i < times.length; i ++)
+            timesSecs[i] = times[i] / 1e6;
+        return new RumblePattern(timesSecs, left, right, true);
+    }
+    
+    /**
+     * Get whether this pattern repeats until it is cancelled.
+     * @return  Whether the pattern loops.
+     */
+    public boolean isLooping () {
+        return loop;
+    }
+    
+    /**
+     * Get the duration of one repetition of the pattern.
+     * @return  The duration of the pattern, in microseconds.
+     */
+    public long getDurationMicros () {
+        return times[times.length - 1];
+    }
+    
+    /**
+     * Find the index of the keyframe starting the segment containing the given time, walking from a hint index
+     */
+    int findKeyframe (long time, int hint) {
+        int index = hint < times.length ? hint : 0;
+        if (times[index] > time) index = 0;
+        while (index + 1 < times.length && times[index + 1] <= time)
+            index ++;
+        return index;
+    }
+    
+    /**
+     * Get the left intensity at a time within the segment starting at the given keyframe
+     */
+    double getLeft (int keyframe, long time) {
+        return interpolate(left, keyframe, time);
+    }
+    
+    /**
+     * Get the right intensity at a time within the segment starting at the given keyframe
+     */
+    double getRight (int keyframe, long time) {
+        return interpolate(right, keyframe, time);
+    }
+    
+    private double interpolate (double[] values, int keyframe, long time) {
+        if (keyframe + 1 >= times.length) return values[keyframe];
+        
+        long segmentStart = times[keyframe], segmentLength = times[keyframe + 1] - segmentStart;
+        if (segmentLength == 0) return values[keyframe + 1];
+        
+        double t = (double)(time - segmentStart) / segmentLength;
+        return values[keyframe] + (values[keyframe + 1] - values[keyframe]) * t;
+    }
+    
+}
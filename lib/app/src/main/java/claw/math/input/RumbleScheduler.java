@@ -0,0 +1,307 @@
+package claw.math.input;
+
+import java.util.ArrayList;
+
+import edu.wpi.first.wpilibj.GenericHID;
+import edu.wpi.first.wpilibj.GenericHID.RumbleType;
+import edu.wpi.first.wpilibj.RobotController;
+
+/**
+ * Plays {@link RumblePattern}s on a controller. A fixed number of patterns can be active at once, each with a
+ * priority: the active pattern with the highest priority (or the most recently started of those tied for the highest
+ * priority) controls the rumble, and lower priority patterns keep running in the background until they end or are
+ * cancelled. While no pattern is playing, the controller is set to a base rumble (see
+ * {@link #setBaseRumble(double, double)}). The rumble is only written to the controller when it changes, so every
+ * change to the controller's rumble should go through its scheduler.
+ * <br></br>
+ * Every {@code RumbleScheduler} is updated once per loop by the {@link claw.CLAWRobot} runtime. If the robot does not
+ * use the CLAW runtime, {@link #update()} should be called once per loop instead. Starting, updating, and cancelling
+ * patterns do not allocate. A scheduler which is no longer needed should be {@linkplain #close() closed} so that it
+ * stops being updated and can be garbage collected.
+ */
+public final class RumbleScheduler {
+    
+    /**
+     * The maximum number of patterns which can be active at once on a single controller.
+     */
+    public static final int MAX_ACTIVE_PATTERNS = 8;
+    
+    private static final int SLOT_BITS = 3;
+    private static final int GENERATION_MASK = Integer.MAX_VALUE >>> SLOT_BITS;
+    
+    private static final ArrayList<RumbleScheduler> SCHEDULERS = new ArrayList<>();
+    
+    /**
+     * Update every {@link RumbleScheduler}. This is called once per loop by the {@link claw.CLAWRobot} runtime.
+     */
+    public static void updateAll () {
+        long time = RobotController.getFPGATime();
+        synchronized (SCHEDULERS) {
+            for (int i = 0; i < SCHEDULERS.size(); i ++)
+                SCHEDULERS.get(i).update(time);
+        }
+    }
+    
+    /**
+     * Writes a rumble value to the controller. This is separate from the controller itself so that a controller can
+     * route its own rumble setters through its scheduler.
+     */
+    static interface RumbleOutput {
+        void setRumble (RumbleType type, double value);
+    }
+    
+    private final RumbleOutput output;
+    
+    // Slot state, stored as parallel arrays so playing a pattern never allocates
+    private final RumblePattern[] patterns = new RumblePattern[MAX_ACTIVE_PATTERNS];
+    private final boolean[] active = new boolean[MAX_ACTIVE_PATTERNS];
+    private final int[] priorities = new int[MAX_ACTIVE_PATTERNS];
+    private final int[] generations = new int[MAX_ACTIVE_PATTERNS];
+    private final int[] keyframes = new int[MAX_ACTIVE_PATTERNS];
+    private final long[] startTimes = new long[MAX_ACTIVE_PATTERNS];
+    private final long[] startOrders = new long[MAX_ACTIVE_PATTERNS];
+    
+    /**
+     * The constant intensities and end times of slots playing a constant rumble without a pattern
+     */
+    private final double[] constantLeft = new double[MAX_ACTIVE_PATTERNS], constantRight = new double[MAX_ACTIVE_PATTERNS];
+    private final long[] constantEndTimes = new long[MAX_ACTIVE_PATTERNS];
+    
+    private long nextStartOrder = 0;
+    
+    private double baseLeft = 0, baseRight = 0;
+    private double outputLeft = 0, outputRight = 0;
+    
+    /**
+     * Create a new {@link RumbleScheduler} for a controller, which will be updated once per loop along with every other
+     * {@code RumbleScheduler}.
+     * @param controller    The controller to rumble.
+     */
+    public RumbleScheduler (GenericHID controller) {
+        this(controller::setRumble);
+    }
+    
+    RumbleScheduler (RumbleOutput output) {
+        this.output = output;
+        synchronized (SCHEDULERS) {
+            SCHEDULERS.add(this);
+        }
+    }
+    
+    /**
+     * Stop every pattern, turn off the controller's rumble, and stop updating this scheduler. The scheduler should not
+     * be used after it is closed.
+     */
+    public void close () {
+        synchronized (SCHEDULERS) {
+            SCHEDULERS.remove(this);
+        }
+        
+        cancelAll();
+        setBaseRumble(0, 0);
+    }
+    
+    /**
+     * Set the rumble of the controller while no pattern is playing. The new base rumble is written to the controller
+     * immediately if no pattern is playing.
+     * @param left  The left rumble intensity, on the interval [0, 1].
+     * @param right The right rumble intensity, on the interval [0, 1].
+     */
+    public void setBaseRumble (double left, double right) {
+        baseLeft = Math.max(0, Math.min(1, left));
+        baseRight = Math.max(0, Math.min(1, right));
+        update();
+    }
+    
+    /**
+     * Set the rumble of one or both sides of the controller while no pattern is playing.
+     * @param type  The side of the controller to set the base rumble of.
+     * @param value The rumble intensity, on the interval [0, 1].
+     * @see #setBaseRumble(double, double)
+     */
+    public void setBaseRumble (RumbleType type, double value) {
+        setBaseRumble(
+            type == RumbleType.kRightRumble ? baseLeft : value,
+            type == RumbleType.kLeftRumble ? baseRight : value
+        );
+    }
+    
+    /**
+     * Start playing a pattern. The controller's rumble is updated immediately, but the pattern only progresses (and
+     * ends) as the scheduler is updated once per loop.
+     * @param pattern   The pattern to play.
+     * @param priority  The priority of the pattern. Higher priority patterns take control of the rumble over lower
+     * priority ones.
+     * @return          A handle which can be passed to {@link #cancel(int)} to stop the pattern, or {@code -1} if
+     * every slot is taken by a higher priority pattern.
+     */
+    public int play (RumblePattern pattern, int priority) {
+        int slot = claimSlot(priority);
+        if (slot == -1) return -1;
+        
+        patterns[slot] = pattern;
+        keyframes[slot] = 0;
+        
+        // Write the new rumble now instead of waiting for the next update
+        update(startTimes[slot]);
+        return slotHandle(slot);
+    }
+    
+    /**
+     * Start a constant rumble for a given duration, without needing a {@link RumblePattern}. The controller's rumble
+     * is updated immediately, but the rumble only ends once the scheduler is updated after its duration.
+     * @param durationSecs  The duration of the rumble, in seconds.
+     * @param left          The left rumble intensity, on the interval [0, 1].
+     * @param right         The right rumble intensity, on the interval [0, 1].
+     * @param priority      The priority of the rumble.
+     * @return              A handle which can be passed to {@link #cancel(int)} to stop the rumble, or {@code -1} if
+     * every slot is taken by a higher priority pattern.
+     * @see #play(RumblePattern, int)
+     */
+    public int playConstant (double durationSecs, double left, double right, int priority) {
+        int slot = claimSlot(priority);
+        if (slot == -1) return -1;
+        
+        patterns[slot] = null;
+        constantLeft[slot] = Math.max(0, Math.min(1, left));
+        constantRight[slot] = Math.max(0, Math.min(1, right));
+        constantEndTimes[slot] = startTimes[slot] + Math.round(durationSecs * 1e6);
+        
+        update(startTimes[slot]);
+        return slotHandle(slot);
+    }
+    
+    /**
+     * Stop a pattern which was started by {@link #play(RumblePattern, int)} or
+     * {@link #playConstant(double, double, double, int)}. Handles of patterns which have already ended are ignored.
+     * @param handle    The handle of the pattern.
+     */
+    public void cancel (int handle) {
+        if (isPlaying(handle))
+            active[handle & (MAX_ACTIVE_PATTERNS - 1)] = false;
+    }
+    
+    /**
+     * Stop every pattern with a priority at or below the given priority.
+     * @param maxPriority   The highest priority to cancel.
+     */
+    public void cancelUpTo (int maxPriority) {
+        for (int i = 0; i < MAX_ACTIVE_PATTERNS; i ++)
+            if (priorities[i] <= maxPriority) active[i] = false;
+    }
+    
+    /**
+     * Stop every pattern.
+     */
+    public void cancelAll () {
+        for (int i = 0; i < MAX_ACTIVE_PATTERNS; i ++)
+            active[i] = false;
+    }
+    
+    /**
+     * Check whether a pattern is still playing.
+     * @param handle    The handle of the pattern.
+     * @return          Whether the pattern is still playing.
+     */
+    public boolean isPlaying (int handle) {
+        if (handle < 0) return false;
+        int slot = handle & (MAX_ACTIVE_PATTERNS - 1);
+        return active[slot] && generations[slot] == handle >>> SLOT_BITS;
+    }
+    
+    /**
+     * Update the controller's rumble. This is called automatically once per loop by the {@link claw.CLAWRobot} runtime.
+     */
+    public void update () {
+        update(RobotController.getFPGATime());
+    }
+    
+    /**
+     * Update the controller's rumble at a given time.
+     * @param time  The current FPGA timestamp, in microseconds.
+     */
+    public void update (long time) {
+        int controlling = -1;
+        for (int i = 0; i < MAX_ACTIVE_PATTERNS; i ++) {
+            if (!active[i]) continue;
+            
+            if (hasEnded(i, time)) {
+                active[i] = false;
+                continue;
+            }
+            
+            if (controlling == -1
+                || priorities[i] > priorities[controlling]
+                || (priorities[i] == priorities[controlling] && startOrders[i] > startOrders[controlling]))
+                controlling = i;
+        }
+        
+        double left = baseLeft, right = baseRight;
+        if (controlling != -1) {
+            RumblePattern pattern = patterns[controlling];
+            if (pattern == null) {
+                left = constantLeft[controlling];
+                right = constantRight[controlling];
+            } else {
+                long patternTime = Math.max(0, time - startTimes[controlling]);
+                if (pattern.isLooping()) patternTime %= pattern.getDurationMicros();
+                
+                int keyframe = pattern.findKeyframe(patternTime, keyframes[controlling]);
+                keyframes[controlling] = keyframe;
+                left = pattern.getLeft(keyframe, patternTime);
+                right = pattern.getRight(keyframe, patternTime);
+            }
+        }
+        
+        if (left != outputLeft) {
+            output.setRumble(RumbleType.kLeftRumble, left);
+            outputLeft = left;
+        }
+        
+        if (right != outputRight) {
+            output.setRumble(RumbleType.kRightRumble, right);
+            outputRight = right;
+        }
+    }
+    
+    private boolean hasEnded (int slot, long time) {
+        RumblePattern pattern = patterns[slot];
+        if (pattern == null) return time >= constantEndTimes[slot];
+        return !pattern.isLooping() && time - startTimes[slot] >= pattern.getDurationMicros();
+    }
+    
+    /**
+     * Find a free slot for a new pattern, replacing the lowest priority (and then oldest) active pattern if every slot
+     * is taken and its priority is not higher than the new pattern's. Returns -1 if no slot could be claimed.
+     */
+    private int claimSlot (int priority) {
+        int slot = -1;
+        for (int i = 0; i < MAX_ACTIVE_PATTERNS; i ++) {
+            if (!active[i]) {
+                slot = i;
+                break;
+            }
+            
+            if (slot == -1
+                || priorities[i] < priorities[slot]
+                || (priorities[i] == priorities[slot] && startOrders[i] < startOrders[slot]))
+                slot = i;
+        }
+        
+        if (active[slot] && priorities[slot] > priority) return -1;
+        
+        active[slot] = true;
+        priorities[slot] = priority;
+        startOrders[slot] = nextStartOrder ++;
+        startTimes[slot] = RobotController.getFPGATime();
+        
+        // The generation makes handles to patterns which previously used this slot invalid
+        generations[slot] = (generations[slot] + 1) & GENERATION_MASK;
+        return slot;
+    }
+    
+    private int slotHandle (int slot) {
+        return generations[slot] << SLOT_BITS | slot;
+    }
+    
+}
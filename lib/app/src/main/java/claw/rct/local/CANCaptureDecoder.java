@@ -0,0 +1,268 @@
+package claw.rct.local;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.TreeMap;
+
+import claw.hardware.can.CANCaptureFile;
+import claw.hardware.can.CANMessageID;
+import claw.hardware.can.MutableCANMessage;
+import claw.rct.network.low.ConsoleManager;
+
+/**
+ * Decodes CAN capture files (recorded on the roboRIO with {@code canscan capture}) entirely offline, producing a
+ * timeline of the traffic from each device and a graph of the estimated bus utilization over time.
+ */
+public class CANCaptureDecoder {
+    
+    /**
+     * The bitrate of the roboRIO's CAN bus, in bits per second.
+     */
+    public static final double BUS_BITRATE = 1_000_000;
+    
+    /**
+     * The bits of a message ID which identify a device (device type, manufacturer, and device number)
+     */
+    private static final int DEVICE_MASK = 0x1FFF003F;
+    
+    /**
+     * The number of bits in an extended (29-bit ID) CAN frame aside from its payload, including the interframe space
+     */
+    private static final int FRAME_OVERHEAD_BITS = 67;
+    
+    /**
+     * An approximation of the bits added by bit stuffing, as a fraction of the unstuffed frame length
+     */
+    private static final double STUFFING_FACTOR = 1.1;
+    
+    private static final int DEFAULT_NUM_WINDOWS = 60;
+    private static final double MIN_WINDOW_SECS = 0.01;
+    
+    private static final int GRAPH_WIDTH = 50;
+    private static final int DEVICE_NAME_WIDTH = 48;
+    
+    /**
+     * The traffic from a single device over the course of a capture.
+     * @param deviceKey             The message ID bits identifying the device.
+     * @param frameCount            The total number of frames the device sent.
+     * @param firstSeenSecs         The time of the device's first frame, in seconds since the start of the capture.
+     * @param lastSeenSecs          The time of the device's last frame, in seconds since the start of the capture.
+     * @param maxGapSecs            The longest time between two consecutive frames from the device, in seconds.
+     * @param windowFrameCounts     The number of frames the device sent in each window of the capture.
+     */
+    public static record DeviceTimeline (
+        int deviceKey,
+        long frameCount,
+        double firstSeenSecs,
+        double lastSeenSecs,
+        double maxGapSecs,
+        int[] windowFrameCounts
+    ) {
+        
+        /**
+         * Get a readable description of the device.
+         * @return  The device's manufacturer, type, and number.
+         */
+        public String describe () {
+            CANMessageID id = CANMessageID.fromMessageId(deviceKey);
+            return id.manufacturer().friendlyName + " " + id.deviceType() + " #" + id.deviceNum();
+        }
+        
+    }
+    
+    /**
+     * The result of decoding a capture file.
+     * @param durationSecs      The time from the start of the capture to its last frame, in seconds.
+     * @param windowSecs        The length of each window of the timelines and utilization graph, in seconds.
+     * @param frameCount        The total number of frames in the capture.
+     * @param busUtilization    The estimated fraction of the bus's bandwidth used in each window, on the interval [0, 1].
+     * @param devices           The timeline of each device, sorted by device key.
+     */
+    public static record CaptureAnalysis (
+        double durationSecs,
+        double windowSecs,
+        long frameCount,
+        double[] busUtilization,
+        List<DeviceTimeline> devices
+    ) { }
+    
+    /**
+     * Estimate the number of bits a frame occupies on the bus.
+     * @param length    The number of payload bytes.
+     * @return          The approximate number of bits.
+     */
+    public static double estimateFrameBits (int length) {
+        return (FRAME_OVERHEAD_BITS + 8 * length) * STUFFING_FACTOR;
+    }
+    
+    /**
+     * Decode a capture file, dividing the capture into about {@value #DEFAULT_NUM_WINDOWS} windows.
+     * @param file          The capture file.
+     * @return              The {@link CaptureAnalysis}.
+     * @throws IOException  If the file could not be read or is not a valid capture.
+     */
+    public static CaptureAnalysis analyze (File file) throws IOException {
+        // Read through the capture once to find its duration
+        long durationMicros = 0;
+        try (CANCaptureFile.Reader reader = new CANCaptureFile.Reader(file)) {
+            MutableCANMessage message = new MutableCANMessage();
+            while (reader.next(message))
+                durationMicros = Math.max(durationMicros, reader.getDriverTimeMicros());
+        }
+        
+        return analyze(file, Math.max(MIN_WINDOW_SECS, durationMicros / 1e6 / DEFAULT_NUM_WINDOWS));
+    }
+    
+    /**
+     * Decode a capture file.
+     * @param file          The capture file.
+     * @param windowSecs    The length of each window of the timelines and utilization graph, in seconds.
+     * @return              The {@link CaptureAnalysis}.
+     * @throws IOException  If the file could not be read or is not a valid capture.
+     */
+    public static CaptureAnalysis analyze (File file, double windowSecs) throws IOException {
+        if (windowSecs <= 0)
+            throw new IllegalArgumentException("The window length must be greater than zero");
+        
+        long windowMicros = Math.max(1, Math.round(windowSecs * 1e6));
+        
+        double[] windowBits = new double[DEFAULT_NUM_WINDOWS];
+        TreeMap<Integer, DeviceAccumulator> devices = new TreeMap<>();
+        long frameCount = 0, lastTimeMicros = 0;
+        int numWindows = 0;
+        
+        try (CANCaptureFile.Reader reader = new CANCaptureFile.Reader(file)) {
+            MutableCANMessage message = new MutableCANMessage();
+            while (reader.next(message)) {
+                // Driver timestamps are used rather than capture times so that frames read by the same poll are not
+                // all counted at the same time
+                long time = Math.max(0, reader.getDriverTimeMicros());
+                int window = (int)(time / windowMicros);
+                
+                if (window >= windowBits.length)
+                    windowBits = Arrays.copyOf(windowBits, Math.max(window + 1, windowBits.length * 2));
+                windowBits[window] += estimateFrameBits(message.length);
+                numWindows = Math.max(numWindows, window + 1);
+                
+                devices.computeIfAbsent(message.messageID & DEVICE_MASK, DeviceAccumulator::new).addFrame(time, window);
+                
+                frameCount ++;
+                lastTimeMicros = Math.max(lastTimeMicros, time);
+            }
+        }
+        
+        double[] busUtilization = new double[numWindows];
+        for (int i = 0; i < numWindows; i ++)
+            busUtilization[i] = Math.min(1, windowBits[i] / (BUS_BITRATE * windowMicros / 1e6));
+        
+        List<DeviceTimeline> timelines = new ArrayList<>();
+        for (DeviceAccumulator device : devices.values())
+            timelines.add(device.toTimeline(numWindows));
+        
+        return new CaptureAnalysis(lastTimeMicros / 1e6, windowMicros / 1e6, frameCount, busUtilization, timelines);
+    }
+    
+    /**
+     * Print the utilization graph and device timelines of a decoded capture to the console.
+     * @param console   The console to print to.
+     * @param analysis  The decoded capture.
+     */
+    public static void print (ConsoleManager console, CaptureAnalysis analysis) {
+        console.printlnSys(
+            analysis.frameCount() + " frames over " + formatSecs(analysis.durationSecs()) +
+            " (windows of " + formatSecs(analysis.windowSecs()) + ")"
+        );
+        
+        // Bus utilization graph, with one row per window
+        console.println("");
+        console.printlnSys("Estimated bus utilization:");
+        double[] utilization = analysis.busUtilization();
+        for (int i = 0; i < utilization.length; i ++) {
+            int barLength = (int)Math.round(utilization[i] * GRAPH_WIDTH);
+            console.println(
+                String.format("%10s |", formatSecs(i * analysis.windowSecs())) +
+                "#".repeat(barLength) + " ".repeat(GRAPH_WIDTH - barLength) +
+                String.format("| %5.1f%%", utilization[i] * 100)
+            );
+        }
+        
+        // Device timelines, with one column per window. Each column shows the device's traffic in that window
+        // relative to its busiest window, so dropouts stand out as gaps
+        console.println("");
+        console.printlnSys("Device timelines (' ' no frames, '.' < 25%, ':' < 50%, '+' < 75%, '#' otherwise):");
+        for (DeviceTimeline device : analysis.devices()) {
+            int[] counts = device.windowFrameCounts();
+            int maxCount = Arrays.stream(counts).max().orElse(0);
+            
+            StringBuilder timeline = new StringBuilder();
+            for (int count : counts)
+                timeline.append(getActivityChar(count, maxCount));
+            
+            console.println(
+                padRight(device.describe(), DEVICE_NAME_WIDTH) + "|" + timeline + "| " +
+                device.frameCount() + " frames, " +
+                formatSecs(device.firstSeenSecs()) + " to " + formatSecs(device.lastSeenSecs()) +
+                ", max gap " + formatSecs(device.maxGapSecs())
+            );
+        }
+    }
+    
+    private static char getActivityChar (int count, int maxCount) {
+        if (count == 0) return ' ';
+        double fraction = (double)count / maxCount;
+        if (fraction < 0.25) return '.';
+        if (fraction < 0.5) return ':';
+        if (fraction < 0.75) return '+';
+        return '#';
+    }
+    
+    private static String formatSecs (double secs) {
+        return String.format("%.3fs", secs);
+    }
+    
+    private static String padRight (String str, int size) {
+        return str.length() >= size ? str.substring(0, size) : str + " ".repeat(size - str.length());
+    }
+    
+    /**
+     * Collects the traffic from a single device while a capture is read
+     */
+    private static class DeviceAccumulator {
+        
+        private final int deviceKey;
+        private long frameCount = 0;
+        private long firstTime = -1, lastTime = 0, maxGap = 0;
+        private int[] windowCounts = new int[DEFAULT_NUM_WINDOWS];
+        
+        public DeviceAccumulator (int deviceKey) {
+            this.deviceKey = deviceKey;
+        }
+        
+        public void addFrame (long time, int window) {
+            if (firstTime == -1) firstTime = time;
+            else maxGap = Math.max(maxGap, time - lastTime);
+            lastTime = time;
+            frameCount ++;
+            
+            if (window >= windowCounts.length)
+                windowCounts = Arrays.copyOf(windowCounts, Math.max(window + 1, windowCounts.length * 2));
+            windowCounts[window] ++;
+        }
+        
+        public DeviceTimeline toTimeline (int numWindows) {
+            return new DeviceTimeline(
+                deviceKey,
+                frameCount,
+                firstTime / 1e6,
+                lastTime / 1e6,
+                maxGap / 1e6,
+                Arrays.copyOf(windowCounts, numWindows)
+            );
+        }
+        
+    }
+    
+}
@@ -1,5 +1,6 @@
 package claw.rct.local;
 
+import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -27,6 +28,7 @@ public class LocalCommandInterpreter {
     
     private final LogDataStorage logDataStorage;
     private final LocalSystem system;
+    private final ReplayTransferClient replayTransferClient;
     
     /**
      * Because commands are sent to remote when the local command interpreter indicates that it does not recognize a command,
@@ -46,6 +48,7 @@ public class LocalCommandInterpreter {
         this.logDataStorage = logDataStorage;
         logDataStorage.addOnReceiveDataListener(this::receiveLogDataListener);
         this.system = system;
+        replayTransferClient = new ReplayTransferClient(system);
         addCommands();
     }
     
@@ -77,6 +80,13 @@ public class LocalCommandInterpreter {
         addCommand("config", "config [team number] [remote port]",
             "Configure the connection to the RCT server, setting the team number and server port.",
             this::configCommand);
+        
+        addCommand("candecode", "candecode [file] [window seconds]",
+            "Decodes a CAN capture file recorded with 'canscan capture' and copied to the driverstation, displaying the " +
+            "estimated bus utilization over time and a timeline of the traffic from each device. The capture is divided " +
+            "into windows of the given length, or about 60 windows if no length is given. This does not require a " +
+            "connection to the roboRIO.",
+            this::canDecodeCommand);
     }
     
     /**
@@ -89,6 +99,13 @@ public class LocalCommandInterpreter {
      * @throws BadCallException
      */
     public boolean processLine (ConsoleManager console, String line) throws RCTCommand.ParseException, BadCallException {
+        // Replay downloads and uploads are processed locally, but all other replay operations are sent to remote
+        RCTCommand command = new RCTCommand(line);
+        if (replayTransferClient.isTransferCommand(command)) {
+            replayTransferClient.processTransferCommand(console, new CommandReader(command));
+            return false;
+        }
+        
         try {
             commandInterpreter.processLine(console, line);
         } catch (CommandNotRecognizedException e) {
@@ -274,6 +291,27 @@ public class LocalCommandInterpreter {
         }
     }
     
+    private void canDecodeCommand (ConsoleManager console, CommandReader reader) throws BadCallException {
+        reader.allowNoOptions();
+        reader.allowNoFlags();
+        
+        File file = new File(reader.readArgString("file"));
+        Optional<Double> windowSecs = reader.hasNextArg() ? Optional.of(reader.readArgDouble("window seconds")) : Optional.empty();
+        reader.noMoreArgs();
+        
+        if (windowSecs.isPresent() && windowSecs.get() <= 0)
+            throw new BadCallException("The window length must be greater than zero.");
+        
+        try {
+            CANCaptureDecoder.print(console, windowSecs.isPresent()
+                ? CANCaptureDecoder.analyze(file, windowSecs.get())
+                : CANCaptureDecoder.analyze(file)
+            );
+        } catch (IOException e) {
+            console.printlnErr("Failed to decode the CAN capture: " + e.getMessage());
+        }
+    }
+    
     private void logCommand (ConsoleManager console, CommandReader reader) throws BadCallException {
         // Repeat the logging loop until the user pressed a key
         while (!console.hasInputReady()) {
@@ -211,13 +211,25 @@ public class LocalSystem implements ResponseMessageHandler {
         // then interpreter.processLine will return true
         if (!interpreter.processLine(console, line)) return;
         
+        executeRemoteCommand(console, line);
+    }
+    
+    /**
+     * Executes a command on remote, skipping the local command interpreter. This blocks until the remote
+     * command finishes executing.
+     * @param processConsole    The {@link ConsoleManager} the remote command should use for output and input.
+     * This does not need to be the console of the robot control terminal.
+     * @param line              The command line to execute.
+     * @throws IOException      If the command failed to send to remote
+     */
+    public void executeRemoteCommand (ConsoleManager processConsole, String line) throws IOException {
         // If a remote process handler is running, terminate it
         if (remoteProcessHandler != null)
             remoteProcessHandler.terminate();
         
         // Create a new remoteProcessHandler
         remoteProcessHandler = new RemoteProcessHandler(
-            console,
+            processConsole,
             this::remoteProcessHandlerSendInstructionMessage,
             RESPONSE_TIMEOUT_MILLIS,
             SEND_KEEPALIVE_INTERVAL_MILLIS,
@@ -0,0 +1,231 @@
+package claw.rct.local;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayDeque;
+import java.util.Base64;
+import java.util.Queue;
+
+import claw.rct.commands.CommandReader;
+import claw.rct.commands.RCTCommand;
+import claw.rct.commands.CommandProcessor.BadCallException;
+import claw.rct.network.low.ConsoleManager;
+import claw.replay.ReplayLibrary;
+
+/**
+ * Handles the driverstation side of the {@code replay download} and {@code replay upload} commands. All other
+ * {@code replay} operations are processed entirely by remote. A download runs {@code replay export} on remote and
+ * captures the streamed chunks, and an upload runs {@code replay import} on remote and feeds it chunks of a local file
+ * as input lines. Only one chunk is ever in flight, so a transfer never blocks other traffic on the connection.
+ */
+public class ReplayTransferClient {
+    
+    private final LocalSystem system;
+    
+    public ReplayTransferClient (LocalSystem system) {
+        this.system = system;
+    }
+    
+    /**
+     * Check whether a command should be processed by this transfer client instead of being sent to remote.
+     * @param command   The command to check.
+     * @return          {@code true} if the command is a replay download or upload.
+     */
+    public boolean isTransferCommand (RCTCommand command) {
+        if (!command.getCommand().equalsIgnoreCase("replay") || command.argsLen() == 0) return false;
+        String operation = command.getArg(0);
+        return operation.equals("download") || operation.equals("upload");
+    }
+    
+    /**
+     * Process a replay download or upload command.
+     * @param console   The console to display the transfer's progress on.
+     * @param reader    A {@link CommandReader} for the transfer command.
+     * @throws BadCallException If the command was malformed.
+     */
+    public void processTransferCommand (ConsoleManager console, CommandReader reader) throws BadCallException {
+        reader.allowNoOptions();
+        reader.allowNoFlags();
+        String operation = reader.readArgOneOf("operation", "Expected 'download' or 'upload'.", "download", "upload");
+        
+        try {
+            if (operation.equals("download")) {
+                String name = reader.readArgString("recording name");
+                File file = new File(reader.hasNextArg() ? reader.readArgString("file") : name + ".replay");
+                reader.noMoreArgs();
+                download(console, name, file);
+            } else {
+                File file = new File(reader.readArgString("file"));
+                String name = reader.hasNextArg() ? reader.readArgString("recording name") : getBaseName(file);
+                reader.noMoreArgs();
+                upload(console, file, name);
+            }
+        } catch (IOException e) {
+            console.printlnErr("The transfer failed: " + e.getMessage());
+        }
+    }
+    
+    private static String getBaseName (File file) {
+        String name = file.getName();
+        int extensionIndex = name.lastIndexOf('.');
+        return extensionIndex > 0 ? name.substring(0, extensionIndex) : name;
+    }
+    
+    private void download (ConsoleManager console, String name, File file) throws IOException {
+        TransferConsoleManager transferConsole = new TransferConsoleManager(console);
+        
+        // Acknowledge every chunk as it is received
+        transferConsole.inputLines.add(ReplayLibrary.TRANSFER_ACK);
+        transferConsole.acknowledgeChunks = true;
+        
+        system.executeRemoteCommand(transferConsole, "replay export " + ReplayLibrary.escapeTransferName(name));
+        
+        if (transferConsole.failed || transferConsole.received.size() == 0) {
+            console.printlnErr("Nothing was downloaded.");
+            return;
+        }
+        
+        Files.write(file.toPath(), transferConsole.received.toByteArray());
+        console.println("Downloaded " + transferConsole.received.size() + " bytes to " + file.getAbsolutePath());
+    }
+    
+    private void upload (ConsoleManager console, File file, String name) throws IOException {
+        byte[] data = Files.readAllBytes(file.toPath());
+        TransferConsoleManager transferConsole = new TransferConsoleManager(console);
+        
+        // Queue up each chunk of the file as an input line, followed by an empty line to end the transfer
+        Base64.Encoder encoder = Base64.getEncoder();
+        for (int offset = 0; offset < data.length; offset += ReplayLibrary.TRANSFER_CHUNK_SIZE) {
+            int length = Math.min(ReplayLibrary.TRANSFER_CHUNK_SIZE, data.length - offset);
+            byte[] chunk = new byte[length];
+            System.arraycopy(data, offset, chunk, 0, length);
+            transferConsole.inputLines.add(encoder.encodeToString(chunk));
+        }
+        transferConsole.inputLines.add(ReplayLibrary.TRANSFER_ACK);
+        
+        system.executeRemoteCommand(transferConsole, "replay import " + ReplayLibrary.escapeTransferName(name));
+    }
+    
+    /**
+     * A console which passes output through to the terminal's console, except for lines containing transfer chunks,
+     * and which supplies input lines from a queue instead of the user
+     */
+    private static class TransferConsoleManager implements ConsoleManager {
+        
+        private final ConsoleManager console;
+        private final Queue<String> inputLines = new ArrayDeque<>();
+        private final ByteArrayOutputStream received = new ByteArrayOutputStream();
+        private final StringBuilder partialLine = new StringBuilder();
+        
+        /**
+         * If true, the last input line will be repeated instead of removed from the queue
+         */
+        private boolean acknowledgeChunks = false;
+        private boolean failed = false;
+        private int chunksTransferred = 0;
+        
+        private TransferConsoleManager (ConsoleManager console) {
+            this.console = console;
+        }
+        
+        @Override
+        public void print (String msg) {
+            partialLine.append(msg);
+            
+            // Process every complete line
+            int newlineIndex = partialLine.indexOf("\n");
+            while (newlineIndex != -1) {
+                String line = partialLine.substring(0, newlineIndex);
+                partialLine.delete(0, newlineIndex + 1);
+                
+                if (line.startsWith(ReplayLibrary.TRANSFER_CHUNK_PREFIX)) {
+                    try {
+                        received.writeBytes(Base64.getDecoder().decode(line.substring(ReplayLibrary.TRANSFER_CHUNK_PREFIX.length())));
+                    } catch (IllegalArgumentException e) {
+                        failed = true;
+                    }
+                } else {
+                    console.println(line);
+                }
+                
+                newlineIndex = partialLine.indexOf("\n");
+            }
+        }
+        
+        @Override
+        public String readInputLine () {
+            // Cancel the transfer if the user pressed a key
+            if (failed || console.hasInputReady()) {
+                failed = true;
+                return ReplayLibrary.TRANSFER_CANCEL;
+            }
+            
+            // Update the progress line
+            if (chunksTransferred > 0) {
+                console.moveUp(1);
+                console.clearLine();
+            }
+            chunksTransferred ++;
+            console.printlnSys("Transferring chunk " + chunksTransferred + "... (press enter to cancel)");
+            console.flush();
+            
+            String line = acknowledgeChunks ? inputLines.peek() : inputLines.poll();
+            return line == null ? ReplayLibrary.TRANSFER_ACK : line;
+        }
+        
+        @Override
+        public void printErr (String msg) {
+            failed = true;
+            console.printErr(msg);
+        }
+        
+        @Override
+        public void printSys (String msg) {
+            console.printSys(msg);
+        }
+        
+        @Override
+        public boolean hasInputReady () {
+            return console.hasInputReady();
+        }
+        
+        @Override
+        public void clearWaitingInputLines () {
+            console.clearWaitingInputLines();
+        }
+        
+        @Override
+        public void moveUp (int lines) {
+            console.moveUp(lines);
+        }
+        
+        @Override
+        public void clearLine () {
+            console.clearLine();
+        }
+        
+        @Override
+        public void saveCursorPos () {
+            console.saveCursorPos();
+        }
+        
+        @Override
+        public void restoreCursorPos () {
+            console.restoreCursorPos();
+        }
+        
+        @Override
+        public void flush () {
+            console.flush();
+        }
+        
+        @Override
+        public void clear () {
+            console.clear();
+        }
+        
+    }
+    
+}
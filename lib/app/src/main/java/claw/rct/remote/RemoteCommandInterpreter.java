@@ -13,6 +13,7 @@ import claw.rct.commands.CommandReader;
 import claw.rct.commands.CommandProcessor.BadCallException;
 import claw.rct.commands.CommandProcessor.CommandFunction;
 import claw.rct.network.low.ConsoleManager;
+import claw.replay.ReplayLibrary;
 import claw.subsystems.CLAWSubsystem;
 
 /**
@@ -34,6 +35,7 @@ public class RemoteCommandInterpreter extends CommandLineInterpreter {
         addCommandProcessor(DIOReadCommand.DIO_RAW_COMMAND_PROCESSOR);
         addCommandProcessor(CANScanner.CAN_SCAN_COMMAND_PROCESSOR);
         addCommandProcessor(RobotErrorLog.ERROR_LOG_COMMAND_PROCESSOR);
+        addCommandProcessor(ReplayLibrary.REPLAY_COMMAND_PROCESSOR);
     }
     
     private void addCommand (String command, String usage, String helpDescription, CommandFunction function) {
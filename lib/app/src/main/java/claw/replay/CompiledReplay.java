@@ -0,0 +1,232 @@
+package claw.replay;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import claw.replay.timed.TimedControlAction;
+import edu.wpi.first.wpilibj.RobotController;
+import edu.wpi.first.wpilibj2.command.Command;
+import edu.wpi.first.wpilibj2.command.Subsystem;
+
+/**
+ * A flattened schedule of every {@link TimedControlAction} in a tree of {@link RobotActionSequence}s and
+ * {@link RobotActionsParallel}s. Because every timed action has a known duration, the start and end time of
+ * each action can be computed once, ahead of time, and the whole tree can be replayed by a single command instead
+ * of a nested set of command groups. Subsystem requirements are validated once, when the schedule is compiled.
+ */
+public class CompiledReplay {
+    
+    private final TimedControlAction<?>[] actions;
+    private final long[] startMicros, endMicros;
+    private final Set<Subsystem> requirements;
+    
+    /**
+     * Compile a tree of {@link RobotActionRecord}s into a flat schedule.
+     * @param root  The root of the tree to compile.
+     * @throws IllegalArgumentException If the tree contains an action which cannot be compiled (see
+     * {@link #canCompile(RobotActionRecord)}), or if two actions which run at the same time require the same subsystem.
+     */
+    public CompiledReplay (RobotActionRecord root) throws IllegalArgumentException {
+        ArrayList<ScheduleEntry> entries = new ArrayList<>();
+        addToSchedule(root, 0, entries);
+        
+        // Sort the entries by start time
+        entries.sort((a, b) -> Long.compare(a.startMicros, b.startMicros));
+        
+        actions = new TimedControlAction<?>[entries.size()];
+        startMicros = new long[entries.size()];
+        endMicros = new long[entries.size()];
+        
+        for (int i = 0; i < actions.length; i ++) {
+            ScheduleEntry entry = entries.get(i);
+            actions[i] = entry.action;
+            startMicros[i] = entry.startMicros;
+            endMicros[i] = entry.endMicros;
+        }
+        
+        requirements = Collections.unmodifiableSet(validateRequirements());
+    }
+    
+    /**
+     * Check whether a {@link RobotActionRecord} can be compiled into a {@link CompiledReplay}. This is only possible
+     * if every action in the tree is a {@link RobotActionSequence}, a {@link RobotActionsParallel}, or a
+     * {@link TimedControlAction}.
+     * @param record    The root of the tree of actions.
+     * @return          Whether or not the tree can be compiled.
+     */
+    public static boolean canCompile (RobotActionRecord record) {
+        if (record instanceof TimedControlAction) return true;
+        
+        RobotActionRecord[] children;
+        if (record instanceof RobotActionSequence) children = ((RobotActionSequence)record).actions;
+        else if (record instanceof RobotActionsParallel) children = ((RobotActionsParallel)record).actions;
+        else return false;
+        
+        for (RobotActionRecord child : children)
+            if (!canCompile(child)) return false;
+        return true;
+    }
+    
+    private static record ScheduleEntry (TimedControlAction<?> action, long startMicros, long endMicros) { }
+    
+    /**
+     * Add an action and all its children to the schedule, returning the time at which the action ends
+     */
+    private static long addToSchedule (RobotActionRecord record, long startTime, ArrayList<ScheduleEntry> entries) {
+        if (record instanceof TimedControlAction) {
+            
+            TimedControlAction<?> action = (TimedControlAction<?>)record;
+            long endTime = startTime + action.getDurationMicros();
+            entries.add(new ScheduleEntry(action, startTime, endTime));
+            return endTime;
+            
+        } else if (record instanceof RobotActionSequence) {
+            
+            // Each action in a sequence starts once the last one ends
+            long endTime = startTime;
+            for (RobotActionRecord child : ((RobotActionSequence)record).actions)
+                endTime = addToSchedule(child, endTime, entries);
+            return endTime;
+            
+        } else if (record instanceof RobotActionsParallel) {
+            
+            // All actions in a parallel group start together, and the group ends once the last action ends
+            long endTime = startTime;
+            for (RobotActionRecord child : ((RobotActionsParallel)record).actions)
+                endTime = Math.max(endTime, addToSchedule(child, startTime, entries));
+            return endTime;
+            
+        } else {
+            throw new IllegalArgumentException(
+                "Cannot compile a replay containing a " + record.getClass().getSimpleName() +
+                " (only TimedControlActions, RobotActionSequences and RobotActionsParallels are supported)"
+            );
+        }
+    }
+    
+    /**
+     * Ensure no two actions which run at the same time share a subsystem, and get the set of all required subsystems
+     */
+    private Set<Subsystem> validateRequirements () {
+        HashSet<Subsystem> allRequirements = new HashSet<>();
+        
+        for (int i = 0; i < actions.length; i ++) {
+            Set<Subsystem> requirementsI = actions[i].getSubsystems();
+            allRequirements.addAll(requirementsI);
+            
+            // The entries are sorted by start time, so only later entries which start before this one ends can overlap
+            for (int j = i + 1; j < actions.length && startMicros[j] < endMicros[i]; j ++) {
+                for (Subsystem subsystem : actions[j].getSubsystems()) {
+                    if (requirementsI.contains(subsystem)) {
+                        throw new IllegalArgumentException(
+                            "Actions which replay at the same time cannot require the same subsystem (" +
+                            subsystem.getName() + ")"
+                        );
+                    }
+                }
+            }
+        }
+        
+        return allRequirements;
+    }
+    
+    /**
+     * Get the total duration of the compiled replay.
+     * @return  The duration, in seconds.
+     */
+    public double getDurationSecs () {
+        long duration = 0;
+        for (long end : endMicros)
+            duration = Math.max(duration, end);
+        return duration / 1e6;
+    }
+    
+    /**
+     * Get the number of {@link TimedControlAction}s in the compiled schedule.
+     * @return  The number of scheduled actions.
+     */
+    public int getNumActions () {
+        return actions.length;
+    }
+    
+    /**
+     * Get a single command which replays every action in the schedule.
+     * @return  The replay command.
+     */
+    public Command toReplayCommand () {
+        return new CompiledReplayCommand();
+    }
+    
+    private class CompiledReplayCommand implements Command {
+        
+        /**
+         * Each action is driven through its own playback, so fidelity tracking and logging work exactly as they do
+         * when the action is replayed on its own
+         */
+        private final TimedControlAction<?>.Playback[] playbacks = new TimedControlAction<?>.Playback[actions.length];
+        
+        // Because entries are sorted by start time, every entry before nextToStart has started
+        private final boolean[] finished = new boolean[actions.length];
+        private int nextToStart, numFinished;
+        private long initializeTime;
+        
+        public CompiledReplayCommand () {
+            for (int i = 0; i < actions.length; i ++)
+                playbacks[i] = actions[i].createPlayback();
+        }
+        
+        @Override
+        public void initialize () {
+            for (int i = 0; i < finished.length; i ++)
+                finished[i] = false;
+            nextToStart = 0;
+            numFinished = 0;
+            initializeTime = RobotController.getFPGATime();
+        }
+        
+        @Override
+        public void execute () {
+            long cycleTime = RobotController.getFPGATime();
+            long time = cycleTime - initializeTime;
+            
+            // Start every action whose start time has been reached
+            while (nextToStart < actions.length && startMicros[nextToStart] <= time) {
+                playbacks[nextToStart].start();
+                nextToStart ++;
+            }
+            
+            // Update all started actions which have not yet finished
+            for (int i = 0; i < nextToStart; i ++) {
+                if (finished[i]) continue;
+                
+                if (time > endMicros[i]) {
+                    playbacks[i].finish(false);
+                    finished[i] = true;
+                    numFinished ++;
+                } else {
+                    playbacks[i].step(time - startMicros[i], cycleTime);
+                }
+            }
+        }
+        
+        @Override
+        public void end (boolean interrupted) {
+            for (int i = 0; i < nextToStart; i ++)
+                if (!finished[i]) playbacks[i].finish(interrupted);
+        }
+        
+        @Override
+        public Set<Subsystem> getRequirements () {
+            return requirements;
+        }
+        
+        @Override
+        public boolean isFinished () {
+            return numFinished == actions.length;
+        }
+        
+    }
+    
+}
@@ -0,0 +1,123 @@
+package claw.replay;
+
+import java.util.Arrays;
+
+import claw.math.input.ControllerSnapshot;
+import claw.math.input.RaptorsXboxController;
+
+/**
+ * A {@link RobotActionRecorder} which records the raw input of a {@link RaptorsXboxController} into a
+ * {@link ControllerInputRecording}. Call {@link #recordFrame()} once per loop (for example, in {@code robotPeriodic})
+ * while recording. Frames are appended to primitive buffers, so recording does not allocate except when the buffers
+ * need to grow.
+ */
+public class ControllerInputRecorder extends RobotActionRecorder {
+    
+    private static final int INITIAL_CAPACITY = 50 * 15;
+    
+    private final RaptorsXboxController controller;
+    
+    private long startTime;
+    private int numFrames, numAxes, numButtons;
+    
+    private long[] times = new long[INITIAL_CAPACITY];
+    private short[] axes = new short[INITIAL_CAPACITY * ControllerSnapshot.MAX_AXES];
+    private int[] buttons = new int[INITIAL_CAPACITY];
+    private short[] povs = new short[INITIAL_CAPACITY];
+    
+    /**
+     * Create a new {@link ControllerInputRecorder} which records the input of a controller.
+     * @param controller    The controller to record.
+     */
+    public ControllerInputRecorder (RaptorsXboxController controller) {
+        this.controller = controller;
+    }
+    
+    /**
+     * Record the current state of the controller as a new frame, if recording is enabled. If the controller is in
+     * snapshot mode, its snapshot for this loop is recorded directly. Otherwise, the snapshot is updated first.
+     */
+    public void recordFrame () {
+        if (!isRecording()) return;
+        
+        if (!controller.isSnapshotMode())
+            controller.updateSnapshot();
+        
+        ControllerSnapshot snapshot = controller.getSnapshot();
+        if (numFrames == 0) startTime = snapshot.timeMicros;
+        if (numFrames == times.length) grow();
+        
+        // Axes are stored at a fixed stride of MAX_AXES until the recording is built
+        int offset = numFrames * ControllerSnapshot.MAX_AXES;
+        for (int i = 0; i < ControllerSnapshot.MAX_AXES; i ++)
+            axes[offset + i] = i < snapshot.numAxes ? ControllerInputRecording.quantizeAxis(snapshot.axes[i]) : 0;
+        
+        times[numFrames] = snapshot.timeMicros - startTime;
+        buttons[numFrames] = snapshot.buttons;
+        povs[numFrames] = (short)snapshot.pov;
+        
+        numAxes = Math.max(numAxes, snapshot.numAxes);
+        numButtons = Math.max(numButtons, snapshot.numButtons);
+        numFrames ++;
+    }
+    
+    /**
+     * Get the number of frames recorded so far.
+     * @return  The number of recorded frames.
+     */
+    public int getNumFrames () {
+        return numFrames;
+    }
+    
+    private void grow () {
+        int capacity = times.length * 2;
+        times = Arrays.copyOf(times, capacity);
+        axes = Arrays.copyOf(axes, capacity * ControllerSnapshot.MAX_AXES);
+        buttons = Arrays.copyOf(buttons, capacity);
+        povs = Arrays.copyOf(povs, capacity);
+    }
+    
+    @Override
+    protected void resetRecordingState () {
+        numFrames = 0;
+        numAxes = 0;
+        numButtons = 0;
+    }
+    
+    /**
+     * Get the recorded input as a {@link ControllerInputRecording}.
+     * @throws IllegalStateException    If no frames have been recorded.
+     */
+    @Override
+    protected ControllerInputRecording getRecordingState () {
+        if (numFrames == 0)
+            throw new IllegalStateException("No controller input has been recorded");
+        
+        // Pack the axes down to the number of axes the controller actually had
+        short[] packedAxes = new short[numFrames * numAxes];
+        for (int f = 0; f < numFrames; f ++)
+            System.arraycopy(axes, f * ControllerSnapshot.MAX_AXES, packedAxes, f * numAxes, numAxes);
+        
+        return new ControllerInputRecording(
+            controller.getPort(),
+            numAxes,
+            numButtons,
+            numFrames,
+            Arrays.copyOf(times, numFrames),
+            packedAxes,
+            Arrays.copyOf(buttons, numFrames),
+            Arrays.copyOf(povs, numFrames)
+        );
+    }
+    
+    /**
+     * Stop recording and get the recorded input.
+     * @return  The {@link ControllerInputRecording}.
+     * @throws IllegalStateException    If no frames have been recorded.
+     */
+    public ControllerInputRecording finishRecording () {
+        stopRecording();
+        return getRecordingState();
+    }
+    
+}
@@ -0,0 +1,343 @@
+package claw.replay;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.util.Set;
+
+import claw.math.input.ControllerSnapshot;
+import claw.math.input.RaptorsXboxController;
+import edu.wpi.first.wpilibj.RobotController;
+import edu.wpi.first.wpilibj2.command.Command;
+import edu.wpi.first.wpilibj2.command.Subsystem;
+
+/**
+ * A recording of the raw input (every axis, button, and the POV) of a controller, captured once per loop by a
+ * {@link ControllerInputRecorder}. Replaying the recording feeds the recorded input back through a
+ * {@link RaptorsXboxController} (see {@link RaptorsXboxController#setInputOverride(java.util.function.Consumer)}),
+ * so the robot's ordinary teleop commands drive it exactly as they did while the recording was made.
+ * <br></br>
+ * Frames are kept in primitive arrays, and the recording is serialized as a compact binary stream in which each
+ * frame only stores the values which changed since the previous frame (see {@link #writeTo(OutputStream)}).
+ * Axis values are quantized to 16 bits.
+ */
+public class ControllerInputRecording implements RobotActionRecord {
+    
+    private static final long serialVersionUID = 1L;
+    
+    private static final int MAGIC = 0x434C4849;
+    private static final int FORMAT_VERSION = 1;
+    
+    private static final int FLAG_BUTTONS_CHANGED = 1, FLAG_POV_CHANGED = 2;
+    
+    private static final double AXIS_SCALE = Short.MAX_VALUE;
+    
+    private transient int port, numAxes, numButtons, numFrames;
+    
+    /**
+     * The time of each frame since the start of the recording, in microseconds
+     */
+    private transient long[] times;
+    
+    /**
+     * The quantized axis values, where axis {@code a} of frame {@code f} is at {@code f * numAxes + a}
+     */
+    private transient short[] axes;
+    
+    private transient int[] buttons;
+    private transient short[] povs;
+    
+    ControllerInputRecording (int port, int numAxes, int numButtons, int numFrames, long[] times, short[] axes, int[] buttons, short[] povs) {
+        if (numFrames == 0)
+            throw new IllegalArgumentException("A ControllerInputRecording must have at least one frame");
+        
+        this.port = port;
+        this.numAxes = numAxes;
+        this.numButtons = numButtons;
+        this.numFrames = numFrames;
+        this.times = times;
+        this.axes = axes;
+        this.buttons = buttons;
+        this.povs = povs;
+    }
+    
+    static short quantizeAxis (double value) {
+        return (short)Math.round(Math.max(-1, Math.min(1, value)) * AXIS_SCALE);
+    }
+    
+    /**
+     * Get the Driver Station port of the controller this recording was made from.
+     * @return  The controller's port index.
+     */
+    public int getPort () {
+        return port;
+    }
+    
+    /**
+     * Get the number of frames (loops) in the recording.
+     * @return  The number of frames.
+     */
+    public int getNumFrames () {
+        return numFrames;
+    }
+    
+    /**
+     * Get the duration of the recording, from the first frame to the last.
+     * @return  The duration of the recording, in seconds.
+     */
+    public double getDurationSecs () {
+        return times[numFrames - 1] / 1e6;
+    }
+    
+    /**
+     * Write a single frame of the recording into a {@link ControllerSnapshot}.
+     * @param frame     The index of the frame.
+     * @param output    The snapshot to write to. Its timestamp is not modified.
+     */
+    public void getFrame (int frame, ControllerSnapshot output) {
+        output.numAxes = numAxes;
+        int offset = frame * numAxes;
+        for (int i = 0; i < numAxes; i ++)
+            output.axes[i] = axes[offset + i] / AXIS_SCALE;
+        
+        output.numButtons = numButtons;
+        output.buttons = buttons[frame];
+        output.pov = povs[frame];
+    }
+    
+    /**
+     * Get a command which replays this recording through the {@link RaptorsXboxController} on the port the recording
+     * was made from.
+     * @throws IllegalStateException    If no {@code RaptorsXboxController} has been created on the recording's port.
+     */
+    @Override
+    public Command toReplayCommand () {
+        return toReplayCommand(
+            RaptorsXboxController.getControllerOnPort(port).orElseThrow(() -> new IllegalStateException(
+                "No RaptorsXboxController exists on port " + port + " to replay controller input through"
+            ))
+        );
+    }
+    
+    /**
+     * Get a command which replays this recording through a given controller. While the command runs, every getter of
+     * the controller reads the recorded input instead of the Driver Station. The command requires no subsystems, so
+     * the commands which read from the controller keep running alongside it.
+     * @param controller    The controller to replay the input through.
+     * @return              The replay command.
+     */
+    public Command toReplayCommand (RaptorsXboxController controller) {
+        return new ControllerReplayCommand(controller);
+    }
+    
+    /**
+     * Write this recording to a stream in the compact binary format. The format is a header (a magic number, the
+     * format version, the port, the number of axes and buttons, and the number of frames) followed by each frame: the
+     * time since the previous frame in microseconds, a bitmask of the axes which changed, a byte of flags for whether
+     * the buttons or POV changed, and then only the changed values.
+     * @param out           The stream to write to.
+     * @throws IOException  If the stream could not be written to.
+     */
+    public void writeTo (OutputStream out) throws IOException {
+        DataOutputStream data = new DataOutputStream(out);
+        data.writeInt(MAGIC);
+        data.writeByte(FORMAT_VERSION);
+        data.writeByte(port);
+        data.writeByte(numAxes);
+        data.writeByte(numButtons);
+        data.writeInt(numFrames);
+        
+        for (int f = 0; f < numFrames; f ++) {
+            // The first frame is compared against a neutral controller
+            int axisMask = 0;
+            for (int i = 0; i < numAxes; i ++) {
+                short previous = f == 0 ? 0 : axes[(f - 1) * numAxes + i];
+                if (axes[f * numAxes + i] != previous)
+                    axisMask |= 1 << i;
+            }
+            
+            int flags = 0;
+            if (buttons[f] != (f == 0 ? 0 : buttons[f - 1]))
+                flags |= FLAG_BUTTONS_CHANGED;
+            if (povs[f] != (f == 0 ? -1 : povs[f - 1]))
+                flags |= FLAG_POV_CHANGED;
+            
+            data.writeInt((int)(times[f] - (f == 0 ? 0 : times[f - 1])));
+            data.writeShort(axisMask);
+            data.writeByte(flags);
+            
+            for (int i = 0; i < numAxes; i ++)
+                if ((axisMask & (1 << i)) != 0)
+                    data.writeShort(axes[f * numAxes + i]);
+            
+            if ((flags & FLAG_BUTTONS_CHANGED) != 0) data.writeInt(buttons[f]);
+            if ((flags & FLAG_POV_CHANGED) != 0) data.writeShort(povs[f]);
+        }
+        
+        data.flush();
+    }
+    
+    /**
+     * Read a recording from a stream in the format written by {@link #writeTo(OutputStream)}.
+     * @param in            The stream to read from.
+     * @return              The recording.
+     * @throws IOException  If the stream could not be read from or does not contain a valid recording.
+     */
+    public static ControllerInputRecording readFrom (InputStream in) throws IOException {
+        DataInputStream data = new DataInputStream(in);
+        if (data.readInt() != MAGIC)
+            throw new IOException("The stream does not contain a controller input recording");
+        
+        int version = data.readUnsignedByte();
+        if (version != FORMAT_VERSION)
+            throw new IOException("Unsupported controller input recording format version " + version);
+        
+        int port = data.readUnsignedByte();
+        int numAxes = data.readUnsignedByte();
+        int numButtons = data.readUnsignedByte();
+        int numFrames = data.readInt();
+        
+        if (numAxes > ControllerSnapshot.MAX_AXES || numButtons > ControllerSnapshot.MAX_BUTTONS || numFrames <= 0)
+            throw new IOException("Malformed controller input recording header");
+        
+        long[] times = new long[numFrames];
+        short[] axes = new short[numFrames * numAxes];
+        int[] buttons = new int[numFrames];
+        short[] povs = new short[numFrames];
+        
+        long time = 0;
+        int currentButtons = 0;
+        short currentPov = -1;
+        
+        for (int f = 0; f < numFrames; f ++) {
+            time += data.readInt() & 0xFFFFFFFFL;
+            times[f] = time;
+            
+            int axisMask = data.readUnsignedShort();
+            int flags = data.readUnsignedByte();
+            
+            // Unchanged axes carry over from the previous frame
+            for (int i = 0; i < numAxes; i ++) {
+                int index = f * numAxes + i;
+                if ((axisMask & (1 << i)) != 0) axes[index] = data.readShort();
+                else if (f > 0) axes[index] = axes[index - numAxes];
+            }
+            
+            if ((flags & FLAG_BUTTONS_CHANGED) != 0) currentButtons = data.readInt();
+            if ((flags & FLAG_POV_CHANGED) != 0) currentPov = data.readShort();
+            buttons[f] = currentButtons;
+            povs[f] = currentPov;
+        }
+        
+        return new ControllerInputRecording(port, numAxes, numButtons, numFrames, times, axes, buttons, povs);
+    }
+    
+    /**
+     * Encode this recording in the compact binary format.
+     * @return  The encoded recording.
+     * @see #writeTo(OutputStream)
+     */
+    public byte[] toBytes () {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            writeTo(bytes);
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            // A ByteArrayOutputStream never throws
+            throw new RuntimeException(e);
+        }
+    }
+    
+    /**
+     * Decode a recording from the compact binary format.
+     * @param bytes         The encoded recording.
+     * @return              The recording.
+     * @throws IOException  If the bytes do not contain a valid recording.
+     * @see #readFrom(InputStream)
+     */
+    public static ControllerInputRecording fromBytes (byte[] bytes) throws IOException {
+        return readFrom(new ByteArrayInputStream(bytes));
+    }
+    
+    private void writeObject (ObjectOutputStream out) throws IOException {
+        out.defaultWriteObject();
+        byte[] bytes = toBytes();
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+    
+    private void readObject (ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        
+        ControllerInputRecording decoded = fromBytes(bytes);
+        port = decoded.port;
+        numAxes = decoded.numAxes;
+        numButtons = decoded.numButtons;
+        numFrames = decoded.numFrames;
+        times = decoded.times;
+        axes = decoded.axes;
+        buttons = decoded.buttons;
+        povs = decoded.povs;
+    }
+    
+    private class ControllerReplayCommand implements Command {
+        
+        private final RaptorsXboxController controller;
+        
+        private long initializeTime, playbackTime;
+        private int frame;
+        
+        public ControllerReplayCommand (RaptorsXboxController controller) {
+            this.controller = controller;
+        }
+        
+        /**
+         * Fill the controller's snapshot with the frame at the current playback time. This is called by the controller
+         * at the start of each scheduler run.
+         */
+        private void fillSnapshot (ControllerSnapshot snapshot) {
+            long now = RobotController.getFPGATime();
+            playbackTime = now - initializeTime;
+            
+            // Playback only moves forward, so the current frame can be found by walking from the last one
+            while (frame + 1 < numFrames && times[frame + 1] <= playbackTime)
+                frame ++;
+            
+            getFrame(frame, snapshot);
+            snapshot.timeMicros = now;
+        }
+        
+        @Override
+        public void initialize () {
+            initializeTime = RobotController.getFPGATime();
+            playbackTime = 0;
+            frame = 0;
+            controller.setInputOverride(this::fillSnapshot);
+        }
+        
+        @Override
+        public void end (boolean interrupted) {
+            controller.setInputOverride(null);
+        }
+        
+        @Override
+        public boolean isFinished () {
+            return playbackTime >= times[numFrames - 1];
+        }
+        
+        @Override
+        public Set<Subsystem> getRequirements () {
+            return Set.of();
+        }
+        
+    }
+    
+}
@@ -0,0 +1,376 @@
+package claw.replay;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Optional;
+
+import claw.Setting;
+import claw.rct.commands.CommandProcessor;
+import claw.rct.commands.CommandReader;
+import claw.rct.commands.CommandProcessor.BadCallException;
+import claw.rct.network.low.ConsoleManager;
+import claw.replay.timed.TimedControlAction;
+
+/**
+ * The library of {@link RobotActionRecord}s saved to the roboRIO, which can be managed through the Robot Control Terminal
+ * with the {@code replay} command.
+ */
+public class ReplayLibrary {
+    
+    private static final Setting<HashMap<String, RobotActionRecord>>
+        REPLAYABLE_RECORDINGS = new Setting<>("claw.replayable_recordings", HashMap::new);
+    
+    /**
+     * The number of bytes of a serialized recording sent in each chunk during a transfer.
+     */
+    public static final int TRANSFER_CHUNK_SIZE = 4096;
+    
+    /**
+     * The prefix of each console line containing a chunk of a recording being exported.
+     */
+    public static final String TRANSFER_CHUNK_PREFIX = "#chunk:";
+    
+    /**
+     * The input line which is sent to acknowledge a chunk of a transfer and request the next one.
+     */
+    public static final String TRANSFER_ACK = "";
+    
+    /**
+     * The input line which can be sent in place of {@link #TRANSFER_ACK} to cancel a transfer.
+     */
+    public static final String TRANSFER_CANCEL = "cancel";
+    
+    public static final CommandProcessor REPLAY_COMMAND_PROCESSOR = new CommandProcessor(
+        "replay",
+        "replay [ list | inspect | rename | delete | download | upload ]",
+        "Use 'replay list' to list all saved recordings, and 'replay inspect NAME' to view the contents of a recording. " +
+        "'replay rename NAME NEWNAME' and 'replay delete NAME' modify the library of recordings. 'replay download NAME [FILE]' " +
+        "saves a recording to the driverstation, and 'replay upload FILE [NAME]' saves a recording from the driverstation " +
+        "to the roboRIO. Recordings are streamed in chunks during a download or upload.",
+        ReplayLibrary::replayCommand
+    );
+    
+    private static final Object RECORDINGS_LOCK = new Object();
+    
+    /**
+     * Save a recording to the library under the given name, overwriting any recording which already has that name.
+     * @param name      The name of the recording.
+     * @param recording The {@link RobotActionRecord} to save.
+     */
+    public static void saveRecording (String name, RobotActionRecord recording) {
+        synchronized (RECORDINGS_LOCK) {
+            REPLAYABLE_RECORDINGS.get().put(name, recording);
+            REPLAYABLE_RECORDINGS.save();
+        }
+    }
+    
+    /**
+     * Get a recording from the library.
+     * @param name  The name of the recording.
+     * @return      The {@link RobotActionRecord}, if one with the given name exists.
+     */
+    public static Optional<RobotActionRecord> getRecording (String name) {
+        synchronized (RECORDINGS_LOCK) {
+            return Optional.ofNullable(REPLAYABLE_RECORDINGS.get().get(name));
+        }
+    }
+    
+    /**
+     * Get the names of all recordings in the library, sorted alphabetically.
+     * @return  A list of recording names.
+     */
+    public static List<String> getRecordingNames () {
+        List<String> names;
+        synchronized (RECORDINGS_LOCK) {
+            names = new ArrayList<>(REPLAYABLE_RECORDINGS.get().keySet());
+        }
+        
+        names.sort(String::compareTo);
+        return names;
+    }
+    
+    /**
+     * Rename a recording in the library.
+     * @param name      The current name of the recording.
+     * @param newName   The new name for the recording.
+     * @return          {@code true} if the recording was renamed, or {@code false} if there was no recording named
+     * {@code name} or there is already a recording named {@code newName}.
+     */
+    public static boolean renameRecording (String name, String newName) {
+        synchronized (RECORDINGS_LOCK) {
+            HashMap<String, RobotActionRecord> recordings = REPLAYABLE_RECORDINGS.get();
+            if (!recordings.containsKey(name) || recordings.containsKey(newName)) return false;
+            
+            recordings.put(newName, recordings.remove(name));
+            REPLAYABLE_RECORDINGS.save();
+            return true;
+        }
+    }
+    
+    /**
+     * Delete a recording from the library.
+     * @param name  The name of the recording to delete.
+     * @return      {@code true} if the recording existed and was deleted.
+     */
+    public static boolean deleteRecording (String name) {
+        synchronized (RECORDINGS_LOCK) {
+            if (REPLAYABLE_RECORDINGS.get().remove(name) == null) return false;
+            REPLAYABLE_RECORDINGS.save();
+            return true;
+        }
+    }
+    
+    private static byte[] serialize (RobotActionRecord recording) throws IOException {
+        ByteArrayOutputStream bytesOut = new ByteArrayOutputStream();
+        try (ObjectOutputStream objOut = new ObjectOutputStream(bytesOut)) {
+            objOut.writeObject(recording);
+        }
+        return bytesOut.toByteArray();
+    }
+    
+    private static RobotActionRecord deserialize (byte[] data) throws IOException, ClassNotFoundException {
+        try (ObjectInputStream objIn = new ObjectInputStream(new ByteArrayInputStream(data))) {
+            return (RobotActionRecord)objIn.readObject();
+        }
+    }
+    
+    // Command
+    
+    private static void replayCommand (ConsoleManager console, CommandReader reader) throws BadCallException {
+        reader.allowNoOptions();
+        reader.allowNoFlags();
+        
+        // The export and import operations are not listed in the usage, as they are used internally by the
+        // driverstation to perform downloads and uploads
+        String operation = reader.readArgOneOf(
+            "operation",
+            "Expected 'list', 'inspect', 'rename', 'delete', 'download', or 'upload'.",
+            "list", "inspect", "rename", "delete", "export", "import"
+        );
+        
+        if (operation.equals("list")) {
+            
+            reader.noMoreArgs();
+            
+            List<String> names = getRecordingNames();
+            if (names.size() == 0)
+                console.println("There are no saved recordings.");
+            names.forEach(console::println);
+            
+        } else if (operation.equals("import")) {
+            
+            String name = unescapeTransferName(reader.readArgString("recording name"));
+            reader.noMoreArgs();
+            importRecording(console, name);
+            
+        } else if (operation.equals("export")) {
+            
+            // The export operation is only used by the driverstation, which escapes the recording name
+            String name = unescapeTransferName(reader.readArgString("recording name"));
+            reader.noMoreArgs();
+            exportRecording(console, name);
+            
+        } else {
+            
+            // Operations which are performed on an existing recording
+            String name = reader.readArgOneOf("recording name", "Expected the name of a saved recording.", getRecordingNames());
+            
+            if (operation.equals("inspect")) {
+                
+                reader.noMoreArgs();
+                inspectRecording(console, name);
+                
+            } else if (operation.equals("rename")) {
+                
+                String newName = reader.readArgString("new name");
+                reader.noMoreArgs();
+                
+                if (renameRecording(name, newName))
+                    console.println("Renamed '"+name+"' to '"+newName+"'.");
+                else if (getRecording(name).isEmpty())
+                    console.printlnErr("The recording '"+name+"' no longer exists.");
+                else
+                    console.printlnErr("A recording named '"+newName+"' already exists.");
+                
+            } else if (operation.equals("delete")) {
+                
+                reader.noMoreArgs();
+                
+                if (deleteRecording(name))
+                    console.println("Deleted '"+name+"'.");
+                else
+                    console.printlnErr("The recording '"+name+"' no longer exists.");
+                
+            }
+            
+        }
+    }
+    
+    /**
+     * Escape a recording name so it can be passed as a single argument of the internal {@code replay export} and
+     * {@code replay import} operations. Command arguments are split on spaces and cannot start with a hyphen, so every
+     * character other than an ASCII letter, digit, underscore, or period is replaced by the {@code %XX} escape of each
+     * of its UTF-8 bytes.
+     * @param name  The recording name.
+     * @return      The escaped name.
+     */
+    public static String escapeTransferName (String name) {
+        StringBuilder escaped = new StringBuilder();
+        for (byte b : name.getBytes(StandardCharsets.UTF_8)) {
+            char c = (char)(b & 0xFF);
+            if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '_' || c == '.')
+                escaped.append(c);
+            else
+                escaped.append(String.format("%%%02X", b & 0xFF));
+        }
+        
+        return escaped.toString();
+    }
+    
+    private static String unescapeTransferName (String escaped) throws BadCallException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        int i = 0;
+        while (i < escaped.length()) {
+            int codePoint = escaped.codePointAt(i);
+            if (codePoint != '%') {
+                bytes.writeBytes(Character.toString(codePoint).getBytes(StandardCharsets.UTF_8));
+                i += Character.charCount(codePoint);
+                continue;
+            }
+            
+            try {
+                bytes.write(Integer.parseInt(escaped.substring(i + 1, i + 3), 16));
+            } catch (IndexOutOfBoundsException | NumberFormatException e) {
+                throw new BadCallException("Malformed escape sequence in the recording name '" + escaped + "'.");
+            }
+            
+            i += 3;
+        }
+        
+        return new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+    }
+    
+    private static void inspectRecording (ConsoleManager console, String name) {
+        Optional<RobotActionRecord> recording = getRecording(name);
+        if (recording.isEmpty()) {
+            console.printlnErr("The recording '"+name+"' no longer exists.");
+            return;
+        }
+        
+        try {
+            console.println(name + " (" + serialize(recording.get()).length + " bytes)");
+        } catch (IOException e) {
+            console.printlnErr(name + " could not be serialized: " + e.getMessage());
+        }
+        
+        printRecordTree(console, recording.get(), 1);
+    }
+    
+    /**
+     * Print the structure of a recording, one line per action
+     */
+    private static void printRecordTree (ConsoleManager console, RobotActionRecord record, int depth) {
+        String indent = "  ".repeat(depth);
+        
+        if (record instanceof RobotActionSequence) {
+            RobotActionRecord[] actions = ((RobotActionSequence)record).actions;
+            console.println(indent + "Sequence of " + actions.length + " action(s)");
+            for (RobotActionRecord action : actions)
+                printRecordTree(console, action, depth + 1);
+        } else if (record instanceof RobotActionsParallel) {
+            RobotActionRecord[] actions = ((RobotActionsParallel)record).actions;
+            console.println(indent + "Parallel group of " + actions.length + " action(s)");
+            for (RobotActionRecord action : actions)
+                printRecordTree(console, action, depth + 1);
+        } else if (record instanceof TimedControlAction) {
+            TimedControlAction<?> action = (TimedControlAction<?>)record;
+            console.println(
+                indent + record.getClass().getSimpleName() + ": " +
+                action.getNumDataPoints() + " data points over " + action.getDurationSecs() + " seconds"
+            );
+        } else {
+            console.println(indent + record.getClass().getSimpleName());
+        }
+    }
+    
+    /**
+     * Stream a serialized recording to the console in chunks, waiting for each chunk to be acknowledged
+     * with an input line before sending the next so that the transfer never has more than one chunk in flight
+     */
+    private static void exportRecording (ConsoleManager console, String name) {
+        Optional<RobotActionRecord> recording = getRecording(name);
+        if (recording.isEmpty()) {
+            console.printlnErr("The recording '"+name+"' no longer exists.");
+            return;
+        }
+        
+        byte[] data;
+        try {
+            data = serialize(recording.get());
+        } catch (IOException e) {
+            console.printlnErr("The recording could not be serialized: " + e.getMessage());
+            return;
+        }
+        
+        Base64.Encoder encoder = Base64.getEncoder();
+        for (int offset = 0; offset < data.length; offset += TRANSFER_CHUNK_SIZE) {
+            int length = Math.min(TRANSFER_CHUNK_SIZE, data.length - offset);
+            byte[] chunk = new byte[length];
+            System.arraycopy(data, offset, chunk, 0, length);
+            
+            console.println(TRANSFER_CHUNK_PREFIX + encoder.encodeToString(chunk));
+            if (!console.readInputLine().equals(TRANSFER_ACK)) {
+                console.printlnErr("Transfer cancelled.");
+                return;
+            }
+        }
+    }
+    
+    /**
+     * Receive a serialized recording from the console in chunks, with each input line containing a chunk
+     * and an empty line indicating the end of the transfer
+     */
+    private static void importRecording (ConsoleManager console, String name) {
+        ByteArrayOutputStream data = new ByteArrayOutputStream();
+        Base64.Decoder decoder = Base64.getDecoder();
+        
+        String line = console.readInputLine();
+        while (!line.equals(TRANSFER_ACK)) {
+            if (line.equals(TRANSFER_CANCEL)) {
+                console.printlnErr("Transfer cancelled.");
+                return;
+            }
+            
+            try {
+                data.writeBytes(decoder.decode(line));
+            } catch (IllegalArgumentException e) {
+                console.printlnErr("Received a malformed chunk. The transfer has been cancelled.");
+                return;
+            }
+            
+            line = console.readInputLine();
+        }
+        
+        RobotActionRecord recording;
+        try {
+            recording = deserialize(data.toByteArray());
+        } catch (IOException | ClassNotFoundException | ClassCastException e) {
+            console.printlnErr("The uploaded file is not a recording compatible with this robot code: " + e.getMessage());
+            return;
+        }
+        
+        saveRecording(name, recording);
+        console.println("Saved " + data.size() + " bytes as '"+name+"'.");
+    }
+    
+    private ReplayLibrary () { }
+    
+}
@@ -1,14 +1,7 @@
 package claw.replay;
 
-import java.util.HashMap;
-
-import claw.Setting;
-
 public abstract class RobotActionRecorder {
     
-    private static final Setting<HashMap<String, RobotActionRecord>>
-        REPLAYABLE_RECORDINGS = new Setting<>("claw.replayable_recordings", HashMap::new);
-    
     private boolean recordingEnabled = false;
     
     protected abstract void resetRecordingState ();
@@ -23,10 +16,13 @@ public abstract class RobotActionRecorder {
         recordingEnabled = true;
     }
     
+    /**
+     * Stop recording and save the recording state to the {@link ReplayLibrary}.
+     * @param name  The name to save the recording under.
+     */
     public void saveRecordingAs (String name) {
         stopRecording();
-        REPLAYABLE_RECORDINGS.get().put(name, getRecordingState());
-        REPLAYABLE_RECORDINGS.save();
+        ReplayLibrary.saveRecording(name, getRecordingState());
     }
     
     /**
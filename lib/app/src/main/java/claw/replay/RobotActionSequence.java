@@ -15,6 +15,10 @@ public class RobotActionSequence implements RobotActionRecord {
     }
     
     public Command toReplayCommand () {
+        // Replay the whole tree with a single command if possible
+        if (CompiledReplay.canCompile(this))
+            return new CompiledReplay(this).toReplayCommand();
+        
         Command[] commands = new Command[actions.length];
         for (int i = 0; i < commands.length; i ++)
             commands[i] = actions[i].toReplayCommand();
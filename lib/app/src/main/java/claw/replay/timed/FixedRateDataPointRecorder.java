@@ -0,0 +1,120 @@
+package claw.replay.timed;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+import edu.wpi.first.wpilibj.Notifier;
+
+/**
+ * A recorder which samples {@link DataPoint}s at a fixed rate, rather than whenever the caller happens to provide
+ * them (as with the {@link TimedDataPointRecorder}). Samples are taken on a WPILib {@link Notifier} and timestamped
+ * with the FPGA clock, and the recorded buffer is resampled onto a uniform time grid so that playback through
+ * a {@link TimedControlAction} is deterministic.
+ */
+public class FixedRateDataPointRecorder <T extends DataPoint<T>> implements AutoCloseable {
+    
+    private final TimedDataPointRecorder<T> rawRecorder;
+    private final Supplier<DataPoint<T>> sampler;
+    private final Notifier notifier;
+    private final long periodMicros;
+    
+    /**
+     * Create a new {@link FixedRateDataPointRecorder}.
+     * @param maxBufferLength   The maximum number of raw samples to keep in the buffer. Once this many samples
+     * have been taken, the oldest samples will be discarded.
+     * @param periodSecs        The period between samples, in seconds. This is also the spacing of the uniform grid
+     * the recording is resampled to.
+     * @param sampler           A supplier which reads the current state of the system being recorded. This will be
+     * called from the notifier thread, so it must be thread-safe.
+     */
+    public FixedRateDataPointRecorder (int maxBufferLength, double periodSecs, Supplier<DataPoint<T>> sampler) {
+        if (periodSecs <= 0)
+            throw new IllegalArgumentException("The sampling period must be greater than zero");
+        
+        this.rawRecorder = new TimedDataPointRecorder<>(maxBufferLength);
+        this.sampler = sampler;
+        this.periodMicros = Math.max(1, Math.round(periodSecs * 1e6));
+        this.notifier = new Notifier(this::takeSample);
+        notifier.setName("FixedRateDataPointRecorder");
+    }
+    
+    private void takeSample () {
+        rawRecorder.addDataPoint(sampler.get());
+    }
+    
+    /**
+     * Reset the recording state and begin sampling at the fixed rate.
+     */
+    public void startRecording () {
+        rawRecorder.startRecording();
+        takeSample();
+        notifier.startPeriodic(periodMicros / 1e6);
+    }
+    
+    /**
+     * Stop sampling, clearing the internal recording buffer.
+     */
+    public void stopRecording () {
+        notifier.stop();
+        rawRecorder.stopRecording();
+    }
+    
+    /**
+     * Get the period between samples in the resampled buffer, in microseconds.
+     * @return  The sampling period.
+     */
+    public long getPeriodMicros () {
+        return periodMicros;
+    }
+    
+    /**
+     * Stop recording and return the recorded {@link TimedDataPoint}s, resampled onto a uniform grid so that
+     * the {@code n}th data point is at exactly {@code n * getPeriodMicros()} microseconds.
+     * @return  The resampled buffer of data points.
+     */
+    public List<TimedDataPoint<T>> getDataBuffer () {
+        notifier.stop();
+        return resample(rawRecorder.getDataBuffer(), periodMicros);
+    }
+    
+    /**
+     * Resample a list of {@link TimedDataPoint}s (sorted by time) onto a uniform grid, linearly interpolating between
+     * the two raw data points surrounding each grid point. The grid starts at the time of the first raw data point.
+     * @param rawPoints     The raw data points, in chronological order.
+     * @param periodMicros  The spacing between grid points, in microseconds.
+     * @return              The resampled data points.
+     */
+    public static <T extends DataPoint<T>> List<TimedDataPoint<T>> resample (List<TimedDataPoint<T>> rawPoints, long periodMicros) {
+        ArrayList<TimedDataPoint<T>> resampled = new ArrayList<>();
+        if (rawPoints.size() == 0) return resampled;
+        
+        long startTime = rawPoints.get(0).timeMicros;
+        long endTime = rawPoints.get(rawPoints.size() - 1).timeMicros;
+        
+        // Sweep through the raw points once, as both the grid and the raw points are in chronological order
+        int nextIndex = 0;
+        for (long gridTime = startTime; gridTime <= endTime; gridTime += periodMicros) {
+            
+            // Find the first raw point at or after the grid time
+            while (rawPoints.get(nextIndex).timeMicros < gridTime)
+                nextIndex ++;
+            
+            TimedDataPoint<T> next = rawPoints.get(nextIndex);
+            DataPoint<T> data = nextIndex == 0
+                ? next.data
+                : rawPoints.get(nextIndex - 1).interpolateWithTime(next, gridTime);
+            
+            resampled.add(new TimedDataPoint<>(gridTime - startTime, data));
+        }
+        
+        return resampled;
+    }
+    
+    @Override
+    public void close () {
+        stopRecording();
+        notifier.close();
+    }
+    
+}
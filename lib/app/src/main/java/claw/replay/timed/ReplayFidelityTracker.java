@@ -0,0 +1,195 @@
+package claw.replay.timed;
+
+/**
+ * Measures how closely a mechanism follows a replayed recording. Each cycle, the expected (recorded) and actual
+ * values of every channel are added, and error statistics are accumulated in primitive arrays so that tracking
+ * allocates nothing while a replay is running. The lag estimate is the delay (in cycles) which best aligns the actual
+ * values with the expected values, found by accumulating the error against each of the last {@code maxLagCycles}
+ * expected values.
+ */
+public class ReplayFidelityTracker {
+    
+    private final String[] channelNames;
+    private final int maxLagCycles;
+    
+    private final double[] sumSquaredError, maxAbsError;
+    
+    /**
+     * A ring buffer of recent expected values for each channel, indexed by {@code channel * maxLagCycles + slot}
+     */
+    private final double[] expectedHistory;
+    
+    /**
+     * The accumulated squared error between the actual values and the expected values from {@code k} cycles earlier,
+     * indexed by {@code channel * maxLagCycles + k}
+     */
+    private final double[] laggedSquaredError;
+    
+    private int cycles, historyIndex;
+    private long firstCycleTime, lastCycleTime;
+    
+    /**
+     * Create a new {@link ReplayFidelityTracker}.
+     * @param channelNames  The names of the channels to track. Each channel is some numeric component of the
+     * mechanism's state, such as a position or velocity.
+     * @param maxLagCycles  The maximum lag to consider for the lag estimate, in cycles. For example, with a 20ms
+     * loop, {@code 25} allows a lag of up to half a second to be detected.
+     */
+    public ReplayFidelityTracker (String[] channelNames, int maxLagCycles) {
+        if (maxLagCycles < 1)
+            throw new IllegalArgumentException("The maximum lag must be at least one cycle");
+        
+        this.channelNames = channelNames.clone();
+        this.maxLagCycles = maxLagCycles;
+        
+        sumSquaredError = new double[channelNames.length];
+        maxAbsError = new double[channelNames.length];
+        expectedHistory = new double[channelNames.length * maxLagCycles];
+        laggedSquaredError = new double[channelNames.length * maxLagCycles];
+        
+        reset();
+    }
+    
+    /**
+     * Clear all accumulated statistics.
+     */
+    public void reset () {
+        for (int i = 0; i < channelNames.length; i ++) {
+            sumSquaredError[i] = 0;
+            maxAbsError[i] = 0;
+        }
+        
+        for (int i = 0; i < laggedSquaredError.length; i ++) {
+            expectedHistory[i] = 0;
+            laggedSquaredError[i] = 0;
+        }
+        
+        cycles = 0;
+        historyIndex = 0;
+    }
+    
+    /**
+     * Get the number of channels being tracked.
+     * @return  The number of channels.
+     */
+    public int getNumChannels () {
+        return channelNames.length;
+    }
+    
+    /**
+     * Add the expected and actual values of a channel for the current cycle. This should be called once for
+     * every channel before {@link #endCycle(long)} is called.
+     * @param channel   The index of the channel.
+     * @param expected  The value of the channel in the recording.
+     * @param actual    The measured value of the channel.
+     */
+    public void addSample (int channel, double expected, double actual) {
+        double error = Math.abs(actual - expected);
+        sumSquaredError[channel] += error * error;
+        maxAbsError[channel] = Math.max(maxAbsError[channel], error);
+        
+        int channelOffset = channel * maxLagCycles;
+        expectedHistory[channelOffset + historyIndex] = expected;
+        
+        // Accumulate the error against each earlier expected value still in the history
+        int lagsAvailable = Math.min(cycles + 1, maxLagCycles);
+        for (int lag = 0; lag < lagsAvailable; lag ++) {
+            int slot = historyIndex - lag;
+            if (slot < 0) slot += maxLagCycles;
+            
+            double laggedError = actual - expectedHistory[channelOffset + slot];
+            laggedSquaredError[channelOffset + lag] += laggedError * laggedError;
+        }
+    }
+    
+    /**
+     * Finish the current cycle after all channels' samples have been added.
+     * @param timeMicros    The time of this cycle in microseconds, used to convert the lag estimate into seconds.
+     */
+    public void endCycle (long timeMicros) {
+        if (cycles == 0) firstCycleTime = timeMicros;
+        lastCycleTime = timeMicros;
+        
+        cycles ++;
+        historyIndex = (historyIndex + 1) % maxLagCycles;
+    }
+    
+    /**
+     * Get the number of cycles which have been tracked.
+     * @return  The number of cycles.
+     */
+    public int getNumCycles () {
+        return cycles;
+    }
+    
+    /**
+     * Get the root mean square error of a channel.
+     * @param channel   The index of the channel.
+     * @return          The RMS error, or zero if no cycles have been tracked.
+     */
+    public double getRMSError (int channel) {
+        return cycles == 0 ? 0 : Math.sqrt(sumSquaredError[channel] / cycles);
+    }
+    
+    /**
+     * Get the maximum absolute error of a channel.
+     * @param channel   The index of the channel.
+     * @return          The maximum error.
+     */
+    public double getMaxError (int channel) {
+        return maxAbsError[channel];
+    }
+    
+    /**
+     * Get the estimated number of cycles by which the actual values of a channel lag behind the expected values.
+     * @param channel   The index of the channel.
+     * @return          The estimated lag, in cycles.
+     */
+    public int getLagCycles (int channel) {
+        int channelOffset = channel * maxLagCycles;
+        int bestLag = 0;
+        double bestMeanError = Double.POSITIVE_INFINITY;
+        
+        for (int lag = 0; lag < Math.min(cycles, maxLagCycles); lag ++) {
+            // Only cycles after the first 'lag' cycles contribute to each lag's accumulated error
+            double meanError = laggedSquaredError[channelOffset + lag] / (cycles - lag);
+            if (meanError < bestMeanError) {
+                bestMeanError = meanError;
+                bestLag = lag;
+            }
+        }
+        
+        return bestLag;
+    }
+    
+    /**
+     * Get the estimated time by which the actual values of a channel lag behind the expected values.
+     * @param channel   The index of the channel.
+     * @return          The estimated lag, in seconds.
+     */
+    public double getLagSecs (int channel) {
+        if (cycles < 2) return 0;
+        double averageCycleSecs = (lastCycleTime - firstCycleTime) / 1e6 / (cycles - 1);
+        return getLagCycles(channel) * averageCycleSecs;
+    }
+    
+    /**
+     * Get a multi-line summary of the error statistics for every channel.
+     * @return  The summary.
+     */
+    public String getReport () {
+        StringBuilder report = new StringBuilder("Replay fidelity over " + cycles + " cycles:");
+        for (int i = 0; i < channelNames.length; i ++) {
+            report.append(String.format(
+                "%n  %s: RMS error %.4f, max error %.4f, lag %.3fs",
+                channelNames[i],
+                getRMSError(i),
+                getMaxError(i),
+                getLagSecs(i)
+            ));
+        }
+        
+        return report.toString();
+    }
+    
+}
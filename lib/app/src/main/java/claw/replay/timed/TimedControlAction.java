@@ -1,82 +1,362 @@
 package claw.replay.timed;
 
+import java.util.Arrays;
+import java.util.Optional;
 import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.ObjDoubleConsumer;
 
+import claw.logs.CLAWLogger;
 import claw.replay.RobotActionRecord;
+import edu.wpi.first.wpilibj.RobotController;
 import edu.wpi.first.wpilibj2.command.Command;
 import edu.wpi.first.wpilibj2.command.Subsystem;
 
 public abstract class TimedControlAction <T extends DataPoint<T>> implements RobotActionRecord {
     
+    /**
+     * The serial version computed for the original form of this class, kept so that recordings saved by earlier
+     * versions can still be read (only transient fields have been added since)
+     */
+    private static final long serialVersionUID = -1723271111646555867L;
+    
+    private static final CLAWLogger LOG = CLAWLogger.getLogger("claw.replay");
+    
+    /**
+     * The maximum lag, in cycles, which fidelity tracking can detect.
+     */
+    private static final int MAX_FIDELITY_LAG_CYCLES = 50;
+    
     private final TimedDataPoint<T>[] dataPoints;
     
+    /**
+     * The timestamps of each data point in microseconds, stored in a primitive array so that seeking to any
+     * time in the recording is a binary search. This is rebuilt lazily after deserialization.
+     */
+    private transient long[] timestamps;
+    
+    private transient ReplayFidelityTracker lastFidelityTracker;
+    
     public TimedControlAction (TimedDataPoint<T>[] dataPoints) {
+        if (dataPoints.length == 0)
+            throw new IllegalArgumentException("A TimedControlAction must have at least one data point");
         this.dataPoints = dataPoints;
-        
     }
     
     public abstract void moveToState (DataPoint<T> desiredState);
     public abstract void stopSubsystems ();
     public abstract Set<Subsystem> getSubsystems ();
     
+    /**
+     * Get the names of the numeric channels of the state (for example, an arm's angle) which should be tracked to
+     * measure how closely the mechanism follows the recording. Fidelity tracking is disabled unless this is overridden
+     * along with {@link #getExpectedChannelValue(DataPoint, int)} and {@link #getActualChannelValue(int)}. When enabled,
+     * a {@link ReplayFidelityTracker} report is logged to {@code claw.replay} whenever a replay command ends.
+     * @return  The names of the tracked channels.
+     */
+    public String[] getFidelityChannels () {
+        return new String[0];
+    }
+    
+    /**
+     * Get the recorded value of a fidelity tracking channel from a desired state.
+     * @param desiredState  The state which was passed to {@link #moveToState(DataPoint)} this cycle.
+     * @param channel       The index of the channel in {@link #getFidelityChannels()}.
+     * @return              The expected value of the channel.
+     */
+    public double getExpectedChannelValue (DataPoint<T> desiredState, int channel) {
+        return 0;
+    }
+    
+    /**
+     * Read the actual, measured value of a fidelity tracking channel. This is called every cycle, right after
+     * {@link #moveToState(DataPoint)}.
+     * @param channel   The index of the channel in {@link #getFidelityChannels()}.
+     * @return          The measured value of the channel.
+     */
+    public double getActualChannelValue (int channel) {
+        return 0;
+    }
+    
+    /**
+     * Get the fidelity statistics from the most recent replay of this action, if fidelity tracking is enabled.
+     * @return  The {@link ReplayFidelityTracker} used by the last replay command to run.
+     * @see #getFidelityChannels()
+     */
+    public Optional<ReplayFidelityTracker> getLastFidelityResults () {
+        return Optional.ofNullable(lastFidelityTracker);
+    }
+    
+    private long[] getTimestamps () {
+        if (timestamps == null) {
+            long[] newTimestamps = new long[dataPoints.length];
+            for (int i = 0; i < dataPoints.length; i ++)
+                newTimestamps[i] = dataPoints[i].timeMicros;
+            timestamps = newTimestamps;
+        }
+        
+        return timestamps;
+    }
+    
+    /**
+     * Get the number of {@link TimedDataPoint}s in the recording.
+     * @return  The number of data points.
+     */
+    public int getNumDataPoints () {
+        return dataPoints.length;
+    }
+    
+    /**
+     * Get the duration of the recording, from the start of the recording to the last data point.
+     * @return  The duration of the recording, in seconds.
+     */
+    public double getDurationSecs () {
+        return getDurationMicros() / 1e6;
+    }
+    
+    /**
+     * Get the duration of the recording, from the start of the recording to the last data point.
+     * @return  The duration of the recording, in microseconds.
+     */
+    public long getDurationMicros () {
+        return dataPoints[dataPoints.length - 1].timeMicros;
+    }
+    
+    /**
+     * Get the interpolated state of the recording at a given time. Times before the first data point or after the last
+     * data point will give the state of the first or last data point, respectively.
+     * @param timeMicros    The time since the start of the recording, in microseconds.
+     * @return              The interpolated state at the given time.
+     */
+    public DataPoint<T> getStateAt (long timeMicros) {
+        long[] times = getTimestamps();
+        int lastIndex = times.length - 1;
+        
+        // Hold the first and last states outside of the recording
+        if (timeMicros <= times[0]) return dataPoints[0].data;
+        if (timeMicros >= times[lastIndex]) return dataPoints[lastIndex].data;
+        
+        // Find the data point at the given time, or the insertion point if no data point is at exactly this time
+        int index = Arrays.binarySearch(times, timeMicros);
+        if (index >= 0) return dataPoints[index].data;
+        
+        // The insertion point is the index of the first data point after the given time
+        int nextIndex = -index - 1;
+        return dataPoints[nextIndex - 1].interpolateWithTime(dataPoints[nextIndex], timeMicros);
+    }
+    
+    /**
+     * Step through the recording without running it in real time, passing the interpolated state at each step to
+     * a consumer along with the time of the step (in seconds). This is useful for quickly previewing the setpoints
+     * of a long recording.
+     * @param startSecs The time in the recording to start at, in seconds.
+     * @param endSecs   The time in the recording to end at, in seconds.
+     * @param stepSecs  The amount of time between each step, in seconds.
+     * @param output    The consumer to pass each state and its time to.
+     */
+    public void preview (double startSecs, double endSecs, double stepSecs, ObjDoubleConsumer<DataPoint<T>> output) {
+        if (stepSecs <= 0)
+            throw new IllegalArgumentException("The preview step must be greater than zero");
+        
+        long endMicros = secsToMicros(endSecs);
+        long stepMicros = Math.max(1, secsToMicros(stepSecs));
+        for (long time = secsToMicros(startSecs); time <= endMicros; time += stepMicros)
+            output.accept(getStateAt(time), time / 1e6);
+    }
+    
     @Override
     public Command toReplayCommand () {
-        return new TimedControlCommand();
+        return toReplayCommand(1, 0, getDurationSecs(), false);
     }
     
-    private class TimedControlCommand implements Command {
+    /**
+     * Get a command which replays a segment of this action.
+     * @param speed     The playback speed multiplier. For example, {@code 2} will play the recording back
+     * twice as fast as it was recorded. This must be greater than zero.
+     * @param startSecs The time in the recording to start playback from, in seconds.
+     * @param endSecs   The time in the recording to end playback at, in seconds.
+     * @param loop      Whether or not to loop the segment. If {@code true}, the command will not finish on its own.
+     * @return          The replay command.
+     */
+    public Command toReplayCommand (double speed, double startSecs, double endSecs, boolean loop) {
+        return new TimedControlCommand(speed, startSecs, endSecs, loop, null);
+    }
+    
+    /**
+     * Get a command which plays back a segment of this action in real time without actuating anything. Instead
+     * of moving the subsystems to each interpolated state, the states are passed to the {@code previewOutput}
+     * (which might print them to the console or put them to a {@link claw.logs.CLAWLogger}). The command requires
+     * no subsystems and can be run while the robot is disabled.
+     * @param previewOutput The consumer to pass interpolated states to.
+     * @param speed         The playback speed multiplier. This must be greater than zero.
+     * @param startSecs     The time in the recording to start playback from, in seconds.
+     * @param endSecs       The time in the recording to end playback at, in seconds.
+     * @param loop          Whether or not to loop the segment.
+     * @return              The preview command.
+     * @see #toReplayCommand(double, double, double, boolean)
+     */
+    public Command toPreviewCommand (Consumer<DataPoint<T>> previewOutput, double speed, double startSecs, double endSecs, boolean loop) {
+        return new TimedControlCommand(speed, startSecs, endSecs, loop, previewOutput);
+    }
+    
+    /**
+     * Create a new {@link Playback} of this action, which can be used to drive the replay from another command (for
+     * example, a {@link claw.replay.CompiledReplay}). Every replay of the action should go through a playback so that
+     * fidelity tracking and logging behave the same way regardless of how the action is replayed.
+     * @return  The new {@code Playback}.
+     */
+    public Playback createPlayback () {
+        return new Playback();
+    }
+    
+    /**
+     * A single run of a replay of this {@link TimedControlAction}. A playback moves the subsystems to the recorded
+     * state at each step, and records how closely the mechanism follows the recording if fidelity tracking is
+     * enabled (see {@link #getFidelityChannels()}). A playback can be started again once it has finished.
+     */
+    public final class Playback {
         
-        private long initializeTime;
+        /**
+         * This is {@code null} if fidelity tracking is disabled
+         */
+        private final ReplayFidelityTracker fidelityTracker;
         
-        private long getTime () {
-            return System.currentTimeMillis() - initializeTime;
+        private Playback () {
+            String[] fidelityChannels = getFidelityChannels();
+            fidelityTracker = fidelityChannels.length == 0
+                ? null
+                : new ReplayFidelityTracker(fidelityChannels, MAX_FIDELITY_LAG_CYCLES);
         }
         
-        private DataPoint<T> getInterpolatedDataPoint () {
-            int nextDataPointIndex = dataPoints.length - 1;
+        /**
+         * Start the playback, stopping the subsystems and resetting fidelity tracking. This should be called before
+         * the first step.
+         */
+        public void start () {
+            stopSubsystems();
             
-            for (int i = 0; i < dataPoints.length; i ++) {
-                if (dataPoints[i].timeMillis > getTime()) {
-                    nextDataPointIndex = i;
-                    break;
-                }
+            if (fidelityTracker != null) {
+                fidelityTracker.reset();
+                lastFidelityTracker = fidelityTracker;
             }
+        }
+        
+        /**
+         * Move the subsystems to the recorded state at a time in the recording, and record a fidelity tracking cycle.
+         * @param playbackMicros    The time in the recording, in microseconds.
+         * @param cycleTimeMicros   The FPGA timestamp of the current cycle, in microseconds.
+         */
+        public void step (long playbackMicros, long cycleTimeMicros) {
+            DataPoint<T> state = getStateAt(playbackMicros);
+            moveToState(state);
             
-            TimedDataPoint<T> nextDataPoint = dataPoints[nextDataPointIndex];
-            
-            if (nextDataPoint.timeMillis < getTime() || nextDataPointIndex == 0) {
-                return nextDataPoint.data;
-            } else {
-                TimedDataPoint<T> lastDataPoint = dataPoints[nextDataPointIndex - 1];
-                return lastDataPoint.interpolateWithTime(nextDataPoint, getTime());
+            if (fidelityTracker != null) {
+                for (int i = 0; i < fidelityTracker.getNumChannels(); i ++)
+                    fidelityTracker.addSample(i, getExpectedChannelValue(state, i), getActualChannelValue(i));
+                fidelityTracker.endCycle(cycleTimeMicros);
             }
         }
         
+        /**
+         * Finish the playback, stopping the subsystems and logging the fidelity report to {@code claw.replay}.
+         * @param interrupted   Whether the playback was interrupted before the end of the recording.
+         */
+        public void finish (boolean interrupted) {
+            stopSubsystems();
+            
+            if (fidelityTracker != null && fidelityTracker.getNumCycles() > 0)
+                LOG.out(TimedControlAction.this.getClass().getSimpleName() + (interrupted ? " (interrupted)" : "") + "\n" + fidelityTracker.getReport());
+        }
+        
+    }
+    
+    private static long secsToMicros (double secs) {
+        return Math.round(secs * 1e6);
+    }
+    
+    private class TimedControlCommand implements Command {
+        
+        private final double speed;
+        private final long startMicros, segmentMicros;
+        private final boolean loop;
+        
+        /**
+         * If this is not {@code null}, states are sent here instead of actuating the subsystems
+         */
+        private final Consumer<DataPoint<T>> previewOutput;
+        
+        /**
+         * This is {@code null} for previews, which do not actuate anything
+         */
+        private final Playback playback;
+        
+        private long initializeTime, currentTime;
+        private long playbackTime;
+        
+        public TimedControlCommand (double speed, double startSecs, double endSecs, boolean loop, Consumer<DataPoint<T>> previewOutput) {
+            if (speed <= 0)
+                throw new IllegalArgumentException("The playback speed must be greater than zero");
+            if (endSecs < startSecs)
+                throw new IllegalArgumentException("The playback end time cannot be before the start time");
+            
+            this.speed = speed;
+            this.startMicros = secsToMicros(startSecs);
+            this.segmentMicros = secsToMicros(endSecs) - startMicros;
+            this.loop = loop;
+            this.previewOutput = previewOutput;
+            playback = isPreview() ? null : createPlayback();
+        }
+        
+        private boolean isPreview () {
+            return previewOutput != null;
+        }
+        
+        /**
+         * Update the playback time (the time in the recording, not the time since this command started)
+         */
+        private void updatePlaybackTime () {
+            currentTime = RobotController.getFPGATime();
+            long elapsed = (long)((currentTime - initializeTime) * speed);
+            
+            if (loop && segmentMicros > 0)
+                elapsed %= segmentMicros;
+            
+            playbackTime = startMicros + elapsed;
+        }
+        
         @Override
         public void initialize () {
-            stopSubsystems();
-            initializeTime = System.currentTimeMillis();
+            if (!isPreview()) playback.start();
+            initializeTime = RobotController.getFPGATime();
+            playbackTime = startMicros;
         }
         
         @Override
         public void execute () {
-            moveToState(getInterpolatedDataPoint());
+            updatePlaybackTime();
+            
+            if (isPreview()) previewOutput.accept(getStateAt(playbackTime));
+            else playback.step(playbackTime, currentTime);
         }
         
         @Override
         public void end (boolean interrupted) {
-            stopSubsystems();
+            if (!isPreview()) playback.finish(interrupted);
         }
         
         @Override
         public Set<Subsystem> getRequirements () {
-            return getSubsystems();
+            return isPreview() ? Set.of() : getSubsystems();
+        }
+        
+        @Override
+        public boolean runsWhenDisabled () {
+            return isPreview();
         }
         
         @Override
         public boolean isFinished () {
-            TimedDataPoint<T> lastPoint = dataPoints[dataPoints.length - 1];
-            return getTime() > lastPoint.timeMillis;
+            return !loop && playbackTime - startMicros >= segmentMicros;
         }
         
     }
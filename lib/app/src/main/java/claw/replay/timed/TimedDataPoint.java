@@ -1,22 +1,72 @@
 package claw.replay.timed;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamField;
 import java.io.Serializable;
 
 /**
  * Represents a {@link DataPoint} with a associated time relative to some starting time.
  */
 public class TimedDataPoint <T extends DataPoint<T>> implements Serializable {
-    public final long timeMillis;
+    
+    /**
+     * The serial version computed for the original form of this class (which stored times in milliseconds), kept so
+     * that recordings saved by earlier versions can still be read
+     */
+    private static final long serialVersionUID = -8956525443314320604L;
+    
+    /**
+     * Recordings saved by earlier versions only have {@code timeMillis}, which is converted to microseconds when read.
+     * {@code timeMillis} is still written alongside {@code timeMicros} so that earlier versions can read new recordings.
+     */
+    private static final ObjectStreamField[] serialPersistentFields = {
+        new ObjectStreamField("timeMicros", long.class),
+        new ObjectStreamField("timeMillis", long.class),
+        new ObjectStreamField("data", DataPoint.class),
+    };
+    
+    /**
+     * The time of this data point relative to the start of the recording, in microseconds.
+     */
+    public final long timeMicros;
     public final DataPoint<T> data;
     
-    public TimedDataPoint (long timeMillis, DataPoint<T> data) {
-        this.timeMillis = timeMillis;
+    // Fields are final, so deserialized values are held here until readResolve creates the real data point
+    private transient long deserializedTimeMicros;
+    private transient DataPoint<T> deserializedData;
+    
+    public TimedDataPoint (long timeMicros, DataPoint<T> data) {
+        this.timeMicros = timeMicros;
         this.data = data;
     }
     
     public DataPoint<T> interpolateWithTime (TimedDataPoint<T> next, long time) {
-        long timeInterval = next.timeMillis - timeMillis;
-        double p = (time - timeMillis) / (double)timeInterval;
+        long timeInterval = next.timeMicros - timeMicros;
+        if (timeInterval == 0) return data;
+        double p = (time - timeMicros) / (double)timeInterval;
         return data.interpolate(next.data, p);
     }
+    
+    private void writeObject (ObjectOutputStream out) throws IOException {
+        ObjectOutputStream.PutField fields = out.putFields();
+        fields.put("timeMicros", timeMicros);
+        fields.put("timeMillis", timeMicros / 1000);
+        fields.put("data", data);
+        out.writeFields();
+    }
+    
+    @SuppressWarnings("unchecked")
+    private void readObject (ObjectInputStream in) throws IOException, ClassNotFoundException {
+        ObjectInputStream.GetField fields = in.readFields();
+        deserializedTimeMicros = fields.defaulted("timeMicros")
+            ? fields.get("timeMillis", 0L) * 1000
+            : fields.get("timeMicros", 0L);
+        deserializedData = (DataPoint<T>)fields.get("data", null);
+    }
+    
+    private Object readResolve () {
+        return new TimedDataPoint<T>(deserializedTimeMicros, deserializedData);
+    }
 }
@@ -3,6 +3,8 @@ package claw.replay.timed;
 import java.util.ArrayList;
 import java.util.List;
 
+import edu.wpi.first.wpilibj.RobotController;
+
 /**
  * A buffer which can be used to record {@link TimedDataPoint}s for use with {@link TimedControlAction}s.
  * For example, a {@code TimedDataPointRecorder} could be used to record the position of the robot over a period of time,
@@ -14,6 +16,10 @@ public class TimedDataPointRecorder <T extends DataPoint<T>> {
     private final int maxBufferLength;
     
     private boolean recordingEnabled = false;
+    
+    /**
+     * The FPGA timestamp at which recording started, in microseconds.
+     */
     private long recordingStartTime;
     
     public TimedDataPointRecorder (int maxBufferLength) {
@@ -22,7 +28,7 @@ public class TimedDataPointRecorder <T extends DataPoint<T>> {
     }
     
     private synchronized void reset () {
-        recordingStartTime = System.currentTimeMillis();
+        recordingStartTime = RobotController.getFPGATime();
         dataPoints.clear();
     }
     
@@ -42,8 +48,12 @@ public class TimedDataPointRecorder <T extends DataPoint<T>> {
         reset();
     }
     
+    /**
+     * Get the time since recording started in microseconds. The FPGA clock is used instead of the system clock
+     * because it is monotonic and has microsecond resolution, so it is unaffected by NTP adjustments.
+     */
     private long getTime () {
-        return System.currentTimeMillis() - recordingStartTime;
+        return RobotController.getFPGATime() - recordingStartTime;
     }
     
     /**
@@ -0,0 +1,98 @@
+package claw.hardware.can;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import claw.hardware.can.CANMessageID.DeviceType;
+import claw.hardware.can.CANMessageID.ManufacturerCode;
+
+/**
+ * Checks {@link CANMessageID#fromMessageId(int)} and {@link CANMessageID#fromMessageIdCached(int)} against a reference
+ * decode which slices the fields out one at a time and searches the enums linearly, as the original parser did.
+ */
+public class CANMessageIDTest {
+    
+    // Boundary values of the numeric fields (the first, second, second to last, and last value of each)
+    private static final int[] DEVICE_NUMS = { 0, 1, 62, 63 };
+    private static final int[] API_INDICES = { 0, 1, 14, 15 };
+    private static final int[] API_CLASSES = { 0, 1, 62, 63 };
+    
+    // The bits above the 29-bit arbitration ID, which should be ignored
+    private static final int[] UPPER_BITS = { 0, 0xE0000000 };
+    
+    private static final int NUM_RANDOM_IDS = 2_000_000;
+    
+    private static CANMessageID referenceDecode (int messageId) {
+        return new CANMessageID(
+            (byte)slice(messageId, 0, 6),
+            (byte)slice(messageId, 6, 4),
+            (byte)slice(messageId, 10, 6),
+            referenceManufacturer(slice(messageId, 16, 8)),
+            referenceDeviceType(slice(messageId, 24, 5))
+        );
+    }
+    
+    private static int slice (int value, int startIndex, int length) {
+        return (value >>> startIndex) & ((1 << length) - 1);
+    }
+    
+    private static ManufacturerCode referenceManufacturer (int id) {
+        for (ManufacturerCode manufacturer : ManufacturerCode.values())
+            if (id >= manufacturer.getMinId() && id <= manufacturer.getMaxId()) return manufacturer;
+        return ManufacturerCode.UNKNOWN;
+    }
+    
+    private static DeviceType referenceDeviceType (int id) {
+        for (DeviceType deviceType : DeviceType.values())
+            if (id >= deviceType.getMinId() && id <= deviceType.getMaxId()) return deviceType;
+        return DeviceType.UNKNOWN;
+    }
+    
+    private static int buildId (int deviceType, int manufacturer, int apiClass, int apiIndex, int deviceNum) {
+        return deviceType << 24 | manufacturer << 16 | apiClass << 10 | apiIndex << 6 | deviceNum;
+    }
+    
+    private static void checkId (int messageId) {
+        CANMessageID expected = referenceDecode(messageId);
+        assertEquals(expected, CANMessageID.fromMessageId(messageId), () -> "fromMessageId(0x" + Integer.toHexString(messageId) + ")");
+        
+        CANMessageID cached = CANMessageID.fromMessageIdCached(messageId);
+        assertEquals(expected, cached, () -> "fromMessageIdCached(0x" + Integer.toHexString(messageId) + ")");
+        assertSame(cached, CANMessageID.fromMessageIdCached(messageId), "A repeated lookup should return the cached instance");
+    }
+    
+    @Test
+    public void matchesReferenceAtFieldBoundaries () {
+        // Every manufacturer and device type ID (including the reserved and unknown ranges), combined with the boundary
+        // values of the other fields
+        for (int deviceType = 0; deviceType < 32; deviceType ++)
+            for (int manufacturer = 0; manufacturer < 256; manufacturer ++)
+                for (int apiClass : API_CLASSES)
+                    for (int apiIndex : API_INDICES)
+                        for (int deviceNum : DEVICE_NUMS)
+                            for (int upperBits : UPPER_BITS)
+                                checkId(upperBits | buildId(deviceType, manufacturer, apiClass, apiIndex, deviceNum));
+    }
+    
+    @Test
+    public void matchesReferenceForRandomIds () {
+        Random random = new Random(1711);
+        for (int i = 0; i < NUM_RANDOM_IDS; i ++)
+            checkId(random.nextInt());
+    }
+    
+    @Test
+    public void classifiesReservedAndUnknownRanges () {
+        assertEquals(DeviceType.RESERVED, CANMessageID.fromMessageId(buildId(12, 1, 0, 0, 0)).deviceType());
+        assertEquals(DeviceType.RESERVED, CANMessageID.fromMessageId(buildId(30, 1, 0, 0, 0)).deviceType());
+        assertEquals(DeviceType.FIRMWARE_UPDATE, CANMessageID.fromMessageId(buildId(31, 1, 0, 0, 0)).deviceType());
+        assertEquals(ManufacturerCode.THE_THRIFTY_BOT, CANMessageID.fromMessageId(buildId(2, 13, 0, 0, 0)).manufacturer());
+        assertEquals(ManufacturerCode.RESERVED, CANMessageID.fromMessageId(buildId(2, 14, 0, 0, 0)).manufacturer());
+        assertEquals(ManufacturerCode.RESERVED, CANMessageID.fromMessageId(buildId(2, 255, 0, 0, 0)).manufacturer());
+    }
+    
+}